@@ -413,6 +413,10 @@ class VideoPlayerController extends ValueNotifier<VideoPlayerValue> {
   /// **Android Only**:
   /// Total Cache Size for all files in bytes.
   ///
+  /// The exoplayer cache is shared by all players, the size requested by the
+  /// latest player applies to it and the cache is trimmed at once when it
+  /// shrinks.
+  ///
   /// defaults to 1 GB.
   final ByteSize maxTotalCacheSize;
 
@@ -0,0 +1,61 @@
+package com.danikula.videocache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer for transferring data which size follows measured throughput.
+ * <p>
+ * Slow transfer uses small buffer, so clients and listeners get data as soon as possible.
+ * Fast transfer (Wi-Fi, cached data) uses bigger buffer, so it isn't limited by per-chunk overhead:
+ * syscalls, locks and notifications. Size is chosen to hold about {@link #CHUNK_MILLIS} ms of data
+ * and is kept in range [{@link BufferPool#MIN_SIZE}..{@link BufferPool#MAX_SIZE}]. Arrays are taken from {@link BufferPool}.
+ * <p>
+ * Array returned by {@link #get()} may change after {@link #onTransferred(long)}, so it must be got for every chunk.
+ */
+final class AdaptiveBuffer {
+
+    private static final int CHUNK_MILLIS = 10;
+    private static final long MEASURE_INTERVAL_NANOS = 100 * 1000 * 1000;
+
+    private byte[] buffer;
+    private long measureStartTime;
+    private long measuredBytes;
+
+    AdaptiveBuffer() {
+        this.buffer = BufferPool.acquire(BufferPool.MIN_SIZE);
+        this.measureStartTime = System.nanoTime();
+    }
+
+    byte[] get() {
+        return buffer;
+    }
+
+    /**
+     * Takes into account count of bytes transferred with current buffer and resizes buffer if needed.
+     */
+    void onTransferred(long count) {
+        measuredBytes += count;
+        long now = System.nanoTime();
+        long elapsed = now - measureStartTime;
+        if (elapsed >= MEASURE_INTERVAL_NANOS) {
+            long bytesPerChunk = measuredBytes * CHUNK_MILLIS / TimeUnit.NANOSECONDS.toMillis(elapsed);
+            int size = BufferPool.sizeOf((int) Math.min(BufferPool.MAX_SIZE, bytesPerChunk));
+            if (size != buffer.length) {
+                BufferPool.release(buffer);
+                buffer = BufferPool.acquire(size);
+            }
+            measureStartTime = now;
+            measuredBytes = 0;
+        }
+    }
+
+    /**
+     * Returns buffer to pool, it can't be used after that.
+     */
+    void release() {
+        if (buffer != null) {
+            BufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+}
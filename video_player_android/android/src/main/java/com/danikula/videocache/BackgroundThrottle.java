@@ -0,0 +1,55 @@
+package com.danikula.videocache;
+
+import java.util.Collection;
+
+/**
+ * Shares network between playback and background downloads (prefetch, background completion, lingering source).
+ * <p>
+ * Background sources are read at full speed while every played source has enough data ahead of its client.
+ * As soon as any client gets close to end of downloaded data, background sources are limited by {@link TokenBucket},
+ * so they don't take bandwidth that playback needs to avoid rebuffering.
+ */
+final class BackgroundThrottle {
+
+    private final TokenBucket bucket;
+    private final long foregroundBufferTarget;
+    private final Collection<HttpProxyCacheServerClients> clients;
+
+    /**
+     * Creates throttle.
+     *
+     * @param bytesPerSecond         rate of background downloads while playback is short of data.
+     * @param foregroundBufferTarget min count of downloaded bytes ahead of played client's position.
+     * @param clients                live view of all clients of server.
+     */
+    BackgroundThrottle(long bytesPerSecond, long foregroundBufferTarget, Collection<HttpProxyCacheServerClients> clients) {
+        this.bucket = new TokenBucket(bytesPerSecond, bytesPerSecond);
+        this.foregroundBufferTarget = foregroundBufferTarget;
+        this.clients = clients;
+    }
+
+    /**
+     * Called by background source after every read chunk, blocks while background traffic must be limited.
+     *
+     * @param bytes count of read bytes.
+     * @throws InterruptedProxyCacheException if source reader is interrupted while waiting.
+     */
+    void onBackgroundRead(int bytes) throws InterruptedProxyCacheException {
+        if (isForegroundBelowTarget()) {
+            try {
+                bucket.acquire(bytes);
+            } catch (InterruptedException e) {
+                throw new InterruptedProxyCacheException("Throttled background source is interrupted", e);
+            }
+        }
+    }
+
+    private boolean isForegroundBelowTarget() {
+        for (HttpProxyCacheServerClients client : clients) {
+            if (client.isForegroundBelowTarget(foregroundBufferTarget)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
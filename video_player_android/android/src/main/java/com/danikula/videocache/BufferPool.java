@@ -0,0 +1,69 @@
+package com.danikula.videocache;
+
+/**
+ * Pool of byte arrays used for transferring data, one stack of free arrays per power-of-two size.
+ * <p>
+ * Transfers are short-living but numerous (every request, every source reading), so arrays are reused
+ * instead of being allocated and collected for each of them. Only few free arrays of each size are kept.
+ */
+public final class BufferPool {
+
+    static final int MIN_SIZE = 8 * 1024;
+    static final int MAX_SIZE = 256 * 1024;
+    private static final int MAX_FREE_BUFFERS_PER_SIZE = 4;
+    private static final int SIZES_COUNT = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+
+    private static final byte[][][] freeBuffers = new byte[SIZES_COUNT][MAX_FREE_BUFFERS_PER_SIZE][];
+    private static final int[] freeBuffersCounts = new int[SIZES_COUNT];
+
+    private BufferPool() {
+    }
+
+    /**
+     * Returns array of size that is power of two in range [{@link #MIN_SIZE}..{@link #MAX_SIZE}] closest to requested one.
+     * Content of array is undefined.
+     */
+    public static byte[] acquire(int size) {
+        int index = indexOf(size);
+        synchronized (freeBuffers) {
+            int count = freeBuffersCounts[index];
+            if (count > 0) {
+                byte[] buffer = freeBuffers[index][count - 1];
+                freeBuffers[index][count - 1] = null;
+                freeBuffersCounts[index] = count - 1;
+                return buffer;
+            }
+        }
+        return new byte[sizeOf(size)];
+    }
+
+    /**
+     * Returns size of array that {@link #acquire(int)} returns for requested size.
+     */
+    public static int sizeOf(int size) {
+        return MIN_SIZE << indexOf(size);
+    }
+
+    /**
+     * Returns array got by {@link #acquire(int)} to pool, it must not be used after that.
+     */
+    public static void release(byte[] buffer) {
+        if (buffer.length != sizeOf(buffer.length)) {
+            return;
+        }
+        int index = indexOf(buffer.length);
+        synchronized (freeBuffers) {
+            int count = freeBuffersCounts[index];
+            if (count < MAX_FREE_BUFFERS_PER_SIZE) {
+                freeBuffers[index][count] = buffer;
+                freeBuffersCounts[index] = count + 1;
+            }
+        }
+    }
+
+    private static int indexOf(int size) {
+        int clamped = Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+        int powerOfTwo = Integer.highestOneBit(clamped - 1) << 1;
+        return Integer.numberOfTrailingZeros(powerOfTwo / MIN_SIZE);
+    }
+}
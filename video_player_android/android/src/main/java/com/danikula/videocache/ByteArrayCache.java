@@ -1,50 +1,125 @@
 package com.danikula.videocache;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 /**
  * Simple memory based {@link Cache} implementation.
+ * <p>
+ * Data is stored in list of fixed-size chunks, so appending never copies data that is already cached and
+ * chunk containing any offset is found by division. Data is appended by single writer and published by
+ * {@link #available()}, reading doesn't take any lock.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 public class ByteArrayCache implements Cache {
 
-    private volatile byte[] data;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final long maxSize;
+    private volatile byte[][] chunks = new byte[16][];
+    private volatile long available;
     private volatile boolean completed;
 
     public ByteArrayCache() {
-        this(new byte[0]);
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates cache that can't hold more than {@code maxSize} bytes.
+     *
+     * @param maxSize max size of cached data in bytes, appending more data fails.
+     */
+    public ByteArrayCache(long maxSize) {
+        Preconditions.checkArgument(maxSize >= 0, "Max size can't be negative!");
+        this.maxSize = maxSize;
     }
 
     public ByteArrayCache(byte[] data) {
-        this.data = Preconditions.checkNotNull(data);
+        this(Long.MAX_VALUE);
+        try {
+            append(Preconditions.checkNotNull(data), data.length);
+        } catch (ProxyCacheException e) {
+            throw new IllegalStateException("Error appending data to unlimited cache", e);
+        }
     }
 
     @Override
     public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
-        if (offset >= data.length) {
+        long available = this.available;
+        if (offset >= available) {
+            return -1;
+        }
+        byte[][] chunks = this.chunks;
+        int count = (int) Math.min(Math.min(length, buffer.length), available - offset);
+        int read = 0;
+        while (read < count) {
+            long position = offset + read;
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int chunkCount = Math.min(count - read, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(chunks[(int) (position / CHUNK_SIZE)], chunkOffset, buffer, read, chunkCount);
+            read += chunkCount;
+        }
+        return read;
+    }
+
+    @Override
+    public long transferTo(long offset, long count, WritableByteChannel target) throws ProxyCacheException, IOException {
+        long available = this.available;
+        if (offset >= available) {
             return -1;
         }
-        if (offset > Integer.MAX_VALUE) {
-            throw new IllegalArgumentException("Too long offset for memory cache " + offset);
+        byte[][] chunks = this.chunks;
+        count = Math.min(count, available - offset);
+        long transferred = 0;
+        while (transferred < count) {
+            long position = offset + transferred;
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            int chunkCount = (int) Math.min(count - transferred, CHUNK_SIZE - chunkOffset);
+            ByteBuffer data = ByteBuffer.wrap(chunks[(int) (position / CHUNK_SIZE)], chunkOffset, chunkCount);
+            while (data.hasRemaining()) {
+                target.write(data);
+            }
+            transferred += chunkCount;
         }
-        return new ByteArrayInputStream(data).read(buffer, (int) offset, length);
+        return transferred;
     }
 
     @Override
     public long available() throws ProxyCacheException {
-        return data.length;
+        return available;
     }
 
     @Override
-    public void append(byte[] newData, int length) throws ProxyCacheException {
-        Preconditions.checkNotNull(data);
+    public synchronized void append(byte[] newData, int length) throws ProxyCacheException {
+        Preconditions.checkNotNull(newData);
         Preconditions.checkArgument(length >= 0 && length <= newData.length);
 
-        byte[] appendedData = Arrays.copyOf(data, data.length + length);
-        System.arraycopy(newData, 0, appendedData, data.length, length);
-        data = appendedData;
+        long available = this.available;
+        if (length > maxSize - available) {
+            throw new ProxyCacheException("Error appending " + length + " bytes to memory cache: max size " + maxSize + " is exceeded");
+        }
+        byte[][] chunks = this.chunks;
+        int appended = 0;
+        while (appended < length) {
+            long position = available + appended;
+            int index = (int) (position / CHUNK_SIZE);
+            int chunkOffset = (int) (position % CHUNK_SIZE);
+            if (chunkOffset == 0) {
+                if (index == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunks.length * 2);
+                }
+                chunks[index] = new byte[CHUNK_SIZE];
+            }
+            int count = Math.min(length - appended, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(newData, appended, chunks[index], chunkOffset, count);
+            appended += count;
+        }
+        // chunks are published before available, so readers never see offset without data
+        this.chunks = chunks;
+        this.available = available + length;
     }
 
     @Override
@@ -1,5 +1,8 @@
 package com.danikula.videocache;
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
 /**
  * Cache for proxy.
  *
@@ -11,6 +14,18 @@ public interface Cache {
 
     int read(byte[] buffer, long offset, int length) throws ProxyCacheException;
 
+    /**
+     * Writes cached data to channel, avoiding copying data to java heap if possible.
+     *
+     * @param offset an offset of data.
+     * @param count  max count of bytes to be written.
+     * @param target a channel to write data to.
+     * @return count of written bytes or {@code -1} if there is no data with such offset.
+     * @throws ProxyCacheException if cached data can't be read.
+     * @throws IOException         if data can't be written to channel.
+     */
+    long transferTo(long offset, long count, WritableByteChannel target) throws ProxyCacheException, IOException;
+
     void append(byte[] data, int length) throws ProxyCacheException;
 
     void close() throws ProxyCacheException;
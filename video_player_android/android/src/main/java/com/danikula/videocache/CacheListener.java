@@ -10,5 +10,14 @@ import java.io.File;
  */
 public interface CacheListener {
 
-    void onCacheAvailable(File cacheFile, String url, int percentsAvailable);
+    /**
+     * Called when more data is cached. Calls are throttled, so not every appended chunk is reported,
+     * but completion of cache is always reported.
+     *
+     * @param cacheFile      a file data is cached to.
+     * @param url            an url of cached data.
+     * @param availableBytes count of cached bytes.
+     * @param totalBytes     length of data or negative value if it is unknown.
+     */
+    void onCacheAvailable(File cacheFile, String url, long availableBytes, long totalBytes);
 }
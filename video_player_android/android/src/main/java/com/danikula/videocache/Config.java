@@ -2,7 +2,7 @@ package com.danikula.videocache;
 
 import com.danikula.videocache.file.DiskUsage;
 import com.danikula.videocache.file.FileNameGenerator;
-import com.danikula.videocache.headers.HeaderInjector;
+import com.danikula.videocache.file.MemoryBlockCache;
 import com.danikula.videocache.sourcestorage.SourceInfoStorage;
 
 import java.io.File;
@@ -18,19 +18,46 @@ class Config {
     public final FileNameGenerator fileNameGenerator;
     public final DiskUsage diskUsage;
     public final SourceInfoStorage sourceInfoStorage;
-    public final HeaderInjector headerInjector;
+    public final InheritedHeadersInjector headerInjector;
+    public final boolean verifyChecksums;
+    public final long maxMappedFileSize;
+    public final int writeBufferSize;
+    public final MemoryBlockCache memoryCache;
+    public final long sourceLingerTime;
+    public final long maxBackgroundCompletionSize;
+    public final long backgroundBandwidth;
+    public final long foregroundBufferTarget;
+    public final UrlCanonicalizer urlCanonicalizer;
+    public final ContentDeduplicator contentDeduplicator;
+    public final SourceTransferListener sourceTransferListener;
 
-    Config(File cacheRoot, FileNameGenerator fileNameGenerator, DiskUsage diskUsage, SourceInfoStorage sourceInfoStorage, HeaderInjector headerInjector) {
+    Config(File cacheRoot, FileNameGenerator fileNameGenerator, DiskUsage diskUsage, SourceInfoStorage sourceInfoStorage, InheritedHeadersInjector headerInjector,
+           boolean verifyChecksums, long maxMappedFileSize, int writeBufferSize, MemoryBlockCache memoryCache,
+           long sourceLingerTime, long maxBackgroundCompletionSize, long backgroundBandwidth, long foregroundBufferTarget,
+           UrlCanonicalizer urlCanonicalizer, ContentDeduplicator contentDeduplicator,
+           SourceTransferListener sourceTransferListener) {
         this.cacheRoot = cacheRoot;
         this.fileNameGenerator = fileNameGenerator;
         this.diskUsage = diskUsage;
         this.sourceInfoStorage = sourceInfoStorage;
         this.headerInjector = headerInjector;
+        this.verifyChecksums = verifyChecksums;
+        this.maxMappedFileSize = maxMappedFileSize;
+        this.writeBufferSize = writeBufferSize;
+        this.memoryCache = memoryCache;
+        this.sourceLingerTime = sourceLingerTime;
+        this.maxBackgroundCompletionSize = maxBackgroundCompletionSize;
+        this.backgroundBandwidth = backgroundBandwidth;
+        this.foregroundBufferTarget = foregroundBufferTarget;
+        this.urlCanonicalizer = urlCanonicalizer;
+        this.contentDeduplicator = contentDeduplicator;
+        this.sourceTransferListener = sourceTransferListener;
     }
 
     File generateCacheFile(String url) {
-        String name = fileNameGenerator.generate(url);
-        return new File(cacheRoot, name);
+        String canonicalUrl = urlCanonicalizer.canonicalize(url);
+        File file = new File(cacheRoot, fileNameGenerator.generate(canonicalUrl));
+        return contentDeduplicator != null ? contentDeduplicator.resolve(canonicalUrl, file) : file;
     }
 
 }
@@ -0,0 +1,137 @@
+package com.danikula.videocache;
+
+import android.util.Log;
+
+import com.danikula.videocache.file.FileCache;
+import com.danikula.videocache.sourcestorage.SourceInfoStorage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.danikula.videocache.Preconditions.checkAllNotNull;
+
+/**
+ * Stores content reachable by different urls (mirrors, CDN hostnames) in one cache file.
+ * <p>
+ * Content is identified by strong validator: {@code ETag} plus length, so only sources served with strong entity
+ * tag are deduplicated. Id is computed when download of url is completed. If content with the same id is already
+ * stored by other file, downloaded file is deleted and url is mapped to existing one in {@link SourceInfoStorage},
+ * so next requests of url are served from it. Files are compared byte by byte before merging, so different content
+ * with equal entity tags (e.g. tags made of modification time and size) is never merged.
+ * <p>
+ * Content of url is unknown until url is downloaded once, so the first download of every url still uses network.
+ */
+final class ContentDeduplicator {
+
+    private static final String TAG = "ContentDeduplicator";
+    private static final int COMPARED_BLOCK_SIZE = 64 * 1024;
+
+    private final File cacheRoot;
+    private final SourceInfoStorage storage;
+
+    ContentDeduplicator(File cacheRoot, SourceInfoStorage storage) {
+        this.cacheRoot = cacheRoot;
+        this.storage = storage;
+    }
+
+    /**
+     * Returns file storing content of url.
+     *
+     * @param canonicalUrl a canonical url.
+     * @param file         a file generated for url.
+     * @return file generated for url if it exists or content of url isn't stored by other file.
+     */
+    File resolve(String canonicalUrl, File file) {
+        if (file.exists()) {
+            return file;
+        }
+        String contentId = storage.getContentId(canonicalUrl);
+        String fileName = contentId != null ? storage.getContentFile(contentId) : null;
+        if (fileName == null) {
+            return file;
+        }
+        File contentFile = new File(cacheRoot, fileName);
+        return contentFile.exists() ? contentFile : file;
+    }
+
+    /**
+     * Indexes content of completed cache, deleting its file if the same content is already stored.
+     *
+     * @param canonicalUrl a canonical url of cached source.
+     * @param etag         an entity tag of source, may be {@code null}.
+     * @param cache        a completed cache of source.
+     */
+    void onCompleted(String canonicalUrl, String etag, FileCache cache) {
+        checkAllNotNull(canonicalUrl, cache);
+        if (!isStrong(etag)) {
+            return;
+        }
+        File file = cache.getFile();
+        try {
+            long length = file.length();
+            String contentId = "etag:" + etag + ":" + length;
+            synchronized (this) {
+                String fileName = storage.getContentFile(contentId);
+                File contentFile = fileName != null ? new File(cacheRoot, fileName) : null;
+                if (contentFile == null || contentFile.equals(file) || !contentFile.exists()) {
+                    storage.putContentFile(contentId, file.getName());
+                } else if (!hasSameContent(file, contentFile)) {
+                    Log.w(TAG, "Content of " + file + " doesn't match " + contentFile + " with the same id " + contentId);
+                    return;
+                } else {
+                    cache.delete();
+                    Log.d(TAG, "Content of " + canonicalUrl + " is already stored by " + contentFile + ", " + file + " is deleted");
+                }
+                storage.putContentId(canonicalUrl, contentId);
+            }
+        } catch (IOException | ProxyCacheException e) {
+            Log.e(TAG, "Error deduplicating content of " + file, e);
+        }
+    }
+
+    private boolean isStrong(String etag) {
+        return etag != null && !etag.isEmpty() && !etag.startsWith("W/");
+    }
+
+    private boolean hasSameContent(File file, File otherFile) throws IOException {
+        if (file.length() != otherFile.length()) {
+            return false;
+        }
+        InputStream in = new FileInputStream(file);
+        InputStream otherIn = new FileInputStream(otherFile);
+        try {
+            byte[] buffer = new byte[COMPARED_BLOCK_SIZE];
+            byte[] otherBuffer = new byte[COMPARED_BLOCK_SIZE];
+            int readBytes;
+            while ((readBytes = readFully(in, buffer)) > 0) {
+                if (readFully(otherIn, otherBuffer) != readBytes || !equals(buffer, otherBuffer, readBytes)) {
+                    return false;
+                }
+            }
+            return readFully(otherIn, otherBuffer) == 0;
+        } finally {
+            ProxyCacheUtils.close(in);
+            ProxyCacheUtils.close(otherIn);
+        }
+    }
+
+    private int readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        int readBytes;
+        while (offset < buffer.length && (readBytes = in.read(buffer, offset, buffer.length - offset)) != -1) {
+            offset += readBytes;
+        }
+        return offset;
+    }
+
+    private boolean equals(byte[] first, byte[] second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (first[i] != second[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
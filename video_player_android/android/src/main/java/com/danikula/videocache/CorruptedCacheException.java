@@ -0,0 +1,17 @@
+package com.danikula.videocache;
+
+/**
+ * Indicates that a block of cached data doesn't match its stored checksum.
+ * Holds position of the damaged block, so only this block can be fetched again.
+ */
+public class CorruptedCacheException extends ProxyCacheException {
+
+    public final long offset;
+    public final int length;
+
+    public CorruptedCacheException(String message, long offset, int length) {
+        super(message);
+        this.offset = offset;
+        this.length = length;
+    }
+}
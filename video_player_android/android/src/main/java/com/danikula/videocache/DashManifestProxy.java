@@ -0,0 +1,290 @@
+package com.danikula.videocache;
+
+import android.util.Log;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Serves DASH manifests (MPD) with segment urls rewritten to proxy urls.
+ * <p>
+ * Every url of {@code SegmentTemplate}, {@code SegmentList} and {@code SegmentBase} is resolved against its
+ * {@code BaseURL} chain and replaced by absolute proxy url, so initialization and media segments are cached
+ * as separate files. Template identifiers like {@code $Number$} are kept unencoded, player substitutes them
+ * in proxy url. {@code BaseURL} itself is rewritten too: representation indexed by {@code SegmentBase} is
+ * single file requested by ranges, it is served from cache like progressive video.
+ * <p>
+ * Static manifest is kept in memory for long, dynamic one for half of its {@code minimumUpdatePeriod}.
+ */
+final class DashManifestProxy extends ManifestProxy {
+
+    private static final String TAG = "DashManifestProxy";
+    private static final String MIME = "application/dash+xml";
+    private static final Pattern TEMPLATE_IDENTIFIER_PATTERN = Pattern.compile("\\$[A-Za-z]*(%0\\d+d)?\\$");
+    private static final Pattern DURATION_PATTERN = Pattern.compile("P(?:(\\d+)D)?T?(?:(\\d+)H)?(?:(\\d+)M)?(?:([\\d.]+)S)?");
+    private static final Pattern UPDATE_PERIOD_PATTERN = Pattern.compile("minimumUpdatePeriod=\"([^\"]*)\"");
+    private static final Pattern DYNAMIC_TYPE_PATTERN = Pattern.compile("type=\"dynamic\"");
+    private static final Pattern DOCTYPE_PATTERN = Pattern.compile("<!DOCTYPE", Pattern.CASE_INSENSITIVE);
+    private static final String BASE_URL = "BaseURL";
+    private static final String SEGMENT_TEMPLATE = "SegmentTemplate";
+    private static final String SEGMENT_LIST = "SegmentList";
+    private static final String SEGMENT_BASE = "SegmentBase";
+
+    DashManifestProxy(String proxyBaseUrl, InheritedHeadersInjector headerInjector) {
+        super(proxyBaseUrl, headerInjector);
+    }
+
+    @Override
+    protected boolean hasManifestExtension(String path) {
+        return path.endsWith(".mpd");
+    }
+
+    @Override
+    protected String getMime() {
+        return MIME;
+    }
+
+    @Override
+    protected String rewrite(String content, String url, String baseUrl) throws ProxyCacheException {
+        try {
+            if (DOCTYPE_PATTERN.matcher(content).find()) {
+                // entities declared by manifest could read local files or blow up memory
+                throw new ProxyCacheException("Manifest with DOCTYPE is rejected: " + url);
+            }
+            Document document = newDocumentBuilderFactory().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(content)));
+            rewriteElement(document.getDocumentElement(), url, baseUrl, null, null);
+            StringWriter writer = new StringWriter(content.length() * 2);
+            TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (ParserConfigurationException | SAXException | IOException | TransformerException e) {
+            throw new ProxyCacheException("Error rewriting manifest " + url, e);
+        }
+    }
+
+    @Override
+    protected void inheritHeaders(String url, String parentUrl) {
+        if (TEMPLATE_IDENTIFIER_PATTERN.matcher(url).find()) {
+            // player requests urls with substituted identifiers, so template can't be looked up as is
+            inheritHeaders(toUrlPattern(url), parentUrl);
+        } else {
+            super.inheritHeaders(url, parentUrl);
+        }
+    }
+
+    @Override
+    protected long getTimeToLive(String content) {
+        if (!DYNAMIC_TYPE_PATTERN.matcher(content).find()) {
+            return STATIC_MANIFEST_TTL;
+        }
+        Matcher matcher = UPDATE_PERIOD_PATTERN.matcher(content);
+        long updatePeriod = matcher.find() ? parseDurationMs(matcher.group(1)) : -1;
+        return updatePeriod > 0 ? updatePeriod / 2 : DEFAULT_LIVE_MANIFEST_TTL;
+    }
+
+    @Override
+    protected String encode(String url) {
+        // identifiers are substituted by player, so they must stay as is in proxy url
+        Matcher matcher = TEMPLATE_IDENTIFIER_PATTERN.matcher(url);
+        StringBuilder result = new StringBuilder(url.length() * 2);
+        int start = 0;
+        while (matcher.find()) {
+            result.append(super.encode(url.substring(start, matcher.start()))).append(matcher.group());
+            start = matcher.end();
+        }
+        return result.append(super.encode(url.substring(start))).toString();
+    }
+
+    /**
+     * Converts url template to pattern matching urls made of it, e.g. {@code seg-$Number%05d$.m4s}.
+     */
+    static Pattern toUrlPattern(String template) {
+        Matcher matcher = TEMPLATE_IDENTIFIER_PATTERN.matcher(template);
+        StringBuilder regex = new StringBuilder(template.length() * 2);
+        int start = 0;
+        while (matcher.find()) {
+            regex.append(Pattern.quote(template.substring(start, matcher.start())));
+            regex.append("$$".equals(matcher.group()) ? Pattern.quote("$") : "[^/?#]*");
+            start = matcher.end();
+        }
+        return Pattern.compile(regex.append(Pattern.quote(template.substring(start))).toString());
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        setFeature(factory, "http://apache.org/xml/features/disallow-doctype-decl", true);
+        setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+        setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+        return factory;
+    }
+
+    private static void setFeature(DocumentBuilderFactory factory, String feature, boolean value) {
+        try {
+            factory.setFeature(feature, value);
+        } catch (ParserConfigurationException e) {
+            // parser of Android supports few features, DOCTYPE is rejected before parsing anyway
+            Log.d(TAG, "XML parser doesn't support feature " + feature);
+        }
+    }
+
+    /**
+     * Rewrites urls of element and its descendants.
+     *
+     * @param element           element to be rewritten.
+     * @param url               url of manifest.
+     * @param baseUrl           base url inherited from ancestors.
+     * @param inheritedTemplate original {@code SegmentTemplate} of closest ancestor, if any.
+     * @param inheritedList     original {@code SegmentList} of closest ancestor, if any.
+     */
+    private void rewriteElement(Element element, String url, String baseUrl, Element inheritedTemplate,
+                                Element inheritedList) {
+        List<Element> baseUrls = getChildren(element, BASE_URL);
+        if (!baseUrls.isEmpty()) {
+            // alternative base urls are dropped, segment urls are resolved against the first one
+            String ownBaseUrl = resolve(baseUrl, baseUrls.get(0).getTextContent().trim());
+            for (int i = 1; i < baseUrls.size(); i++) {
+                element.removeChild(baseUrls.get(i));
+            }
+            baseUrls.get(0).setTextContent(toProxyUrl(ownBaseUrl, url, baseUrl, false));
+            // segment info defined by ancestor is relative to this base url, so it gets its own copy
+            if (inheritedTemplate != null && getChildren(element, SEGMENT_TEMPLATE).isEmpty()) {
+                element.appendChild(inheritedTemplate.cloneNode(true));
+            }
+            if (inheritedList != null && getChildren(element, SEGMENT_LIST).isEmpty()) {
+                element.appendChild(inheritedList.cloneNode(true));
+            }
+            baseUrl = ownBaseUrl;
+        }
+        for (Element child : getChildElements(element)) {
+            String name = getName(child);
+            if (SEGMENT_TEMPLATE.equals(name)) {
+                // urls this template inherits are relative to its own base url, so they are rewritten here too
+                mergeInherited(child, inheritedTemplate);
+                inheritedTemplate = (Element) child.cloneNode(true);
+                rewriteAttributes(child, url, baseUrl, "media", "initialization", "index", "bitstreamSwitching");
+                rewriteSegmentInfo(child, url, baseUrl);
+            } else if (SEGMENT_LIST.equals(name)) {
+                mergeInherited(child, inheritedList);
+                inheritedList = (Element) child.cloneNode(true);
+                rewriteSegmentInfo(child, url, baseUrl);
+            } else if (SEGMENT_BASE.equals(name)) {
+                rewriteSegmentInfo(child, url, baseUrl);
+            }
+        }
+        for (Element child : getChildElements(element)) {
+            String name = getName(child);
+            if ("Location".equals(name)) {
+                child.setTextContent(toProxyUrl(child.getTextContent().trim(), url, baseUrl, true));
+            } else if (!BASE_URL.equals(name) && !SEGMENT_TEMPLATE.equals(name) && !SEGMENT_LIST.equals(name)
+                    && !SEGMENT_BASE.equals(name)) {
+                rewriteElement(child, url, baseUrl, inheritedTemplate, inheritedList);
+            }
+        }
+    }
+
+    /**
+     * Copies attributes and child elements segment info doesn't define from original segment info of ancestor.
+     */
+    private void mergeInherited(Element segmentInfo, Element inherited) {
+        if (inherited == null) {
+            return;
+        }
+        NamedNodeMap attributes = inherited.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            if (!segmentInfo.hasAttribute(attribute.getName())) {
+                segmentInfo.setAttributeNode((Attr) attribute.cloneNode(true));
+            }
+        }
+        for (Element child : getChildElements(inherited)) {
+            if (getChildren(segmentInfo, getName(child)).isEmpty()) {
+                segmentInfo.appendChild(child.cloneNode(true));
+            }
+        }
+    }
+
+    private void rewriteSegmentInfo(Element segmentInfo, String url, String baseUrl) {
+        for (Element child : getChildElements(segmentInfo)) {
+            String name = getName(child);
+            if ("Initialization".equals(name) || "RepresentationIndex".equals(name)
+                    || "BitstreamSwitching".equals(name)) {
+                rewriteAttributes(child, url, baseUrl, "sourceURL");
+            } else if ("SegmentURL".equals(name)) {
+                rewriteAttributes(child, url, baseUrl, "media", "index");
+            }
+        }
+    }
+
+    private void rewriteAttributes(Element element, String url, String baseUrl, String... attributes) {
+        for (String attribute : attributes) {
+            if (element.hasAttribute(attribute)) {
+                element.setAttribute(attribute, toProxyUrl(element.getAttribute(attribute), url, baseUrl, false));
+            }
+        }
+    }
+
+    private List<Element> getChildren(Element element, String name) {
+        List<Element> children = new ArrayList<>();
+        for (Element child : getChildElements(element)) {
+            if (name.equals(getName(child))) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    private List<Element> getChildElements(Element element) {
+        NodeList nodes = element.getChildNodes();
+        List<Element> children = new ArrayList<>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private String getName(Element element) {
+        return element.getLocalName() != null ? element.getLocalName() : element.getNodeName();
+    }
+
+    private long parseDurationMs(String duration) {
+        Matcher matcher = DURATION_PATTERN.matcher(duration);
+        if (!matcher.matches()) {
+            return -1;
+        }
+        double seconds = parseOrZero(matcher.group(1)) * 24 * 60 * 60 + parseOrZero(matcher.group(2)) * 60 * 60
+                + parseOrZero(matcher.group(3)) * 60 + parseOrZero(matcher.group(4));
+        return (long) (seconds * 1000);
+    }
+
+    private double parseOrZero(String value) {
+        return value == null ? 0 : Double.parseDouble(value);
+    }
+}
@@ -18,18 +18,24 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
  */
 class GetRequest {
 
-    private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("[R,r]ange:[ ]?bytes=(\\d*)-");
+    private static final Pattern RANGE_HEADER_PATTERN = Pattern.compile("[R,r]ange:[ ]?bytes=(\\d*)-(\\d*)");
     private static final Pattern URL_PATTERN = Pattern.compile("GET /(.*) HTTP");
 
     public final String uri;
     public final long rangeOffset;
+    /**
+     * Offset of last requested byte (inclusive) or {@code -1} if data is requested up to the end.
+     */
+    public final long rangeEnd;
     public final boolean partial;
 
     public GetRequest(String request) {
         checkNotNull(request);
-        long offset = findRangeOffset(request);
-        this.rangeOffset = Math.max(0, offset);
-        this.partial = offset >= 0;
+        Matcher rangeMatcher = RANGE_HEADER_PATTERN.matcher(request);
+        boolean rangeFound = rangeMatcher.find() && !rangeMatcher.group(1).isEmpty(); // suffix range isn't supported
+        this.rangeOffset = rangeFound ? Long.parseLong(rangeMatcher.group(1)) : 0;
+        this.rangeEnd = rangeFound && !rangeMatcher.group(2).isEmpty() ? Long.parseLong(rangeMatcher.group(2)) : -1;
+        this.partial = rangeFound;
         this.uri = findUri(request);
     }
 
@@ -43,15 +49,6 @@ class GetRequest {
         return new GetRequest(stringRequest.toString());
     }
 
-    private long findRangeOffset(String request) {
-        Matcher matcher = RANGE_HEADER_PATTERN.matcher(request);
-        if (matcher.find()) {
-            String rangeValue = matcher.group(1);
-            return Long.parseLong(rangeValue);
-        }
-        return -1;
-    }
-
     private String findUri(String request) {
         Matcher matcher = URL_PATTERN.matcher(request);
         if (matcher.find()) {
@@ -64,6 +61,7 @@ class GetRequest {
     public String toString() {
         return "GetRequest{" +
                 "rangeOffset=" + rangeOffset +
+                ", rangeEnd=" + rangeEnd +
                 ", partial=" + partial +
                 ", uri='" + uri + '\'' +
                 '}';
@@ -0,0 +1,87 @@
+package com.danikula.videocache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves HLS playlists with segment, key, init section and nested playlist uris rewritten to proxy urls.
+ * <p>
+ * Playlist of live stream is kept in memory for half of its target duration, so player sees updates,
+ * master playlist and playlist of VOD are kept for longer.
+ */
+final class HlsPlaylistProxy extends ManifestProxy {
+
+    private static final String MIME = "application/vnd.apple.mpegurl";
+    private static final Pattern URI_ATTRIBUTE_PATTERN = Pattern.compile("URI=\"([^\"]*)\"");
+    private static final Pattern TARGET_DURATION_PATTERN = Pattern.compile("#EXT-X-TARGETDURATION:\\s*(\\d+)");
+    // tags whose URI attribute points to another playlist, not to media resource
+    private static final String[] PLAYLIST_TAGS = {"#EXT-X-MEDIA:", "#EXT-X-I-FRAME-STREAM-INF:", "#EXT-X-RENDITION-REPORT:"};
+    private static final String STREAM_INF_TAG = "#EXT-X-STREAM-INF:";
+
+    HlsPlaylistProxy(String proxyBaseUrl, InheritedHeadersInjector headerInjector) {
+        super(proxyBaseUrl, headerInjector);
+    }
+
+    @Override
+    protected boolean hasManifestExtension(String path) {
+        return path.endsWith(".m3u8") || path.endsWith(".m3u");
+    }
+
+    @Override
+    protected String getMime() {
+        return MIME;
+    }
+
+    @Override
+    protected String rewrite(String content, String url, String baseUrl) {
+        StringBuilder result = new StringBuilder(content.length() * 2);
+        boolean nextUriIsPlaylist = false;
+        for (String line : content.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                result.append(line);
+            } else if (trimmed.startsWith("#")) {
+                if (trimmed.startsWith(STREAM_INF_TAG)) {
+                    nextUriIsPlaylist = true;
+                }
+                result.append(rewriteAttributes(line, url, baseUrl, isPlaylistTag(trimmed)));
+            } else {
+                result.append(toProxyUrl(trimmed, url, baseUrl, nextUriIsPlaylist));
+                nextUriIsPlaylist = false;
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    @Override
+    protected long getTimeToLive(String content) {
+        if (content.contains("#EXT-X-ENDLIST") || content.contains(STREAM_INF_TAG)) {
+            return STATIC_MANIFEST_TTL;
+        }
+        // live playlist is reloaded by player every target duration, half of it keeps proxy from serving stale one
+        Matcher matcher = TARGET_DURATION_PATTERN.matcher(content);
+        return matcher.find() ? TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1))) / 2 : DEFAULT_LIVE_MANIFEST_TTL;
+    }
+
+    private String rewriteAttributes(String line, String url, String baseUrl, boolean playlist) {
+        Matcher matcher = URI_ATTRIBUTE_PATTERN.matcher(line);
+        StringBuffer result = new StringBuffer(line.length());
+        while (matcher.find()) {
+            String proxyUrl = toProxyUrl(matcher.group(1), url, baseUrl, playlist);
+            matcher.appendReplacement(result, Matcher.quoteReplacement("URI=\"" + proxyUrl + "\""));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private boolean isPlaylistTag(String line) {
+        for (String tag : PLAYLIST_TAGS) {
+            if (line.startsWith(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -8,6 +8,8 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
 import java.util.Locale;
 
 import static com.danikula.videocache.ProxyCacheUtils.DEFAULT_BUFFER_SIZE;
@@ -24,9 +26,18 @@ class HttpProxyCache extends ProxyCache {
     private final HttpUrlSource source;
     private final FileCache cache;
     private CacheListener listener;
+    private volatile BackgroundThrottle backgroundThrottle;
+    private ContentDeduplicator contentDeduplicator;
+    private String canonicalUrl;
+    private SourceTransferListener transferListener;
+    private boolean transferring;
 
     public HttpProxyCache(HttpUrlSource source, FileCache cache) {
-        super(source, cache);
+        this(source, cache, 0);
+    }
+
+    public HttpProxyCache(HttpUrlSource source, FileCache cache, int writeBufferSize) {
+        super(source, cache, writeBufferSize);
         this.cache = cache;
         this.source = source;
     }
@@ -35,16 +46,49 @@ class HttpProxyCache extends ProxyCache {
         this.listener = cacheListener;
     }
 
+    /**
+     * Sets throttle for source while cache has no played clients, {@code null} to read source at full speed.
+     */
+    void setBackgroundThrottle(BackgroundThrottle backgroundThrottle) {
+        this.backgroundThrottle = backgroundThrottle;
+    }
+
+    /**
+     * Sets deduplicator to index content of cache once it is completed.
+     *
+     * @param contentDeduplicator a deduplicator of cache directory.
+     * @param canonicalUrl        a canonical url of source.
+     */
+    void setContentDeduplicator(ContentDeduplicator contentDeduplicator, String canonicalUrl) {
+        this.contentDeduplicator = contentDeduplicator;
+        this.canonicalUrl = canonicalUrl;
+    }
+
+    /**
+     * Sets listener of data read from network while source isn't throttled.
+     */
+    void setSourceTransferListener(SourceTransferListener transferListener) {
+        this.transferListener = transferListener;
+    }
+
     public void processRequest(GetRequest request, Socket socket) throws IOException, ProxyCacheException {
         OutputStream out = new BufferedOutputStream(socket.getOutputStream());
         String responseHeaders = newResponseHeaders(request);
         out.write(responseHeaders.getBytes("UTF-8"));
 
         long offset = request.rangeOffset;
+        // range with end is requested by players reading indexed media (e.g. DASH SegmentBase), only it is sent
+        long end = request.rangeEnd >= 0 ? request.rangeEnd + 1 : Long.MAX_VALUE;
         if (isUseCache(request)) {
-            responseWithCache(out, offset);
+            SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                out.flush(); // headers must be sent before data written directly to channel
+                responseWithCache(channel, offset, end);
+            } else {
+                responseWithCache(out, offset, end);
+            }
         } else {
-            responseWithoutCache(out, offset);
+            responseWithoutCache(out, offset, end);
         }
     }
 
@@ -61,52 +105,155 @@ class HttpProxyCache extends ProxyCache {
         boolean mimeKnown = !TextUtils.isEmpty(mime);
         long length = cache.isCompleted() ? cache.available() : source.length();
         boolean lengthKnown = length >= 0;
-        long contentLength = request.partial ? length - request.rangeOffset : length;
+        long lastOffset = request.rangeEnd >= 0 && lengthKnown ? Math.min(request.rangeEnd, length - 1) : length - 1;
+        long contentLength = request.partial ? lastOffset + 1 - request.rangeOffset : length;
         boolean addRange = lengthKnown && request.partial;
         return new StringBuilder()
                 .append(request.partial ? "HTTP/1.1 206 PARTIAL CONTENT\n" : "HTTP/1.1 200 OK\n")
                 .append("Accept-Ranges: bytes\n")
                 .append(lengthKnown ? format("Content-Length: %d\n", contentLength) : "")
-                .append(addRange ? format("Content-Range: bytes %d-%d/%d\n", request.rangeOffset, length - 1, length) : "")
+                .append(addRange ? format("Content-Range: bytes %d-%d/%d\n", request.rangeOffset, lastOffset, length) : "")
                 .append(mimeKnown ? format("Content-Type: %s\n", mime) : "")
                 .append("\n") // headers end
                 .toString();
     }
 
-    private void responseWithCache(OutputStream out, long offset) throws ProxyCacheException, IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int readBytes;
-        while ((readBytes = read(buffer, offset, buffer.length)) != -1) {
-            out.write(buffer, 0, readBytes);
-            offset += readBytes;
+    private void responseWithCache(OutputStream out, long offset, long end) throws ProxyCacheException, IOException {
+        AdaptiveBuffer buffer = new AdaptiveBuffer();
+        try {
+            int readBytes;
+            while (offset < end
+                    && (readBytes = read(buffer.get(), offset, (int) Math.min(buffer.get().length, end - offset))) != -1) {
+                out.write(buffer.get(), 0, readBytes);
+                offset += readBytes;
+                buffer.onTransferred(readBytes);
+            }
+            out.flush();
+        } finally {
+            buffer.release();
         }
-        out.flush();
     }
 
-    private void responseWithoutCache(OutputStream out, long offset) throws ProxyCacheException, IOException {
+    private void responseWithCache(SocketChannel channel, long offset, long end) throws ProxyCacheException, IOException {
+        AdaptiveBuffer buffer = new AdaptiveBuffer();
+        long transferred;
+        try {
+            while (offset < end && (transferred = transferTo(channel, buffer.get(), offset, end - offset)) != -1) {
+                offset += transferred;
+                buffer.onTransferred(transferred);
+            }
+        } catch (IOException e) {
+            // writing to channel fails mostly because client closes connection, report it like socket's stream does
+            SocketException socketException = new SocketException("Error writing data to client: " + e.getMessage());
+            socketException.initCause(e);
+            throw socketException;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private void responseWithoutCache(OutputStream out, long offset, long end) throws ProxyCacheException, IOException {
         HttpUrlSource newSourceNoCache = new HttpUrlSource(this.source);
+        AdaptiveBuffer buffer = new AdaptiveBuffer();
         try {
             newSourceNoCache.open((int) offset);
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
             int readBytes;
-            while ((readBytes = newSourceNoCache.read(buffer)) != -1) {
-                out.write(buffer, 0, readBytes);
+            while (offset < end && (readBytes = newSourceNoCache.read(buffer.get())) != -1) {
+                out.write(buffer.get(), 0, (int) Math.min(readBytes, end - offset));
                 offset += readBytes;
+                buffer.onTransferred(readBytes);
             }
             out.flush();
         } finally {
+            buffer.release();
             newSourceNoCache.close();
         }
     }
 
+    @Override
+    protected void prepareCache(long sourceLength) throws ProxyCacheException {
+        if (sourceLength > 0) {
+            cache.preallocate(sourceLength);
+        }
+    }
+
+    @Override
+    protected void repairCorruptedBlock(CorruptedCacheException e) throws ProxyCacheException {
+        HttpUrlSource blockSource = new HttpUrlSource(this.source);
+        byte[] block = new byte[e.length];
+        int blockLength = 0;
+        try {
+            blockSource.open(e.offset);
+            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+            int readBytes;
+            while (blockLength < block.length && (readBytes = blockSource.read(buffer)) != -1) {
+                int count = Math.min(readBytes, block.length - blockLength);
+                System.arraycopy(buffer, 0, block, blockLength, count);
+                blockLength += count;
+            }
+        } finally {
+            blockSource.close();
+        }
+        cache.repair(e.offset, block, blockLength);
+    }
+
+    @Override
+    protected void onCacheCompleted() {
+        if (contentDeduplicator != null) {
+            contentDeduplicator.onCompleted(canonicalUrl, source.getEtag(), cache);
+        }
+    }
+
+    @Override
+    protected void onSourceOpened() {
+        if (backgroundThrottle == null) {
+            startTransfer();
+        }
+    }
+
+    @Override
+    protected void onSourceClosed() {
+        endTransfer();
+    }
+
+    @Override
+    protected void throttleSource(int readBytes) throws ProxyCacheException {
+        BackgroundThrottle backgroundThrottle = this.backgroundThrottle;
+        if (backgroundThrottle != null) {
+            // throttled reading isn't rate of network
+            endTransfer();
+            backgroundThrottle.onBackgroundRead(readBytes);
+        } else {
+            startTransfer();
+            if (transferListener != null) {
+                transferListener.onBytesTransferred(source.getUrl(), readBytes);
+            }
+        }
+    }
+
+    // transfer is started and ended only in thread reading source
+    private void startTransfer() {
+        if (transferListener != null && !transferring) {
+            transferring = true;
+            transferListener.onTransferStart(source.getUrl());
+        }
+    }
+
+    private void endTransfer() {
+        if (transferListener != null && transferring) {
+            transferring = false;
+            transferListener.onTransferEnd(source.getUrl());
+        }
+    }
+
     private String format(String pattern, Object... args) {
         return String.format(Locale.US, pattern, args);
     }
 
     @Override
-    protected void onCachePercentsAvailableChanged(int percents) {
+    protected void onCacheProgress(long cacheAvailable, long sourceLength) {
         if (listener != null) {
-            listener.onCacheAvailable(cache.file, source.getUrl(), percents);
+            listener.onCacheAvailable(cache.file, source.getUrl(), cacheAvailable, sourceLength);
         }
     }
 }
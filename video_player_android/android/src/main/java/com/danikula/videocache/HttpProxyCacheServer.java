@@ -6,6 +6,7 @@ import android.util.Log;
 
 import com.danikula.videocache.file.DiskUsage;
 import com.danikula.videocache.file.FileNameGenerator;
+import com.danikula.videocache.file.MemoryBlockCache;
 import com.danikula.videocache.file.Md5FileNameGenerator;
 import com.danikula.videocache.file.TotalCountLruDiskUsage;
 import com.danikula.videocache.file.TotalSizeLruDiskUsage;
@@ -17,15 +18,25 @@ import com.danikula.videocache.sourcestorage.SourceInfoStorageFactory;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Locale;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.danikula.videocache.Preconditions.checkAllNotNull;
 import static com.danikula.videocache.Preconditions.checkNotNull;
@@ -54,14 +65,19 @@ public class HttpProxyCacheServer {
     private static final String TAG = "HttpProxyCacheServer";
     private static final String PROXY_HOST = "127.0.0.1";
 
-    private final Object clientsLock = new Object();
     private final ExecutorService socketProcessor = Executors.newFixedThreadPool(8);
-    private final Map<String, HttpProxyCacheServerClients> clientsMap = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService lingerScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ConcurrentMap<String, HttpProxyCacheServerClients> clientsMap = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionsCount = new AtomicInteger();
+    private final ProgressDispatcher progressDispatcher = new ProgressDispatcher();
     private final ServerSocket serverSocket;
     private final int port;
     private final Thread waitConnectionThread;
     private final Config config;
     private final Pinger pinger;
+    private final FutureTask<Boolean> readiness;
+    private final BackgroundThrottle backgroundThrottle;
+    private final ManifestProxy[] manifestProxies;
 
     public HttpProxyCacheServer(Context context) {
         this(new Builder(context).buildConfig());
@@ -69,9 +85,14 @@ public class HttpProxyCacheServer {
 
     private HttpProxyCacheServer(Config config) {
         this.config = checkNotNull(config);
+        this.backgroundThrottle = config.backgroundBandwidth > 0
+                ? new BackgroundThrottle(config.backgroundBandwidth, config.foregroundBufferTarget, clientsMap.values())
+                : null;
         try {
             InetAddress inetAddress = InetAddress.getByName(PROXY_HOST);
-            this.serverSocket = new ServerSocket(0, 8, inetAddress);
+            // socket is created by channel, so accepted client sockets have channels for zero-copy transfers
+            this.serverSocket = ServerSocketChannel.open().socket();
+            this.serverSocket.bind(new InetSocketAddress(inetAddress, 0), 8);
             this.port = serverSocket.getLocalPort();
             IgnoreHostProxySelector.install(PROXY_HOST, port);
             CountDownLatch startSignal = new CountDownLatch(1);
@@ -79,18 +100,39 @@ public class HttpProxyCacheServer {
             this.waitConnectionThread.start();
             startSignal.await(); // freeze thread, wait for server starts
             this.pinger = new Pinger(PROXY_HOST, port);
-            Log.i(TAG,"Proxy cache server started. Is it alive? " + isAlive());
+            this.manifestProxies = new ManifestProxy[]{
+                    new HlsPlaylistProxy(appendToProxyUrl(""), config.headerInjector),
+                    new DashManifestProxy(appendToProxyUrl(""), config.headerInjector)
+            };
+            // server socket is already bound and queues connections, so pinging doesn't block creator of server
+            this.readiness = new FutureTask<>(new PingCallable());
+            new Thread(readiness, "Proxy pinger").start();
         } catch (IOException | InterruptedException e) {
             socketProcessor.shutdown();
+            lingerScheduler.shutdown();
             throw new IllegalStateException("Error starting local proxy server", e);
         }
     }
 
+    /**
+     * Returns future that completes when server is checked by first ping.
+     * <p>
+     * Server is started in constructor, but it is pinged asynchronously. Until ping is done {@link #getProxyUrl(String)}
+     * returns proxy url optimistically, after failed ping it returns original url. Callers that must know
+     * whether proxy actually works can wait for this future.
+     *
+     * @return future with {@code true} if server responds to ping or {@code false} otherwise.
+     */
+    public Future<Boolean> getReadiness() {
+        return readiness;
+    }
+
     /**
      * Returns url that wrap original url and should be used for client (MediaPlayer, ExoPlayer, etc).
      * <p>
      * If file for this url is fully cached (it means method {@link #isCached(String)} returns {@code true})
-     * then file:// uri to cached file will be returned.
+     * then file:// uri to cached file will be returned. Manifests of HLS and DASH streams are always served by proxy,
+     * which rewrites uris of segments inside of them to proxy urls.
      * <p>
      * Calling this method has same effect as calling {@link #getProxyUrl(String, boolean)} with 2nd parameter set to {@code true}.
      *
@@ -112,7 +154,7 @@ public class HttpProxyCacheServer {
      * @return a wrapped by proxy url if file is not fully cached or url pointed to cache file otherwise (if {@code allowCachedFileUri} is {@code true}).
      */
     public String getProxyUrl(String url, boolean allowCachedFileUri) {
-        if (allowCachedFileUri && isCached(url)) {
+        if (allowCachedFileUri && findManifestProxy(url) == null && isCached(url)) {
             File cacheFile = getCacheFile(url);
             touchFileSafely(cacheFile);
             return Uri.fromFile(cacheFile).toString();
@@ -122,32 +164,44 @@ public class HttpProxyCacheServer {
 
     public void registerCacheListener(CacheListener cacheListener, String url) {
         checkAllNotNull(cacheListener, url);
-        synchronized (clientsLock) {
-            try {
-                getClients(url).registerCacheListener(cacheListener);
-            } catch (ProxyCacheException e) {
-                Log.w(TAG,"Error registering cache listener", e);
-            }
+        HttpProxyCacheServerClients clients = acquireClients(url);
+        try {
+            clients.registerCacheListener(cacheListener);
+        } finally {
+            clients.release();
+        }
+    }
+
+    /**
+     * Caches data of url up to {@code end} without client, blocks until data is cached, see {@link PrefetchScheduler}.
+     */
+    void prefetch(String url, long end, boolean foreground, AtomicBoolean cancelled) throws ProxyCacheException {
+        checkAllNotNull(url, cancelled);
+        ManifestProxy manifestProxy = findManifestProxy(url);
+        if (manifestProxy != null) {
+            manifestProxy.getManifest(url); // segments are unknown until manifest is parsed by player
+            return;
+        }
+        HttpProxyCacheServerClients clients = acquireClients(url);
+        try {
+            clients.prefetch(end, foreground, cancelled);
+        } finally {
+            clients.release();
         }
     }
 
     public void unregisterCacheListener(CacheListener cacheListener, String url) {
         checkAllNotNull(cacheListener, url);
-        synchronized (clientsLock) {
-            try {
-                getClients(url).unregisterCacheListener(cacheListener);
-            } catch (ProxyCacheException e) {
-                Log.w(TAG, "Error registering cache listener", e);
-            }
+        HttpProxyCacheServerClients clients = clientsMap.get(config.urlCanonicalizer.canonicalize(url));
+        if (clients != null) {
+            clients.unregisterCacheListener(cacheListener);
         }
     }
 
     public void unregisterCacheListener(CacheListener cacheListener) {
         checkNotNull(cacheListener);
-        synchronized (clientsLock) {
-            for (HttpProxyCacheServerClients clients : clientsMap.values()) {
-                clients.unregisterCacheListener(cacheListener);
-            }
+        for (HttpProxyCacheServerClients clients : clientsMap.values()) {
+            clients.unregisterCacheListener(cacheListener);
         }
     }
 
@@ -162,13 +216,29 @@ public class HttpProxyCacheServer {
         return getCacheFile(url).exists();
     }
 
+    /**
+     * Returns length of fully cached file for particular url. Partially cached data is reported
+     * by {@link CacheListener} registered for url.
+     *
+     * @param url an url cache file will be checked for.
+     * @return length of cached file in bytes or {@code -1} if url isn't fully cached.
+     */
+    public long getCachedLength(String url) {
+        checkNotNull(url, "Url can't be null!");
+        File file = getCacheFile(url);
+        return file.exists() ? file.length() : -1;
+    }
+
     public void shutdown() {
         Log.i(TAG,"Shutdown proxy server");
 
         shutdownClients();
+        lingerScheduler.shutdownNow();
+        progressDispatcher.cancel();
 
         config.sourceInfoStorage.release();
 
+        IgnoreHostProxySelector.uninstall(PROXY_HOST, port);
         waitConnectionThread.interrupt();
         try {
             if (!serverSocket.isClosed()) {
@@ -179,18 +249,42 @@ public class HttpProxyCacheServer {
         }
     }
 
+    /**
+     * Releases memory cache of server, if any. Should be called when system asks app to trim memory,
+     * see {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void releaseMemoryCache() {
+        if (config.memoryCache != null) {
+            config.memoryCache.clear();
+        }
+    }
+
     private boolean isAlive() {
-        return pinger.ping(3, 70);   // 70+140+280=max~500ms
+        if (!readiness.isDone()) {
+            return true;
+        }
+        try {
+            return readiness.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return false;
+        }
     }
 
     private String appendToProxyUrl(String url) {
         return String.format(Locale.US, "http://%s:%d/%s", PROXY_HOST, port, ProxyCacheUtils.encode(url));
     }
 
+    private ManifestProxy findManifestProxy(String url) {
+        for (ManifestProxy manifestProxy : manifestProxies) {
+            if (manifestProxy.isManifest(url)) {
+                return manifestProxy;
+            }
+        }
+        return null;
+    }
+
     private File getCacheFile(String url) {
-        File cacheDir = config.cacheRoot;
-        String fileName = config.fileNameGenerator.generate(url);
-        return new File(cacheDir, fileName);
+        return config.generateCacheFile(url);
     }
 
     private void touchFileSafely(File cacheFile) {
@@ -202,12 +296,10 @@ public class HttpProxyCacheServer {
     }
 
     private void shutdownClients() {
-        synchronized (clientsLock) {
-            for (HttpProxyCacheServerClients clients : clientsMap.values()) {
-                clients.shutdown();
-            }
-            clientsMap.clear();
+        for (HttpProxyCacheServerClients clients : clientsMap.values()) {
+            clients.shutdown();
         }
+        clientsMap.clear();
     }
 
     private void waitForRequest() {
@@ -223,15 +315,23 @@ public class HttpProxyCacheServer {
     }
 
     private void processSocket(Socket socket) {
+        connectionsCount.incrementAndGet();
         try {
             GetRequest request = GetRequest.read(socket.getInputStream());
             Log.d("Request to cache proxy:" + request,"");
             String url = ProxyCacheUtils.decode(request.uri);
+            ManifestProxy manifestProxy = findManifestProxy(url);
             if (pinger.isPingRequest(url)) {
                 pinger.responseToPing(socket);
+            } else if (manifestProxy != null) {
+                manifestProxy.processRequest(url, socket);
             } else {
-                HttpProxyCacheServerClients clients = getClients(url);
-                clients.processRequest(request, socket);
+                HttpProxyCacheServerClients clients = acquireClients(url);
+                try {
+                    clients.processRequest(request, socket);
+                } finally {
+                    clients.release();
+                }
             }
         } catch (SocketException e) {
             // There is no way to determine that client closed connection http://stackoverflow.com/a/10241044/999458
@@ -241,28 +341,29 @@ public class HttpProxyCacheServer {
             onError(new ProxyCacheException("Error processing request", e));
         } finally {
             releaseSocket(socket);
-            Log.d("Opened connections: " + getClientsCount(),"");
+            Log.d("Opened connections: " + connectionsCount.decrementAndGet(),"");
         }
     }
 
-    private HttpProxyCacheServerClients getClients(String url) throws ProxyCacheException {
-        synchronized (clientsLock) {
-            HttpProxyCacheServerClients clients = clientsMap.get(url);
+    /**
+     * Returns clients of url, that stay in registry until they are released. Urls with the same canonical url
+     * share clients, source is fetched by url of request that created them.
+     */
+    private HttpProxyCacheServerClients acquireClients(String url) {
+        String key = config.urlCanonicalizer.canonicalize(url);
+        while (true) {
+            HttpProxyCacheServerClients clients = clientsMap.get(key);
             if (clients == null) {
-                clients = new HttpProxyCacheServerClients(url, config);
-                clientsMap.put(url, clients);
+                HttpProxyCacheServerClients newClients = new HttpProxyCacheServerClients(url, key, config, lingerScheduler, clientsMap, progressDispatcher,
+                        backgroundThrottle);
+                clients = clientsMap.putIfAbsent(key, newClients);
+                clients = clients == null ? newClients : clients;
             }
-            return clients;
-        }
-    }
-
-    private int getClientsCount() {
-        synchronized (clientsLock) {
-            int count = 0;
-            for (HttpProxyCacheServerClients clients : clientsMap.values()) {
-                count += clients.getClientsCount();
+            if (clients.acquire()) {
+                return clients;
             }
-            return count;
+            // clients became idle and are removing themselves from registry, try again
+            clientsMap.remove(key, clients);
         }
     }
 
@@ -325,6 +426,16 @@ public class HttpProxyCacheServer {
         }
     }
 
+    private final class PingCallable implements Callable<Boolean> {
+
+        @Override
+        public Boolean call() {
+            boolean alive = pinger.ping(3, 70);   // 70+140+280=max~500ms
+            Log.i(TAG, "Proxy cache server started. Is it alive? " + alive);
+            return alive;
+        }
+    }
+
     private final class SocketProcessorRunnable implements Runnable {
 
         private final Socket socket;
@@ -345,19 +456,36 @@ public class HttpProxyCacheServer {
     public static final class Builder {
 
         private static final long DEFAULT_MAX_SIZE = 512 * 1024 * 1024;
+        private static final long DEFAULT_MAX_MAPPED_FILE_SIZE = 8 * 1024 * 1024;
+        private static final int DEFAULT_WRITE_BUFFER_SIZE = 1024 * 1024;
 
+        private final Context context;
         private File cacheRoot;
         private FileNameGenerator fileNameGenerator;
         private DiskUsage diskUsage;
         private SourceInfoStorage sourceInfoStorage;
         private HeaderInjector headerInjector;
+        private boolean verifyChecksums;
+        private long maxMappedFileSize;
+        private int writeBufferSize;
+        private MemoryBlockCache memoryCache;
+        private long sourceLingerTime;
+        private long maxBackgroundCompletionSize;
+        private long backgroundBandwidth;
+        private long foregroundBufferTarget;
+        private UrlCanonicalizer urlCanonicalizer;
+        private boolean deduplicateContent;
+        private SourceTransferListener sourceTransferListener;
 
         public Builder(Context context) {
+            this.context = checkNotNull(context);
             this.sourceInfoStorage = SourceInfoStorageFactory.newSourceInfoStorage(context);
-            this.cacheRoot = StorageUtils.getIndividualCacheDirectory(context);
             this.diskUsage = new TotalSizeLruDiskUsage(DEFAULT_MAX_SIZE);
             this.fileNameGenerator = new Md5FileNameGenerator();
             this.headerInjector = new EmptyHeadersInjector();
+            this.urlCanonicalizer = new RuleBasedUrlCanonicalizer.Builder().build();
+            this.maxMappedFileSize = DEFAULT_MAX_MAPPED_FILE_SIZE;
+            this.writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
         }
 
         /**
@@ -439,6 +567,166 @@ public class HttpProxyCacheServer {
             return this;
         }
 
+        /**
+         * Enables checksums for cached data.
+         * <p>
+         * Checksum is computed for every block of cached file while it is downloaded and checked when block is read first time.
+         * Corrupted block (e.g. after torn write) is fetched from source once again instead of failing playback.
+         * Disabled by default.
+         * </p>
+         *
+         * @param verifyChecksums {@code true} to keep and check checksums of cached data.
+         * @return a builder.
+         */
+        public Builder verifyChecksums(boolean verifyChecksums) {
+            this.verifyChecksums = verifyChecksums;
+            return this;
+        }
+
+        /**
+         * Sets max size of fully cached file to be read through memory mapping.
+         * <p>
+         * Mapped file is served without syscall per read, that is useful for short looped videos.
+         * Mapping is kept while file has at least one client. Default value is 8 Mb.
+         * </p>
+         *
+         * @param maxSize max size of mapped file in bytes, {@code 0} to disable mapping.
+         * @return a builder.
+         */
+        public Builder maxMappedFileSize(long maxSize) {
+            this.maxMappedFileSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets size of buffer between network and disk.
+         * <p>
+         * Data read from source is put to this buffer and written to cache file by separate thread,
+         * so slow disk doesn't throttle reading from network. Clients waiting for data are served from buffer
+         * before data reaches disk. Default value is 1 Mb.
+         * </p>
+         *
+         * @param size size of buffer in bytes, {@code 0} to write data in thread reading network.
+         * @return a builder.
+         */
+        public Builder writeBufferSize(int size) {
+            this.writeBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Sets memory cache for recently read blocks of cached files.
+         * <p>
+         * Blocks that are read again (looped short video, first seconds of video in feed) are served
+         * from memory without disk I/O. Data is kept out of java heap and is released by
+         * {@link HttpProxyCacheServer#releaseMemoryCache()}. Same memory cache may be used by several servers.
+         * There is no memory cache by default.
+         * </p>
+         *
+         * @param memoryCache a memory cache, {@code null} to read data from disk only.
+         * @return a builder.
+         */
+        public Builder memoryCache(MemoryBlockCache memoryCache) {
+            this.memoryCache = memoryCache;
+            return this;
+        }
+
+        /**
+         * Sets time to keep reading source after its last client disconnects.
+         * <p>
+         * Players close connection on seek or when their buffer is full and open new one soon after.
+         * Reconnected client continues download that is still in progress instead of opening source again.
+         * Source is closed as soon as last client disconnects by default.
+         * </p>
+         *
+         * @param time time in milliseconds, {@code 0} to close source immediately.
+         * @param unit a unit of time.
+         * @return a builder.
+         */
+        public Builder sourceLingerTime(long time, TimeUnit unit) {
+            this.sourceLingerTime = unit.toMillis(time);
+            return this;
+        }
+
+        /**
+         * Sets max length of source that is downloaded completely even if all clients are disconnected.
+         * <p>
+         * Short videos are cached as a whole once their download is started, so next playback doesn't use network.
+         * Sources of unknown length aren't completed in background. Disabled by default.
+         * </p>
+         *
+         * @param maxSize max length of source in bytes, {@code 0} to disable background completion.
+         * @return a builder.
+         */
+        public Builder maxBackgroundCompletionSize(long maxSize) {
+            this.maxBackgroundCompletionSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets canonicalizer of urls, see {@link RuleBasedUrlCanonicalizer}.
+         * <p>
+         * Cache files are named by canonical urls and requests of urls with the same canonical url share one download,
+         * so video is found in cache even if its url has new signature. Data is fetched by original url.
+         * Urls are used as is by default.
+         * </p>
+         *
+         * @param urlCanonicalizer a canonicalizer applied to url before {@link FileNameGenerator}.
+         * @return a builder.
+         */
+        public Builder urlCanonicalizer(UrlCanonicalizer urlCanonicalizer) {
+            this.urlCanonicalizer = checkNotNull(urlCanonicalizer);
+            return this;
+        }
+
+        /**
+         * Enables sharing one cache file by different urls of the same content, e.g. mirrors or CDN hostnames.
+         * <p>
+         * Content of url is identified by its strong {@code ETag} and length when url is cached completely, urls
+         * served without strong entity tag are never deduplicated. Duplicated file is compared with file stored
+         * the same content before byte by byte, then it is deleted and url is served from the stored file. Index of content is kept by {@link SourceInfoStorage}, so deduplication doesn't work
+         * with storage that doesn't persist anything. Disabled by default.
+         * </p>
+         *
+         * @param deduplicateContent {@code true} to store the same content once.
+         * @return a builder.
+         */
+        public Builder deduplicateContent(boolean deduplicateContent) {
+            this.deduplicateContent = deduplicateContent;
+            return this;
+        }
+
+        /**
+         * Limits background downloads while playback is short of data.
+         * <p>
+         * Sources without played clients (prefetch, lingering and background completed sources) share network
+         * with played ones. When any played client has less than {@code foregroundBufferTarget} downloaded bytes
+         * ahead of it, background sources are limited to {@code bytesPerSecond} in total, so playback isn't
+         * rebuffering because of them. Background downloads aren't limited by default.
+         * </p>
+         *
+         * @param bytesPerSecond         total rate of background downloads while limited, {@code 0} to disable limiting.
+         * @param foregroundBufferTarget min count of downloaded bytes ahead of played client.
+         * @return a builder.
+         */
+        public Builder throttleBackgroundDownloads(long bytesPerSecond, long foregroundBufferTarget) {
+            this.backgroundBandwidth = bytesPerSecond;
+            this.foregroundBufferTarget = foregroundBufferTarget;
+            return this;
+        }
+
+        /**
+         * Sets listener of data read from network for played clients, e.g. to estimate bandwidth by real network
+         * transfers instead of reads from proxy.
+         *
+         * @param sourceTransferListener a listener, {@code null} by default.
+         * @return a builder.
+         */
+        public Builder sourceTransferListener(SourceTransferListener sourceTransferListener) {
+            this.sourceTransferListener = sourceTransferListener;
+            return this;
+        }
+
         /**
          * Builds new instance of {@link HttpProxyCacheServer}.
          *
@@ -450,7 +738,13 @@ public class HttpProxyCacheServer {
         }
 
         private Config buildConfig() {
-            return new Config(cacheRoot, fileNameGenerator, diskUsage, sourceInfoStorage, headerInjector);
+            // default directory is resolved only if it is needed, because it may touch external storage
+            File cacheRoot = this.cacheRoot != null ? this.cacheRoot : StorageUtils.getIndividualCacheDirectory(context);
+            ContentDeduplicator contentDeduplicator = deduplicateContent ? new ContentDeduplicator(cacheRoot, sourceInfoStorage) : null;
+            return new Config(cacheRoot, fileNameGenerator, diskUsage, sourceInfoStorage,
+                    new InheritedHeadersInjector(headerInjector), verifyChecksums, maxMappedFileSize, writeBufferSize, memoryCache,
+                    sourceLingerTime, maxBackgroundCompletionSize, backgroundBandwidth, foregroundBufferTarget, urlCanonicalizer,
+                    contentDeduplicator, sourceTransferListener);
         }
 
     }
@@ -1,70 +1,211 @@
 package com.danikula.videocache;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-
 import com.danikula.videocache.file.FileCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
 
 /**
  * Client for {@link HttpProxyCacheServer}
+ * <p>
+ * Clients of url are kept in server's registry while they are in use: while there are acquired references,
+ * connected clients, running download or registered listeners. Idle clients remove themselves from registry
+ * and can't be acquired anymore, so new instance is created for next request.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 final class HttpProxyCacheServerClients {
 
+    private static final long BACKGROUND_COMPLETION_CHECK_INTERVAL = 1000;
+
     private final AtomicInteger clientsCount = new AtomicInteger(0);
+    private final AtomicInteger foregroundClientsCount = new AtomicInteger(0);
     private final String url;
+    private final String canonicalUrl;
     private volatile HttpProxyCache proxyCache;
     private final List<CacheListener> listeners = new CopyOnWriteArrayList<>();
     private final CacheListener uiCacheListener;
     private final Config config;
-
-    public HttpProxyCacheServerClients(String url, Config config) {
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, HttpProxyCacheServerClients> registry;
+    private final ProgressDispatcher progressDispatcher;
+    private final BackgroundThrottle backgroundThrottle;
+    private ScheduledFuture<?> lingerTask;
+    private int references;
+    private boolean released;
+
+    /**
+     * Creates clients of url.
+     *
+     * @param url          a url source is fetched by.
+     * @param canonicalUrl a canonical url clients are registered by.
+     */
+    public HttpProxyCacheServerClients(String url, String canonicalUrl, Config config, ScheduledExecutorService scheduler,
+                                       ConcurrentMap<String, HttpProxyCacheServerClients> registry, ProgressDispatcher progressDispatcher,
+                                       BackgroundThrottle backgroundThrottle) {
         this.url = checkNotNull(url);
+        this.canonicalUrl = checkNotNull(canonicalUrl);
         this.config = checkNotNull(config);
-        this.uiCacheListener = new UiListenerHandler(url, listeners);
+        this.scheduler = checkNotNull(scheduler);
+        this.registry = checkNotNull(registry);
+        this.progressDispatcher = checkNotNull(progressDispatcher);
+        this.backgroundThrottle = backgroundThrottle;
+        this.uiCacheListener = new MainThreadCacheListener();
+    }
+
+    /**
+     * Keeps clients in registry until {@link #release()} is called.
+     *
+     * @return {@code false} if clients are already removed from registry and must not be used.
+     */
+    public synchronized boolean acquire() {
+        if (released) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    public synchronized void release() {
+        references--;
+        removeIfIdle();
+    }
+
+    private void removeIfIdle() {
+        if (!released && references <= 0 && proxyCache == null && listeners.isEmpty()) {
+            released = true;
+            registry.remove(canonicalUrl, this);
+        }
     }
 
     public void processRequest(GetRequest request, Socket socket) throws ProxyCacheException, IOException {
-        startProcessRequest();
+        HttpProxyCache proxyCache = startProcessRequest(true);
         try {
-            clientsCount.incrementAndGet();
             proxyCache.processRequest(request, socket);
         } finally {
-            finishProcessRequest();
+            finishProcessRequest(true);
         }
     }
 
-    private synchronized void startProcessRequest() throws ProxyCacheException {
+    /**
+     * Caches data up to {@code end} like client reading it would do, but without reading cached data.
+     *
+     * @param end        an offset of end of data to be cached.
+     * @param foreground {@code true} if data is needed for playback and must not be throttled.
+     * @param cancelled  a flag that stops prefetch when set.
+     * @throws ProxyCacheException if source can't be read.
+     */
+    public void prefetch(long end, boolean foreground, AtomicBoolean cancelled) throws ProxyCacheException {
+        HttpProxyCache proxyCache = startProcessRequest(foreground);
+        try {
+            proxyCache.fetch(end, cancelled);
+        } finally {
+            finishProcessRequest(foreground);
+        }
+    }
+
+    /**
+     * Checks whether any played client of url is close to end of downloaded data.
+     */
+    public boolean isForegroundBelowTarget(long target) {
+        HttpProxyCache proxyCache = this.proxyCache;
+        try {
+            return foregroundClientsCount.get() > 0 && proxyCache != null && proxyCache.isBelowBufferTarget(target);
+        } catch (ProxyCacheException e) {
+            return false;
+        }
+    }
+
+    private synchronized HttpProxyCache startProcessRequest(boolean foreground) throws ProxyCacheException {
+        cancelLinger(); // reconnected client continues warm download
         proxyCache = proxyCache == null ? newHttpProxyCache() : proxyCache;
+        clientsCount.incrementAndGet();
+        if (foreground) {
+            foregroundClientsCount.incrementAndGet();
+        }
+        updateBackgroundThrottle();
+        return proxyCache;
     }
 
-    private synchronized void finishProcessRequest() {
+    private synchronized void finishProcessRequest(boolean foreground) {
+        if (foreground) {
+            foregroundClientsCount.decrementAndGet();
+        }
+        updateBackgroundThrottle();
         if (clientsCount.decrementAndGet() <= 0) {
-            proxyCache.shutdown();
-            proxyCache = null;
+            if (!foreground) {
+                // prefetch doesn't reconnect, so source isn't kept for it, only short source may be completed
+                onLingerTimeout();
+                return;
+            }
+            boolean linger = config.sourceLingerTime > 0 || config.maxBackgroundCompletionSize > 0;
+            if (linger && proxyCache.isReadingSource()) {
+                // player closes connection on seek or when its buffer is full and opens new one soon,
+                // so source isn't closed immediately
+                long delay = config.sourceLingerTime > 0 ? config.sourceLingerTime : BACKGROUND_COMPLETION_CHECK_INTERVAL;
+                lingerTask = scheduler.schedule(new LingerTimeoutRunnable(), delay, TimeUnit.MILLISECONDS);
+            } else {
+                shutdownProxyCache();
+            }
+        }
+    }
+
+    private synchronized void onLingerTimeout() {
+        lingerTask = null;
+        if (clientsCount.get() > 0 || proxyCache == null) {
+            return;
+        }
+        long sourceLength = proxyCache.getSourceLength();
+        boolean smallSource = sourceLength >= 0 && sourceLength <= config.maxBackgroundCompletionSize;
+        if (smallSource && proxyCache.isReadingSource()) {
+            lingerTask = scheduler.schedule(new LingerTimeoutRunnable(), BACKGROUND_COMPLETION_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        } else {
+            shutdownProxyCache();
+        }
+    }
+
+    private void updateBackgroundThrottle() {
+        if (proxyCache != null) {
+            proxyCache.setBackgroundThrottle(foregroundClientsCount.get() > 0 ? null : backgroundThrottle);
         }
     }
 
+    private void cancelLinger() {
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+    }
+
+    private void shutdownProxyCache() {
+        proxyCache.shutdown();
+        proxyCache = null;
+        removeIfIdle();
+    }
+
     public void registerCacheListener(CacheListener cacheListener) {
         listeners.add(cacheListener);
     }
 
-    public void unregisterCacheListener(CacheListener cacheListener) {
+    public synchronized void unregisterCacheListener(CacheListener cacheListener) {
         listeners.remove(cacheListener);
+        removeIfIdle();
     }
 
-    public void shutdown() {
+    public synchronized void shutdown() {
+        released = true;
+        cancelLinger();
         listeners.clear();
         if (proxyCache != null) {
             proxyCache.registerCacheListener(null);
@@ -72,6 +213,7 @@ final class HttpProxyCacheServerClients {
             proxyCache = null;
         }
         clientsCount.set(0);
+        foregroundClientsCount.set(0);
     }
 
     public int getClientsCount() {
@@ -80,35 +222,31 @@ final class HttpProxyCacheServerClients {
 
     private HttpProxyCache newHttpProxyCache() throws ProxyCacheException {
         HttpUrlSource source = new HttpUrlSource(url, config.sourceInfoStorage, config.headerInjector);
-        FileCache cache = new FileCache(config.generateCacheFile(url), config.diskUsage);
-        HttpProxyCache httpProxyCache = new HttpProxyCache(source, cache);
+        FileCache cache = new FileCache(config.generateCacheFile(url), config.diskUsage, config.verifyChecksums, config.maxMappedFileSize, config.memoryCache);
+        HttpProxyCache httpProxyCache = new HttpProxyCache(source, cache, config.writeBufferSize);
         httpProxyCache.registerCacheListener(uiCacheListener);
+        httpProxyCache.setBackgroundThrottle(backgroundThrottle);
+        httpProxyCache.setSourceTransferListener(config.sourceTransferListener);
+        if (config.contentDeduplicator != null) {
+            httpProxyCache.setContentDeduplicator(config.contentDeduplicator, canonicalUrl);
+        }
         return httpProxyCache;
     }
 
-    private static final class UiListenerHandler extends Handler implements CacheListener {
-
-        private final String url;
-        private final List<CacheListener> listeners;
-
-        public UiListenerHandler(String url, List<CacheListener> listeners) {
-            super(Looper.getMainLooper());
-            this.url = url;
-            this.listeners = listeners;
-        }
+    private final class LingerTimeoutRunnable implements Runnable {
 
         @Override
-        public void onCacheAvailable(File file, String url, int percentsAvailable) {
-            Message message = obtainMessage();
-            message.arg1 = percentsAvailable;
-            message.obj = file;
-            sendMessage(message);
+        public void run() {
+            onLingerTimeout();
         }
+    }
+
+    private final class MainThreadCacheListener implements CacheListener {
 
         @Override
-        public void handleMessage(Message msg) {
-            for (CacheListener cacheListener : listeners) {
-                cacheListener.onCacheAvailable((File) msg.obj, url, msg.arg1);
+        public void onCacheAvailable(File file, String url, long availableBytes, long totalBytes) {
+            if (!listeners.isEmpty()) {
+                progressDispatcher.post(file, HttpProxyCacheServerClients.this.url, availableBytes, totalBytes, listeners);
             }
         }
     }
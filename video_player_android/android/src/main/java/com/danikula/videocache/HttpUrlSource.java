@@ -77,7 +77,7 @@ public class HttpUrlSource implements Source {
             String mime = connection.getContentType();
             inputStream = new BufferedInputStream(connection.getInputStream(), DEFAULT_BUFFER_SIZE);
             long length = readSourceAvailableBytes(connection, offset, connection.getResponseCode());
-            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime);
+            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime, getEtag(connection));
             this.sourceInfoStorage.put(sourceInfo.url, sourceInfo);
         } catch (IOException e) {
             throw new ProxyCacheException("Error opening connection for " + sourceInfo.url + " with offset " + offset, e);
@@ -95,6 +95,12 @@ public class HttpUrlSource implements Source {
         return contentLengthValue == null ? -1 : Long.parseLong(contentLengthValue);
     }
 
+    private String getEtag(HttpURLConnection connection) {
+        String etag = connection.getHeaderField("ETag");
+        // partial response may omit validator sent with full one
+        return etag != null ? etag : sourceInfo.etag;
+    }
+
     @Override
     public void close() throws ProxyCacheException {
         if (connection != null) {
@@ -137,7 +143,7 @@ public class HttpUrlSource implements Source {
             long length = getContentLength(urlConnection);
             String mime = urlConnection.getContentType();
             inputStream = urlConnection.getInputStream();
-            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime);
+            this.sourceInfo = new SourceInfo(sourceInfo.url, length, mime, getEtag(urlConnection));
             this.sourceInfoStorage.put(sourceInfo.url, sourceInfo);
             Log.d(TAG, "Source info fetched: " + sourceInfo);
         } catch (IOException e) {
@@ -198,6 +204,15 @@ public class HttpUrlSource implements Source {
         return sourceInfo.url;
     }
 
+    /**
+     * Returns entity tag of source sent by server last time it was opened.
+     *
+     * @return value of {@code ETag} header or {@code null} if server didn't send it.
+     */
+    public String getEtag() {
+        return sourceInfo.etag;
+    }
+
     @Override
     public String toString() {
         return "HttpUrlSource{sourceInfo='" + sourceInfo + "}";
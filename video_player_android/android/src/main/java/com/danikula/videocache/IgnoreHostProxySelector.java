@@ -7,6 +7,8 @@ import java.net.SocketAddress;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
 
@@ -14,6 +16,8 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
  * {@link ProxySelector} that ignore system default proxies for concrete host.
  * <p>
  * It is important to <a href="https://github.com/danikula/AndroidVideoCache/issues/28">ignore system proxy</a> for localhost connection.
+ * Single selector is installed for whole process, ports of running servers are added to and removed from it,
+ * so selector isn't wrapped once again for every server and selecting proxy costs the same for any count of servers.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
@@ -21,25 +25,36 @@ class IgnoreHostProxySelector extends ProxySelector {
 
     private static final List<Proxy> NO_PROXY_LIST = Arrays.asList(Proxy.NO_PROXY);
 
+    // ignored port -> its host
+    private static final ConcurrentMap<Integer, String> IGNORED_ADDRESSES = new ConcurrentHashMap<>();
+    private static IgnoreHostProxySelector installedSelector;
+
     private final ProxySelector defaultProxySelector;
-    private final String hostToIgnore;
-    private final int portToIgnore;
 
-    IgnoreHostProxySelector(ProxySelector defaultProxySelector, String hostToIgnore, int portToIgnore) {
+    IgnoreHostProxySelector(ProxySelector defaultProxySelector) {
         this.defaultProxySelector = checkNotNull(defaultProxySelector);
-        this.hostToIgnore = checkNotNull(hostToIgnore);
-        this.portToIgnore = portToIgnore;
     }
 
     static void install(String hostToIgnore, int portToIgnore) {
-        ProxySelector defaultProxySelector = ProxySelector.getDefault();
-        ProxySelector ignoreHostProxySelector = new IgnoreHostProxySelector(defaultProxySelector, hostToIgnore, portToIgnore);
-        ProxySelector.setDefault(ignoreHostProxySelector);
+        IGNORED_ADDRESSES.put(portToIgnore, checkNotNull(hostToIgnore));
+        synchronized (IgnoreHostProxySelector.class) {
+            ProxySelector defaultProxySelector = ProxySelector.getDefault();
+            // selector is installed again only if someone replaced it
+            if (installedSelector == null || defaultProxySelector != installedSelector) {
+                installedSelector = new IgnoreHostProxySelector(defaultProxySelector);
+                ProxySelector.setDefault(installedSelector);
+            }
+        }
+    }
+
+    static void uninstall(String hostToIgnore, int portToIgnore) {
+        IGNORED_ADDRESSES.remove(portToIgnore, hostToIgnore);
     }
 
     @Override
     public List<Proxy> select(URI uri) {
-        boolean ignored = hostToIgnore.equals(uri.getHost()) && portToIgnore == uri.getPort();
+        String hostToIgnore = IGNORED_ADDRESSES.get(uri.getPort());
+        boolean ignored = hostToIgnore != null && hostToIgnore.equals(uri.getHost());
         return ignored ? NO_PROXY_LIST : defaultProxySelector.select(uri);
     }
 
@@ -0,0 +1,103 @@
+package com.danikula.videocache;
+
+import com.danikula.videocache.headers.HeaderInjector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link HeaderInjector} that gives urls found inside of playlist the headers of playlist itself.
+ * <p>
+ * Client registers headers for url it plays only, but segments, keys and nested playlists usually need the same
+ * headers (auth tokens, cookies). Url without own headers takes headers of its closest parent. Parent of url is
+ * found by url itself or by pattern of url template, e.g. DASH {@code SegmentTemplate}.
+ */
+final class InheritedHeadersInjector implements HeaderInjector {
+
+    private static final int MAX_PARENTS_COUNT = 4096;
+    private static final int MAX_PATTERNS_COUNT = 64;
+    private static final int MAX_DEPTH = 4;
+
+    private final HeaderInjector headerInjector;
+    private final Map<String, String> parents = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_PARENTS_COUNT;
+        }
+    };
+
+    // patterns are matched one by one, so there are much fewer of them
+    private final Map<String, PatternParent> patterns = new LinkedHashMap<String, PatternParent>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PatternParent> eldest) {
+            return size() > MAX_PATTERNS_COUNT;
+        }
+    };
+
+    InheritedHeadersInjector(HeaderInjector headerInjector) {
+        this.headerInjector = checkNotNull(headerInjector);
+    }
+
+    /**
+     * Remembers that url is referenced by parent's content, e.g. segment by its playlist.
+     */
+    void inherit(String url, String parentUrl) {
+        if (!url.equals(parentUrl)) {
+            synchronized (parents) {
+                parents.put(url, parentUrl);
+            }
+        }
+    }
+
+    /**
+     * Remembers that all urls matching pattern are referenced by parent's content, e.g. segments of DASH template.
+     */
+    void inherit(Pattern urlPattern, String parentUrl) {
+        synchronized (patterns) {
+            patterns.put(urlPattern.pattern(), new PatternParent(urlPattern, parentUrl));
+        }
+    }
+
+    @Override
+    public Map<String, String> addHeaders(String url) {
+        Map<String, String> headers = headerInjector.addHeaders(url);
+        for (int depth = 0; headers.isEmpty() && depth < MAX_DEPTH; depth++) {
+            url = getParent(url);
+            if (url == null) {
+                break;
+            }
+            headers = headerInjector.addHeaders(url);
+        }
+        return headers;
+    }
+
+    private String getParent(String url) {
+        synchronized (parents) {
+            String parent = parents.get(url);
+            if (parent != null) {
+                return parent;
+            }
+        }
+        synchronized (patterns) {
+            for (PatternParent patternParent : patterns.values()) {
+                if (patternParent.urlPattern.matcher(url).matches()) {
+                    return patternParent.parentUrl;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class PatternParent {
+        final Pattern urlPattern;
+        final String parentUrl;
+
+        PatternParent(Pattern urlPattern, String parentUrl) {
+            this.urlPattern = urlPattern;
+            this.parentUrl = parentUrl;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.danikula.videocache;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+import static java.net.HttpURLConnection.HTTP_MOVED_PERM;
+import static java.net.HttpURLConnection.HTTP_MOVED_TEMP;
+import static java.net.HttpURLConnection.HTTP_SEE_OTHER;
+
+/**
+ * Serves manifests of adaptive streams (HLS, DASH) with all referenced uris rewritten to proxy urls.
+ * <p>
+ * Proxy caches every url as single file, so adaptive stream is cached by proxying each resource separately:
+ * segments, keys and init sections go through proxy and are cached as their own files, manifests are fetched
+ * here and are never cached on disk. Manifests are kept in memory for a short time, see {@link #getTimeToLive(String)}.
+ */
+abstract class ManifestProxy {
+
+    private static final String TAG = "ManifestProxy";
+    static final long STATIC_MANIFEST_TTL = TimeUnit.MINUTES.toMillis(5);
+    static final long DEFAULT_LIVE_MANIFEST_TTL = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_MANIFESTS_COUNT = 32;
+    private static final int MAX_MANIFEST_URLS_COUNT = 256;
+    private static final int MAX_REDIRECTS = 5;
+    private static final int TIMEOUT = 10000;
+
+    private final String proxyBaseUrl;
+    private final InheritedHeadersInjector headerInjector;
+    // urls of manifests referenced by other manifests, they are looked up by every request
+    private final Map<String, Boolean> manifestUrls = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_MANIFEST_URLS_COUNT;
+        }
+    };
+    private final Map<String, Manifest> manifests = new LinkedHashMap<String, Manifest>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Manifest> eldest) {
+            return size() > MAX_MANIFESTS_COUNT;
+        }
+    };
+
+    ManifestProxy(String proxyBaseUrl, InheritedHeadersInjector headerInjector) {
+        this.proxyBaseUrl = checkNotNull(proxyBaseUrl);
+        this.headerInjector = checkNotNull(headerInjector);
+    }
+
+    /**
+     * Checks whether url is manifest: by extension or because it is referenced by other manifest as manifest.
+     */
+    boolean isManifest(String url) {
+        synchronized (manifestUrls) {
+            if (manifestUrls.get(url) != null) {
+                return true;
+            }
+        }
+        String path = url;
+        int queryStart = path.indexOf('?');
+        path = queryStart >= 0 ? path.substring(0, queryStart) : path;
+        int fragmentStart = path.indexOf('#');
+        path = fragmentStart >= 0 ? path.substring(0, fragmentStart) : path;
+        return hasManifestExtension(path.toLowerCase(Locale.US));
+    }
+
+    void processRequest(String url, Socket socket) throws IOException, ProxyCacheException {
+        byte[] body = getManifest(url);
+        OutputStream out = socket.getOutputStream();
+        String headers = new StringBuilder()
+                .append("HTTP/1.1 200 OK\n")
+                .append("Content-Type: ").append(getMime()).append('\n')
+                .append("Content-Length: ").append(body.length).append('\n')
+                .append("Cache-Control: no-cache\n")
+                .append('\n') // headers end
+                .toString();
+        out.write(headers.getBytes("UTF-8"));
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Returns rewritten manifest, fetching it if it isn't kept in memory or is expired.
+     */
+    byte[] getManifest(String url) throws ProxyCacheException {
+        synchronized (manifests) {
+            Manifest manifest = manifests.get(url);
+            if (manifest != null && manifest.expirationTime > System.currentTimeMillis()) {
+                return manifest.body;
+            }
+        }
+        Manifest manifest = fetch(url);
+        synchronized (manifests) {
+            manifests.put(url, manifest);
+        }
+        return manifest.body;
+    }
+
+    /**
+     * Checks lower-cased path of url without query.
+     */
+    protected abstract boolean hasManifestExtension(String path);
+
+    protected abstract String getMime();
+
+    /**
+     * Replaces all uris in manifest with proxy urls made by {@link #toProxyUrl(String, String, String, boolean)}.
+     *
+     * @param content manifest as it is served by origin.
+     * @param url     url of manifest as it is requested by player.
+     * @param baseUrl final url of manifest after redirects, relative uris are resolved against it.
+     * @return rewritten manifest.
+     * @throws ProxyCacheException if manifest can't be parsed.
+     */
+    protected abstract String rewrite(String content, String url, String baseUrl) throws ProxyCacheException;
+
+    /**
+     * Returns how long manifest is kept in memory: manifest of live stream must be fetched again soon,
+     * so player sees new segments.
+     */
+    protected abstract long getTimeToLive(String content);
+
+    /**
+     * Resolves uri found in manifest and wraps it to proxy url. Uris proxy can't fetch are returned as is.
+     *
+     * @param uri       absolute or relative uri found in manifest.
+     * @param parentUrl url of manifest, resource inherits its headers.
+     * @param baseUrl   url relative uri is resolved against.
+     * @param manifest  {@code true} if uri points to another manifest.
+     * @return proxy url or original uri.
+     */
+    protected String toProxyUrl(String uri, String parentUrl, String baseUrl, boolean manifest) {
+        String absoluteUrl = resolve(baseUrl, uri);
+        if (!absoluteUrl.startsWith("http://") && !absoluteUrl.startsWith("https://")) {
+            return uri; // e.g. skd:// key of FairPlay or data: uri, player handles it itself
+        }
+        if (manifest) {
+            synchronized (manifestUrls) {
+                manifestUrls.put(absoluteUrl, Boolean.TRUE);
+            }
+        }
+        inheritHeaders(absoluteUrl, parentUrl);
+        return proxyBaseUrl + encode(absoluteUrl);
+    }
+
+    /**
+     * Makes resource referenced by manifest inherit headers of manifest.
+     *
+     * @param url       absolute url of resource.
+     * @param parentUrl url of manifest.
+     */
+    protected void inheritHeaders(String url, String parentUrl) {
+        headerInjector.inherit(url, parentUrl);
+    }
+
+    /**
+     * Makes all resources with urls matching pattern inherit headers of manifest, e.g. segments of template.
+     */
+    protected final void inheritHeaders(Pattern urlPattern, String parentUrl) {
+        headerInjector.inherit(urlPattern, parentUrl);
+    }
+
+    /**
+     * Encodes absolute url to path of proxy url.
+     */
+    protected String encode(String url) {
+        return ProxyCacheUtils.encode(url);
+    }
+
+    static String resolve(String baseUrl, String uri) {
+        try {
+            return new URL(new URL(baseUrl), uri).toString();
+        } catch (MalformedURLException e) {
+            return uri;
+        }
+    }
+
+    private Manifest fetch(String url) throws ProxyCacheException {
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(url);
+            String content = readContent(connection);
+            // relative uris are resolved against manifest's final location
+            String baseUrl = connection.getURL().toString();
+            String rewritten = rewrite(content, url, baseUrl);
+            long ttl = getTimeToLive(content);
+            Log.d(TAG, "Manifest " + url + " is fetched, it is kept for " + ttl + " ms");
+            return new Manifest(rewritten.getBytes("UTF-8"), System.currentTimeMillis() + ttl);
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error fetching manifest " + url, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private HttpURLConnection openConnection(String url) throws IOException, ProxyCacheException {
+        for (int redirectCount = 0; redirectCount <= MAX_REDIRECTS; redirectCount++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setInstanceFollowRedirects(false); // redirects between http and https are followed here
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            for (Map.Entry<String, String> header : headerInjector.addHeaders(url).entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            int code = connection.getResponseCode();
+            boolean redirected = code == HTTP_MOVED_PERM || code == HTTP_MOVED_TEMP || code == HTTP_SEE_OTHER
+                    || code == 307 || code == 308;
+            if (!redirected) {
+                if (code >= 400) {
+                    connection.disconnect();
+                    throw new ProxyCacheException("Error fetching manifest " + url + ", response code: " + code);
+                }
+                return connection;
+            }
+            url = new URL(connection.getURL(), connection.getHeaderField("Location")).toString();
+            connection.disconnect();
+        }
+        throw new ProxyCacheException("Too many redirects for manifest " + url);
+    }
+
+    private String readContent(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[ProxyCacheUtils.DEFAULT_BUFFER_SIZE];
+            int readBytes;
+            while ((readBytes = in.read(buffer)) != -1) {
+                out.write(buffer, 0, readBytes);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            ProxyCacheUtils.close(in);
+        }
+    }
+
+    private static final class Manifest {
+        final byte[] body;
+        final long expirationTime;
+
+        Manifest(byte[] body, long expirationTime) {
+            this.body = body;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.danikula.videocache;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.danikula.videocache.Preconditions.checkArgument;
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * Caches beginning of videos before they are played, e.g. next items of feed.
+ * Typical usage:
+ * <pre><code>
+ * PrefetchScheduler scheduler = new PrefetchScheduler(proxy);
+ * scheduler.prefetch(currentUrl, 4 * 1024 * 1024, PrefetchScheduler.Priority.PLAYING);
+ * scheduler.prefetch(nextUrl, 1024 * 1024, PrefetchScheduler.Priority.NEXT);
+ *
+ * // user scrolled
+ * scheduler.cancel(currentUrl);
+ * scheduler.setPriority(nextUrl, PrefetchScheduler.Priority.PLAYING);
+ * </code></pre>
+ * Only few fetches run at once, the most important first. Fetch of higher priority preempts running fetch of lower
+ * one, preempted fetch continues later from already cached offset. Fetches with priority lower than
+ * {@link Priority#PLAYING} are background ones: they are limited while played video is short of data
+ * if server is built with {@link HttpProxyCacheServer.Builder#throttleBackgroundDownloads(long, long)}.
+ */
+public final class PrefetchScheduler {
+
+    private static final String TAG = "PrefetchScheduler";
+    private static final int DEFAULT_MAX_RUNNING_FETCHES = 2;
+
+    /**
+     * Priority of prefetch, declared from the most important one.
+     */
+    public enum Priority {
+        /**
+         * Video that is played or is going to be played immediately, is never throttled.
+         */
+        PLAYING,
+        /**
+         * Video that is likely played next.
+         */
+        NEXT,
+        /**
+         * Video that may be played later.
+         */
+        LATER
+    }
+
+    private final HttpProxyCacheServer server;
+    private final int maxRunningFetches;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Fetch> fetches = new HashMap<>();
+    private long sequence;
+    // stopped runs are counted until they end, they still read source while checking the flag
+    private int runningCount;
+    private int stoppingCount;
+    private boolean shutdown;
+
+    public PrefetchScheduler(HttpProxyCacheServer server) {
+        this(server, DEFAULT_MAX_RUNNING_FETCHES);
+    }
+
+    public PrefetchScheduler(HttpProxyCacheServer server, int maxRunningFetches) {
+        checkArgument(maxRunningFetches > 0, "Max running fetches count must be positive!");
+        this.server = checkNotNull(server);
+        this.maxRunningFetches = maxRunningFetches;
+    }
+
+    /**
+     * Schedules caching of first {@code bytes} of url.
+     * <p>
+     * If url is scheduled already, its fetch is extended to the larger size and gets the new priority.
+     *
+     * @param url      a url to be cached.
+     * @param bytes    count of bytes from the beginning of source to be cached.
+     * @param priority a priority of fetch.
+     */
+    public void prefetch(String url, long bytes, Priority priority) {
+        prefetch(url, bytes, priority, null);
+    }
+
+    /**
+     * Schedules caching of first {@code bytes} of url like {@link #prefetch(String, long, Priority)} does
+     * and calls back when fetch is finished: completed, failed, cancelled or not needed at all.
+     * <p>
+     * Callback also identifies the request, so it can be cancelled by {@link #cancel(String, Runnable)}
+     * without cancelling requests of the same url made by others.
+     *
+     * @param onFinished a callback called once in any thread, may be {@code null}.
+     */
+    public void prefetch(String url, long bytes, Priority priority, Runnable onFinished) {
+        checkNotNull(url);
+        checkNotNull(priority);
+        // cache is looked up on disk, so other callers aren't blocked by it
+        boolean cached = server.isCached(url);
+        synchronized (this) {
+            if (!shutdown && !cached) {
+                Fetch fetch = fetches.get(url);
+                if (fetch == null) {
+                    fetch = new Fetch(url, bytes, priority, sequence++);
+                    fetches.put(url, fetch);
+                } else {
+                    fetch.bytes = Math.max(fetch.bytes, bytes);
+                    fetch.priority = priority;
+                }
+                if (onFinished != null) {
+                    fetch.finishCallbacks.add(onFinished);
+                } else {
+                    fetch.anonymous = true;
+                }
+                schedule();
+                return;
+            }
+        }
+        if (onFinished != null) {
+            onFinished.run();
+        }
+    }
+
+    /**
+     * Changes priority of scheduled fetch, e.g. when user scrolls. Does nothing if url isn't scheduled.
+     */
+    public synchronized void setPriority(String url, Priority priority) {
+        checkNotNull(priority);
+        Fetch fetch = fetches.get(url);
+        if (fetch != null) {
+            fetch.priority = priority;
+            schedule();
+        }
+    }
+
+    /**
+     * Cancels fetch of url, data cached so far stays in cache.
+     */
+    public void cancel(String url) {
+        Fetch fetch;
+        synchronized (this) {
+            fetch = fetches.remove(url);
+            if (fetch == null) {
+                return;
+            }
+            stop(fetch);
+            schedule();
+        }
+        fetch.finish();
+    }
+
+    /**
+     * Cancels request of url made with {@code onFinished} callback, callback is called. Fetch itself is cancelled
+     * only if there are no other requests of url. Does nothing if request is finished already.
+     */
+    public void cancel(String url, Runnable onFinished) {
+        checkNotNull(onFinished);
+        boolean removed;
+        synchronized (this) {
+            Fetch fetch = fetches.get(url);
+            removed = fetch != null && fetch.finishCallbacks.remove(onFinished);
+            if (removed && fetch.finishCallbacks.isEmpty() && !fetch.anonymous) {
+                fetches.remove(url);
+                stop(fetch);
+                schedule();
+            }
+        }
+        if (removed) {
+            onFinished.run();
+        }
+    }
+
+    public void cancelAll() {
+        List<Fetch> cancelled;
+        synchronized (this) {
+            cancelled = new ArrayList<>(fetches.values());
+            for (Fetch fetch : cancelled) {
+                stop(fetch);
+            }
+            fetches.clear();
+        }
+        for (Fetch fetch : cancelled) {
+            fetch.finish();
+        }
+    }
+
+    /**
+     * Checks whether url is waiting for prefetch or is being prefetched now.
+     */
+    public synchronized boolean isScheduled(String url) {
+        return fetches.containsKey(url);
+    }
+
+    /**
+     * Cancels all fetches and stops scheduler, it can't be used after shutdown.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        cancelAll();
+        executor.shutdown();
+    }
+
+    private void schedule() {
+        // ranks are refreshed on every change, so running fetches restart if they become (non) foreground
+        for (Fetch fetch : fetches.values()) {
+            Run run = fetch.run;
+            if (run != null && run.foreground != (fetch.priority == Priority.PLAYING)) {
+                stop(fetch);
+            }
+        }
+        while (true) {
+            Fetch best = findQueued();
+            if (best == null) {
+                return;
+            }
+            if (runningCount >= maxRunningFetches) {
+                if (stoppingCount > 0) {
+                    return; // slot is being freed already, best fetch starts when stopped run ends
+                }
+                Fetch worst = findWorstRunning();
+                if (worst != null && compare(best, worst) < 0) {
+                    stop(worst);
+                }
+                return;
+            }
+            start(best);
+        }
+    }
+
+    private Fetch findQueued() {
+        Fetch best = null;
+        for (Fetch fetch : fetches.values()) {
+            if (fetch.run == null && (best == null || compare(fetch, best) < 0)) {
+                best = fetch;
+            }
+        }
+        return best;
+    }
+
+    private Fetch findWorstRunning() {
+        Fetch worst = null;
+        for (Fetch fetch : fetches.values()) {
+            if (fetch.run != null && (worst == null || compare(fetch, worst) > 0)) {
+                worst = fetch;
+            }
+        }
+        return worst;
+    }
+
+    private int compare(Fetch first, Fetch second) {
+        int byPriority = first.priority.compareTo(second.priority);
+        if (byPriority != 0) {
+            return byPriority;
+        }
+        return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+    }
+
+    private void start(Fetch fetch) {
+        Run run = new Run(fetch, fetch.bytes, fetch.priority == Priority.PLAYING);
+        fetch.run = run;
+        runningCount++;
+        executor.execute(run);
+    }
+
+    private void stop(Fetch fetch) {
+        Run run = fetch.run;
+        if (run != null) {
+            // reading thread checks flag on next chunk, it isn't interrupted to keep cache file consistent
+            run.cancelled.set(true);
+            run.stopped = true;
+            fetch.run = null;
+            stoppingCount++;
+        }
+    }
+
+    private void onRunFinished(Run run, boolean completed) {
+        Fetch finished = null;
+        synchronized (this) {
+            runningCount--;
+            Fetch fetch = run.fetch;
+            if (run.stopped) {
+                stoppingCount--; // preempted or cancelled, fetch is requeued or removed already
+            } else {
+                fetch.run = null;
+                if (completed && fetch.bytes <= run.bytes) {
+                    fetches.remove(fetch.url);
+                    finished = fetch;
+                }
+            }
+            if (!shutdown) {
+                schedule();
+            }
+        }
+        if (finished != null) {
+            finished.finish();
+        }
+    }
+
+    private static final class Fetch {
+        private final String url;
+        private final long sequence;
+        private long bytes;
+        private final List<Runnable> finishCallbacks = new ArrayList<>(1);
+        // requested without callback, so it is cancelled only by url
+        private boolean anonymous;
+        private Priority priority;
+        private Run run;
+
+        Fetch(String url, long bytes, Priority priority, long sequence) {
+            this.url = url;
+            this.bytes = bytes;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        // called outside of scheduler's lock when fetch is removed, so callbacks may use scheduler
+        void finish() {
+            for (Runnable callback : finishCallbacks) {
+                callback.run();
+            }
+            finishCallbacks.clear();
+        }
+    }
+
+    private final class Run implements Runnable {
+        private final Fetch fetch;
+        private final long bytes;
+        private final boolean foreground;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        // guarded by scheduler
+        private boolean stopped;
+
+        Run(Fetch fetch, long bytes, boolean foreground) {
+            this.fetch = fetch;
+            this.bytes = bytes;
+            this.foreground = foreground;
+        }
+
+        @Override
+        public void run() {
+            boolean completed = false;
+            try {
+                server.prefetch(fetch.url, bytes, foreground, cancelled);
+                completed = !cancelled.get();
+            } catch (ProxyCacheException e) {
+                Log.w(TAG, "Error prefetching " + fetch.url, e);
+                completed = true; // source is broken, it isn't retried until it is scheduled again
+            } finally {
+                onRunFinished(this, completed);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.danikula.videocache;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delivers cache progress to {@link CacheListener}s on main thread.
+ * <p>
+ * Progress of all urls is coalesced: only latest progress of every url is kept and all of them are delivered
+ * by single main thread message, at most once per frame. So many concurrent downloads don't flood main thread.
+ */
+final class ProgressDispatcher implements Runnable {
+
+    private static final long FRAME_MILLIS = 16;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private Map<String, Progress> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    void post(File file, String url, long availableBytes, long totalBytes, List<CacheListener> listeners) {
+        synchronized (this) {
+            pending.put(url, new Progress(file, url, availableBytes, totalBytes, listeners));
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        handler.postDelayed(this, FRAME_MILLIS);
+    }
+
+    void cancel() {
+        handler.removeCallbacks(this);
+        synchronized (this) {
+            pending.clear();
+            scheduled = false;
+        }
+    }
+
+    @Override
+    public void run() {
+        Map<String, Progress> progresses;
+        synchronized (this) {
+            progresses = pending;
+            pending = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        for (Progress progress : progresses.values()) {
+            for (CacheListener cacheListener : progress.listeners) {
+                cacheListener.onCacheAvailable(progress.file, progress.url, progress.availableBytes, progress.totalBytes);
+            }
+        }
+    }
+
+    private static final class Progress {
+
+        private final File file;
+        private final String url;
+        private final long availableBytes;
+        private final long totalBytes;
+        private final List<CacheListener> listeners;
+
+        Progress(File file, String url, long availableBytes, long totalBytes, List<CacheListener> listeners) {
+            this.file = file;
+            this.url = url;
+            this.availableBytes = availableBytes;
+            this.totalBytes = totalBytes;
+            this.listeners = listeners;
+        }
+    }
+}
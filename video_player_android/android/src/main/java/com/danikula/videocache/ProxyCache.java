@@ -2,6 +2,11 @@ package com.danikula.videocache;
 
 import android.util.Log;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.danikula.videocache.Preconditions.checkNotNull;
@@ -11,6 +16,7 @@ import static com.danikula.videocache.Preconditions.checkNotNull;
  * <p/>
  * Can be used only for sources with persistent data (that doesn't change with time).
  * Method {@link #read(byte[], long, int)} will be blocked while fetching data from source.
+ * Data read from source may be written to cache by separate thread, see {@link WriteBehindBuffer}.
  * Useful for streaming something with caching e.g. streaming video/audio etc.
  *
  * @author Alexey Danilov (danikula@gmail.com).
@@ -19,36 +25,172 @@ class ProxyCache {
 
     private static final String TAG = "ProxyCache";
     private static final int MAX_READ_SOURCE_ATTEMPTS = 1;
+    private static final long PROGRESS_INTERVAL_NANOS = 100 * 1000 * 1000;
+    private static final long UNKNOWN_LENGTH_PROGRESS_DELTA = 512 * 1024;
 
     private final Source source;
     private final Cache cache;
     private final Object wc = new Object();
     private final Object stopLock = new Object();
     private final AtomicInteger readSourceErrorsCount;
+    private final int writeBufferSize;
     private volatile Thread sourceReaderThread;
+    private volatile WriteBehindBuffer writeBuffer;
     private volatile boolean stopped;
-    private volatile int percentsAvailable = -1;
+    private volatile long sourceLength = -1;
+    private volatile long readPosition;
+    private volatile boolean completionNotified;
+    private long lastProgressTime;
+    private long lastProgressAvailable = -1;
+    private long diskWritesCount;
+    private long diskWritesNanos;
+    private long maxDiskWriteNanos;
 
     public ProxyCache(Source source, Cache cache) {
+        this(source, cache, 0);
+    }
+
+    /**
+     * Creates proxy cache.
+     *
+     * @param source          a source of data.
+     * @param cache           a cache to store source's data.
+     * @param writeBufferSize a size of buffer for data that is read from source but not yet written to cache,
+     *                        {@code 0} to write data to cache in thread reading source.
+     */
+    public ProxyCache(Source source, Cache cache, int writeBufferSize) {
         this.source = checkNotNull(source);
         this.cache = checkNotNull(cache);
+        this.writeBufferSize = writeBufferSize;
         this.readSourceErrorsCount = new AtomicInteger();
     }
 
     public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
         ProxyCacheUtils.assertBuffer(buffer, offset, length);
 
-        while (!cache.isCompleted() && cache.available() < (offset + length) && !stopped) {
+        waitForData(offset, length);
+        int read = readBuffered(buffer, offset, length);
+        if (read == -1) {
+            try {
+                read = cache.read(buffer, offset, length);
+            } catch (CorruptedCacheException e) {
+                Log.w(TAG, "Cached data is corrupted, fetching block again", e);
+                repairCorruptedBlock(e);
+                read = cache.read(buffer, offset, length);
+            }
+        }
+        readPosition = offset + Math.max(read, 0);
+        checkCompleted();
+        return read;
+    }
+
+    /**
+     * Writes data to channel like {@link #read(byte[], long, int)} does to buffer, but data that is already
+     * in cache is transferred by cache itself, without copying it to java heap if possible.
+     *
+     * @param target a channel to write data to.
+     * @param buffer a buffer to be used for data which isn't in cache yet, its length is min count of bytes to wait for.
+     * @param offset an offset of data.
+     * @return count of written bytes or {@code -1} if there is no more data.
+     * @throws ProxyCacheException if data can't be read.
+     * @throws IOException         if data can't be written to channel.
+     */
+    public long transferTo(WritableByteChannel target, byte[] buffer, long offset) throws ProxyCacheException, IOException {
+        return transferTo(target, buffer, offset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes at most {@code maxCount} bytes to channel, see {@link #transferTo(WritableByteChannel, byte[], long)}.
+     *
+     * @param target   a channel to write data to.
+     * @param buffer   a buffer to be used for data which isn't in cache yet.
+     * @param offset   an offset of data.
+     * @param maxCount max count of bytes to be written.
+     * @return count of written bytes or {@code -1} if there is no more data.
+     * @throws ProxyCacheException if data can't be read.
+     * @throws IOException         if data can't be written to channel.
+     */
+    public long transferTo(WritableByteChannel target, byte[] buffer, long offset, long maxCount) throws ProxyCacheException, IOException {
+        ProxyCacheUtils.assertBuffer(buffer, offset, buffer.length);
+        int length = (int) Math.min(buffer.length, maxCount);
+
+        waitForData(offset, length);
+        long transferred = readBuffered(buffer, offset, length);
+        if (transferred != -1) {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, (int) transferred);
+            while (data.hasRemaining()) {
+                target.write(data);
+            }
+        } else {
+            long count = Math.min(maxCount, Math.max(length, available() - offset));
+            try {
+                transferred = cache.transferTo(offset, count, target);
+            } catch (CorruptedCacheException e) {
+                Log.w(TAG, "Cached data is corrupted, fetching block again", e);
+                repairCorruptedBlock(e);
+                transferred = cache.transferTo(offset, count, target);
+            }
+        }
+        readPosition = offset + Math.max(transferred, 0);
+        checkCompleted();
+        return transferred;
+    }
+
+    /**
+     * Waits until data up to {@code end} is cached without reading it, e.g. to prefetch beginning of video.
+     *
+     * @param end       an offset of end of data to be cached.
+     * @param cancelled a flag that stops waiting when set.
+     * @throws ProxyCacheException if source can't be read.
+     */
+    public void fetch(long end, AtomicBoolean cancelled) throws ProxyCacheException {
+        while (!cache.isCompleted() && available() < end && !stopped && !cancelled.get()) {
             readSourceAsync();
             waitForSourceData();
             checkReadSourceErrorsCount();
         }
-        int read = cache.read(buffer, offset, length);
-        if (cache.isCompleted() && percentsAvailable != 100) {
-            percentsAvailable = 100;
-            onCachePercentsAvailableChanged(100);
+        checkCompleted();
+    }
+
+    /**
+     * Checks whether client reads close to end of downloaded data, so it is going to wait for source soon.
+     *
+     * @param target min count of downloaded bytes ahead of last read position.
+     * @return {@code true} if there is less than {@code target} bytes ahead of client and source isn't fully cached.
+     * @throws ProxyCacheException if cache can't be checked.
+     */
+    boolean isBelowBufferTarget(long target) throws ProxyCacheException {
+        return !cache.isCompleted() && available() - readPosition < target;
+    }
+
+    private void waitForData(long offset, int length) throws ProxyCacheException {
+        while (!cache.isCompleted() && available() < (offset + length) && !stopped) {
+            readSourceAsync();
+            waitForSourceData();
+            checkReadSourceErrorsCount();
         }
-        return read;
+    }
+
+    private void checkCompleted() throws ProxyCacheException {
+        if (cache.isCompleted() && !completionNotified) {
+            completionNotified = true;
+            long available = cache.available();
+            onCacheProgress(available, available);
+        }
+    }
+
+    private long available() throws ProxyCacheException {
+        WriteBehindBuffer writeBuffer = this.writeBuffer;
+        long cacheAvailable = cache.available();
+        return writeBuffer != null ? Math.max(writeBuffer.end(), cacheAvailable) : cacheAvailable;
+    }
+
+    private int readBuffered(byte[] buffer, long offset, int length) throws ProxyCacheException {
+        WriteBehindBuffer writeBuffer = this.writeBuffer;
+        if (writeBuffer == null || offset < cache.available()) {
+            return -1;
+        }
+        return writeBuffer.read(buffer, offset, length);
     }
 
     private void checkReadSourceErrorsCount() throws ProxyCacheException {
@@ -63,9 +205,11 @@ class ProxyCache {
         synchronized (stopLock) {
             Log.d(TAG, "Shutdown proxy for " + source);
             try {
+                // source reader isn't interrupted: it checks flag on next chunk, interruption could break cache's I/O
                 stopped = true;
-                if (sourceReaderThread != null) {
-                    sourceReaderThread.interrupt();
+                WriteBehindBuffer writeBuffer = this.writeBuffer;
+                if (writeBuffer != null) {
+                    writeBuffer.close();
                 }
                 cache.close();
             } catch (ProxyCacheException e) {
@@ -74,9 +218,27 @@ class ProxyCache {
         }
     }
 
+    /**
+     * Checks is source being read now. Reading continues until source's end even if there are no clients.
+     *
+     * @return {@code true} if source reader is running.
+     */
+    boolean isReadingSource() {
+        Thread sourceReaderThread = this.sourceReaderThread;
+        return sourceReaderThread != null && sourceReaderThread.getState() != Thread.State.TERMINATED;
+    }
+
+    /**
+     * Returns length of source opened by last source reader.
+     *
+     * @return length of source or negative value if it is unknown yet.
+     */
+    long getSourceLength() {
+        return sourceLength;
+    }
+
     private synchronized void readSourceAsync() throws ProxyCacheException {
-        boolean readingInProgress = sourceReaderThread != null && sourceReaderThread.getState() != Thread.State.TERMINATED;
-        if (!stopped && !cache.isCompleted() && !readingInProgress) {
+        if (!stopped && !cache.isCompleted() && !isReadingSource()) {
             sourceReaderThread = new Thread(new SourceReaderRunnable(), "Source reader for " + source);
             sourceReaderThread.start();
         }
@@ -94,44 +256,137 @@ class ProxyCache {
 
     private void notifyNewCacheDataAvailable(long cacheAvailable, long sourceAvailable) {
         onCacheAvailable(cacheAvailable, sourceAvailable);
+        notifyWaiters();
+    }
 
+    private void notifyWaiters() {
         synchronized (wc) {
             wc.notifyAll();
         }
     }
 
+    /**
+     * Called when data is appended to cache: in thread reading source or in disk writer if write buffer is used.
+     *
+     * @param cacheAvailable count of bytes written to cache.
+     * @param sourceLength   a length of source or negative value if it is unknown.
+     */
     protected void onCacheAvailable(long cacheAvailable, long sourceLength) {
-        boolean zeroLengthSource = sourceLength == 0;
-        int percents = zeroLengthSource ? 100 : (int) ((float) cacheAvailable / sourceLength * 100);
-        boolean percentsChanged = percents != percentsAvailable;
-        boolean sourceLengthKnown = sourceLength >= 0;
-        if (sourceLengthKnown && percentsChanged) {
-            onCachePercentsAvailableChanged(percents);
+        // called for every chunk, so progress is reported only if enough time passed and enough data is read
+        long now = System.nanoTime();
+        boolean completed = sourceLength >= 0 && cacheAvailable >= sourceLength;
+        long minDelta = sourceLength > 0 ? sourceLength / 100 : UNKNOWN_LENGTH_PROGRESS_DELTA;
+        boolean throttled = now - lastProgressTime < PROGRESS_INTERVAL_NANOS || cacheAvailable - lastProgressAvailable < minDelta;
+        if (cacheAvailable != lastProgressAvailable && (completed || !throttled)) {
+            lastProgressTime = now;
+            lastProgressAvailable = cacheAvailable;
+            onCacheProgress(cacheAvailable, sourceLength);
         }
-        percentsAvailable = percents;
     }
 
-    protected void onCachePercentsAvailableChanged(int percentsAvailable) {
+    /**
+     * Called when progress of caching should be reported.
+     *
+     * @param cacheAvailable count of cached bytes.
+     * @param sourceLength   a length of source or negative value if it is unknown.
+     */
+    protected void onCacheProgress(long cacheAvailable, long sourceLength) {
+    }
+
+    /**
+     * Called before source's data is appended to cache, when length of source is known.
+     *
+     * @param sourceLength a length of source or negative value if it is unknown.
+     * @throws ProxyCacheException if cache can't be prepared.
+     */
+    protected void prepareCache(long sourceLength) throws ProxyCacheException {
+    }
+
+    /**
+     * Called in thread reading source after cache is completed by it.
+     */
+    protected void onCacheCompleted() {
+    }
+
+    /**
+     * Called in thread reading source after source is opened.
+     */
+    protected void onSourceOpened() {
+    }
+
+    /**
+     * Called in thread reading source after source opened by it is closed.
+     */
+    protected void onSourceClosed() {
+    }
+
+    /**
+     * Called in thread reading source after every chunk, may block to limit rate of reading.
+     *
+     * @param readBytes count of bytes read from source.
+     * @throws ProxyCacheException if waiting is interrupted.
+     */
+    protected void throttleSource(int readBytes) throws ProxyCacheException {
+    }
+
+    /**
+     * Fetches block of data that doesn't match its checksum once again and writes it to cache.
+     * By default corrupted data can't be repaired and error is rethrown.
+     *
+     * @param e an error describing corrupted block.
+     * @throws ProxyCacheException if block can't be repaired.
+     */
+    protected void repairCorruptedBlock(CorruptedCacheException e) throws ProxyCacheException {
+        throw e;
     }
 
     private void readSource() {
         long sourceAvailable = -1;
         long offset = 0;
+        boolean sourceOpened = false;
+        WriteBehindBuffer writeBuffer = null;
+        Thread diskWriterThread = null;
+        AdaptiveBuffer adaptiveBuffer = new AdaptiveBuffer();
         try {
             offset = cache.available();
             source.open(offset);
+            sourceOpened = true;
+            onSourceOpened();
             sourceAvailable = source.length();
-            byte[] buffer = new byte[ProxyCacheUtils.DEFAULT_BUFFER_SIZE];
+            sourceLength = sourceAvailable;
+            synchronized (stopLock) {
+                if (isStopped()) {
+                    return;
+                }
+                prepareCache(sourceAvailable);
+                if (writeBufferSize > 0) {
+                    writeBuffer = new WriteBehindBuffer(writeBufferSize, offset);
+                    this.writeBuffer = writeBuffer;
+                    diskWriterThread = new Thread(new DiskWriterRunnable(writeBuffer), "Disk writer for " + source);
+                    diskWriterThread.start();
+                }
+            }
+            byte[] buffer = adaptiveBuffer.get();
             int readBytes;
             while ((readBytes = source.read(buffer)) != -1) {
-                synchronized (stopLock) {
-                    if (isStopped()) {
-                        return;
-                    }
-                    cache.append(buffer, readBytes);
+                boolean accepted = writeBuffer != null ? !isStopped() && writeBuffer.put(buffer, readBytes) : appendToCache(buffer, readBytes);
+                if (!accepted) {
+                    return;
                 }
                 offset += readBytes;
-                notifyNewCacheDataAvailable(offset, sourceAvailable);
+                if (writeBuffer != null) {
+                    // clients may read buffered data already, but progress is reported by disk writer
+                    notifyWaiters();
+                } else {
+                    notifyNewCacheDataAvailable(offset, sourceAvailable);
+                }
+                throttleSource(readBytes);
+                adaptiveBuffer.onTransferred(readBytes);
+                buffer = adaptiveBuffer.get();
+            }
+            if (writeBuffer != null) {
+                writeBuffer.finish();
+                writeBuffer.awaitDrained();
             }
             tryComplete();
             onSourceRead();
@@ -139,23 +394,98 @@ class ProxyCache {
             readSourceErrorsCount.incrementAndGet();
             onError(e);
         } finally {
+            if (writeBuffer != null) {
+                writeBuffer.close();
+                awaitTermination(diskWriterThread);
+                this.writeBuffer = null;
+                logDiskWrites();
+            }
             closeSource();
-            notifyNewCacheDataAvailable(offset, sourceAvailable);
+            if (sourceOpened) {
+                onSourceClosed();
+            }
+            adaptiveBuffer.release();
+            notifyNewCacheDataAvailable(writeBuffer != null ? writeBuffer.start() : offset, sourceAvailable);
+        }
+    }
+
+    private boolean appendToCache(byte[] buffer, int length) throws ProxyCacheException {
+        synchronized (stopLock) {
+            if (isStopped()) {
+                return false;
+            }
+            cache.append(buffer, length);
+            return true;
+        }
+    }
+
+    private void writeToCache(WriteBehindBuffer writeBuffer) {
+        AdaptiveBuffer adaptiveBuffer = new AdaptiveBuffer();
+        try {
+            int count;
+            while ((count = writeBuffer.peek(adaptiveBuffer.get())) != -1) {
+                long startTime = System.nanoTime();
+                if (!appendToCache(adaptiveBuffer.get(), count)) {
+                    return;
+                }
+                onDiskWrite(System.nanoTime() - startTime);
+                writeBuffer.release(count);
+                notifyNewCacheDataAvailable(writeBuffer.start(), sourceLength);
+                adaptiveBuffer.onTransferred(count);
+            }
+        } catch (Throwable e) {
+            writeBuffer.fail(e);
+        } finally {
+            adaptiveBuffer.release();
+        }
+    }
+
+    private void awaitTermination(Thread diskWriterThread) {
+        // next source reader must not start until last chunk is appended to cache, so waiting isn't interruptible
+        boolean interrupted = Thread.interrupted();
+        while (diskWriterThread.isAlive()) {
+            try {
+                diskWriterThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private void onSourceRead() {
+    private synchronized void onDiskWrite(long nanos) {
+        diskWritesCount++;
+        diskWritesNanos += nanos;
+        maxDiskWriteNanos = Math.max(maxDiskWriteNanos, nanos);
+    }
+
+    private synchronized void logDiskWrites() {
+        if (diskWritesCount > 0) {
+            Log.d(TAG, String.format(Locale.US, "Disk writes for %s: %d, average latency %d us, max latency %d us",
+                    source, diskWritesCount, diskWritesNanos / diskWritesCount / 1000, maxDiskWriteNanos / 1000));
+        }
+    }
+
+    private void onSourceRead() throws ProxyCacheException {
         // guaranteed notify listeners after source read and cache completed
-        percentsAvailable = 100;
-        onCachePercentsAvailableChanged(percentsAvailable);
+        completionNotified = true;
+        long available = cache.available();
+        onCacheProgress(available, available);
     }
 
     private void tryComplete() throws ProxyCacheException {
+        boolean completed = false;
         synchronized (stopLock) {
             if (!isStopped() && cache.available() == source.length()) {
                 cache.complete();
+                completed = true;
             }
         }
+        if (completed) {
+            onCacheCompleted();
+        }
     }
 
     private boolean isStopped() {
@@ -186,4 +516,18 @@ class ProxyCache {
             readSource();
         }
     }
+
+    private class DiskWriterRunnable implements Runnable {
+
+        private final WriteBehindBuffer writeBuffer;
+
+        DiskWriterRunnable(WriteBehindBuffer writeBuffer) {
+            this.writeBuffer = writeBuffer;
+        }
+
+        @Override
+        public void run() {
+            writeToCache(writeBuffer);
+        }
+    }
 }
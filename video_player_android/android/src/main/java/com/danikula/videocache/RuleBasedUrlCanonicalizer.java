@@ -0,0 +1,158 @@
+package com.danikula.videocache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.danikula.videocache.Preconditions.checkNotNull;
+
+/**
+ * {@link UrlCanonicalizer} configured by rules, applied in order:
+ * <ol>
+ * <li>regular expression rewrites, in order they are added;</li>
+ * <li>the first matching path prefix is stripped;</li>
+ * <li>named query parameters are dropped, names are case insensitive.</li>
+ * </ol>
+ * Url that isn't changed by any rule is returned as is. Canonicalizer without rules returns every url as is.
+ */
+public final class RuleBasedUrlCanonicalizer implements UrlCanonicalizer {
+
+    private final List<Pattern> rewritePatterns;
+    private final List<String> rewriteReplacements;
+    private final List<String> pathPrefixes;
+    private final Set<String> droppedQueryParameters;
+
+    private RuleBasedUrlCanonicalizer(Builder builder) {
+        this.rewritePatterns = new ArrayList<>(builder.rewritePatterns);
+        this.rewriteReplacements = new ArrayList<>(builder.rewriteReplacements);
+        this.pathPrefixes = new ArrayList<>(builder.pathPrefixes);
+        this.droppedQueryParameters = new HashSet<>(builder.droppedQueryParameters);
+    }
+
+    @Override
+    public String canonicalize(String url) {
+        for (int i = 0; i < rewritePatterns.size(); i++) {
+            url = rewritePatterns.get(i).matcher(url).replaceAll(rewriteReplacements.get(i));
+        }
+        if (!pathPrefixes.isEmpty()) {
+            url = stripPathPrefix(url);
+        }
+        if (!droppedQueryParameters.isEmpty()) {
+            url = dropQueryParameters(url);
+        }
+        return url;
+    }
+
+    private String stripPathPrefix(String url) {
+        int schemeEnd = url.indexOf("://");
+        int pathStart = url.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+        if (pathStart < 0) {
+            return url;
+        }
+        String path = url.substring(pathStart);
+        for (String prefix : pathPrefixes) {
+            if (isPathPrefix(path, prefix)) {
+                String rest = path.substring(prefix.length());
+                return url.substring(0, pathStart) + (rest.startsWith("/") ? rest : "/" + rest);
+            }
+        }
+        return url;
+    }
+
+    private boolean isPathPrefix(String path, String prefix) {
+        if (!path.startsWith(prefix)) {
+            return false;
+        }
+        if (prefix.endsWith("/") || path.length() == prefix.length()) {
+            return true;
+        }
+        // "/foo" is a prefix of "/foo/bar" and "/foo?id=1", but not of "/foobar"
+        char next = path.charAt(prefix.length());
+        return next == '/' || next == '?' || next == '#';
+    }
+
+    private String dropQueryParameters(String url) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return url;
+        }
+        int fragmentStart = url.indexOf('#', queryStart);
+        int queryEnd = fragmentStart < 0 ? url.length() : fragmentStart;
+        StringBuilder query = new StringBuilder();
+        boolean dropped = false;
+        for (String parameter : url.substring(queryStart + 1, queryEnd).split("&")) {
+            int nameEnd = parameter.indexOf('=');
+            String name = decodeName(nameEnd < 0 ? parameter : parameter.substring(0, nameEnd));
+            if (droppedQueryParameters.contains(name.toLowerCase(Locale.US))) {
+                dropped = true;
+            } else if (!parameter.isEmpty()) {
+                query.append(query.length() == 0 ? "" : "&").append(parameter);
+            }
+        }
+        if (!dropped) {
+            return url;
+        }
+        return url.substring(0, queryStart) + (query.length() == 0 ? "" : "?" + query) + url.substring(queryEnd);
+    }
+
+    private String decodeName(String name) {
+        try {
+            return ProxyCacheUtils.decode(name);
+        } catch (IllegalArgumentException e) {
+            return name; // malformed escaping, name is compared as is
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Pattern> rewritePatterns = new ArrayList<>();
+        private final List<String> rewriteReplacements = new ArrayList<>();
+        private final List<String> pathPrefixes = new ArrayList<>();
+        private final Set<String> droppedQueryParameters = new HashSet<>();
+
+        /**
+         * Replaces every match of regular expression in url, replacement may refer groups like {@code $1}.
+         *
+         * @param regex       a regular expression to be matched against whole url.
+         * @param replacement a replacement for every match.
+         * @return a builder.
+         */
+        public Builder rewrite(String regex, String replacement) {
+            this.rewritePatterns.add(Pattern.compile(checkNotNull(regex)));
+            this.rewriteReplacements.add(checkNotNull(replacement));
+            return this;
+        }
+
+        /**
+         * Strips prefix from path of url, e.g. {@code /token=abc} for urls like {@code https://cdn.com/token=abc/video.mp4}.
+         * Prefix is stripped only if it ends at a path segment boundary.
+         *
+         * @param prefix a path prefix starting with {@code /}.
+         * @return a builder.
+         */
+        public Builder stripPathPrefix(String prefix) {
+            this.pathPrefixes.add(checkNotNull(prefix));
+            return this;
+        }
+
+        /**
+         * Drops query parameters with given names, e.g. signatures and tokens.
+         *
+         * @param names names of query parameters, case insensitive.
+         * @return a builder.
+         */
+        public Builder dropQueryParameters(String... names) {
+            for (String name : names) {
+                this.droppedQueryParameters.add(name.toLowerCase(Locale.US));
+            }
+            return this;
+        }
+
+        public RuleBasedUrlCanonicalizer build() {
+            return new RuleBasedUrlCanonicalizer(this);
+        }
+    }
+}
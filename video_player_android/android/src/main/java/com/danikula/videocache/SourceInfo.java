@@ -10,11 +10,17 @@ public class SourceInfo {
     public final String url;
     public final long length;
     public final String mime;
+    public final String etag;
 
     public SourceInfo(String url, long length, String mime) {
+        this(url, length, mime, null);
+    }
+
+    public SourceInfo(String url, long length, String mime, String etag) {
         this.url = url;
         this.length = length;
         this.mime = mime;
+        this.etag = etag;
     }
 
     @Override
@@ -23,6 +29,7 @@ public class SourceInfo {
                 "url='" + url + '\'' +
                 ", length=" + length +
                 ", mime='" + mime + '\'' +
+                ", etag='" + etag + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,33 @@
+package com.danikula.videocache;
+
+/**
+ * Listener of data proxy reads from network at full speed, e.g. to estimate bandwidth.
+ * <p>
+ * Only sources read for played clients are reported: background downloads may be throttled, so their rate
+ * isn't rate of network. Every started transfer is ended. Methods are called in threads reading sources,
+ * several transfers may be active at once.
+ */
+public interface SourceTransferListener {
+
+    /**
+     * Called when source starts to be read at full speed.
+     *
+     * @param url an url of source.
+     */
+    void onTransferStart(String url);
+
+    /**
+     * Called for every chunk read from source while transfer is active.
+     *
+     * @param url   an url of source.
+     * @param bytes count of read bytes.
+     */
+    void onBytesTransferred(String url, int bytes);
+
+    /**
+     * Called when source is closed or starts to be read in background.
+     *
+     * @param url an url of source.
+     */
+    void onTransferEnd(String url);
+}
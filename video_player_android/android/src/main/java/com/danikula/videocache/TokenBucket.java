@@ -0,0 +1,56 @@
+package com.danikula.videocache;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.danikula.videocache.Preconditions.checkArgument;
+
+/**
+ * Limits rate of data transfer.
+ * <p>
+ * Tokens are bytes, they are added with fixed rate up to capacity, so short bursts are allowed but average rate
+ * doesn't exceed limit. One bucket may be shared by several threads, they split rate between themselves.
+ */
+final class TokenBucket {
+
+    private static final long MAX_REFILL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final long bytesPerSecond;
+    private final long capacity;
+    private long tokens;
+    private long lastRefillTime = System.nanoTime();
+
+    TokenBucket(long bytesPerSecond, long capacity) {
+        checkArgument(bytesPerSecond > 0, "Rate must be positive!");
+        checkArgument(capacity > 0, "Capacity must be positive!");
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Takes tokens for transferred bytes, waiting until bucket has them. Chunk larger than available tokens
+     * puts bucket to debt, so next callers wait for it too.
+     *
+     * @param bytes count of transferred bytes.
+     * @throws InterruptedException if thread is interrupted while waiting.
+     */
+    void acquire(long bytes) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : -tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // bucket is full after idle minute for any sane rate and capacity, so elapsed time is bounded to avoid overflow
+        long elapsed = Math.min(now - lastRefillTime, MAX_REFILL_NANOS);
+        tokens = Math.min(capacity, tokens + elapsed * bytesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillTime = now;
+    }
+}
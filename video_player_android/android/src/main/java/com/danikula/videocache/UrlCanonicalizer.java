@@ -0,0 +1,20 @@
+package com.danikula.videocache;
+
+/**
+ * Maps url to canonical form used to identify cached content instead of url itself.
+ * <p>
+ * Urls of CDNs often carry expiring signatures and tokens, so the same video fetched later has different url.
+ * Canonical url doesn't contain such parts, so cache is found for any of them. Original url is still used
+ * to fetch data.
+ */
+public interface UrlCanonicalizer {
+
+    /**
+     * Returns canonical form of url.
+     *
+     * @param url an url to be canonicalized.
+     * @return canonical url, equal for all urls pointing to the same content. {@code null} is not acceptable!
+     */
+    String canonicalize(String url);
+
+}
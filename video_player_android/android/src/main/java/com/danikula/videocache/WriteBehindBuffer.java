@@ -0,0 +1,141 @@
+package com.danikula.videocache;
+
+/**
+ * Bounded ring buffer between source reader and disk writer of {@link ProxyCache}.
+ * <p>
+ * Source reader puts data and is blocked only if buffer is full, disk writer takes data and
+ * releases it only after it is appended to cache. So any byte is either in buffer or in cache,
+ * and clients waiting for data can be served from buffer before it reaches disk.
+ */
+final class WriteBehindBuffer {
+
+    private final byte[] data;
+    private long start;
+    private int head;
+    private int size;
+    private boolean finished;
+    private boolean closed;
+    private Throwable writeError;
+
+    WriteBehindBuffer(int capacity, long start) {
+        this.data = new byte[capacity];
+        this.start = start;
+    }
+
+    /**
+     * Puts data to buffer, waits for free space if needed.
+     *
+     * @return {@code false} if buffer is closed and data is not accepted.
+     */
+    synchronized boolean put(byte[] buffer, int length) throws ProxyCacheException {
+        int offset = 0;
+        while (offset < length) {
+            while (size == data.length && !closed && writeError == null) {
+                await();
+            }
+            checkWriteError();
+            if (closed) {
+                return false;
+            }
+            int tail = (head + size) % data.length;
+            int count = Math.min(length - offset, Math.min(data.length - size, data.length - tail));
+            System.arraycopy(buffer, offset, data, tail, count);
+            size += count;
+            offset += count;
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Copies buffered data to chunk without releasing it, waits for data if buffer is empty.
+     *
+     * @return count of copied bytes or {@code -1} if there is no more data.
+     */
+    synchronized int peek(byte[] chunk) throws ProxyCacheException {
+        while (size == 0 && !finished && !closed) {
+            await();
+        }
+        if (size == 0 || closed) {
+            return -1;
+        }
+        int count = Math.min(size, Math.min(chunk.length, data.length - head));
+        System.arraycopy(data, head, chunk, 0, count);
+        return count;
+    }
+
+    /**
+     * Releases data that is already appended to cache.
+     */
+    synchronized void release(int count) {
+        start += count;
+        head = (head + count) % data.length;
+        size -= count;
+        notifyAll();
+    }
+
+    /**
+     * Copies in-flight data to client's buffer.
+     *
+     * @return count of copied bytes or {@code -1} if data with such offset isn't in buffer.
+     */
+    synchronized int read(byte[] buffer, long offset, int length) {
+        if (offset < start || offset >= start + size) {
+            return -1;
+        }
+        int position = (int) ((head + (offset - start)) % data.length);
+        int count = (int) Math.min(length, Math.min(start + size - offset, data.length - position));
+        System.arraycopy(data, position, buffer, 0, count);
+        return count;
+    }
+
+    /**
+     * Returns offset of the first byte in buffer, all data before it is appended to cache.
+     */
+    synchronized long start() {
+        return start;
+    }
+
+    synchronized long end() {
+        return start + size;
+    }
+
+    /**
+     * Marks that source is read completely, so writer stops when buffer is drained.
+     */
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    synchronized void awaitDrained() throws ProxyCacheException {
+        while (size > 0 && !closed && writeError == null) {
+            await();
+        }
+        checkWriteError();
+    }
+
+    synchronized void fail(Throwable e) {
+        writeError = e;
+        notifyAll();
+    }
+
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private void await() throws ProxyCacheException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            throw new InterruptedProxyCacheException("Waiting for write buffer is interrupted", e);
+        }
+    }
+
+    private void checkWriteError() throws ProxyCacheException {
+        if (writeError != null) {
+            throw new ProxyCacheException("Error writing data to cache", writeError);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.danikula.videocache.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * CRC32 checksums of fixed-size blocks of {@link FileCache}'s data.
+ * <p>
+ * Checksums are stored in sidecar file next to cached file as sequence of 4-byte ints, one per block.
+ * Checksum of block is computed while data is appended and persisted as soon as block is full.
+ * Checksum of last (possibly partial) block is persisted when cache is completed.
+ */
+final class BlockChecksums {
+
+    static final String EXTENSION = ".crc";
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final RandomAccessFile storage;
+    private final CRC32 tailChecksum = new CRC32();
+    private final BitSet verifiedBlocks = new BitSet();
+    private int[] checksums;
+    private int count;
+    private int tailLength;
+
+    BlockChecksums(File file) throws IOException {
+        this.storage = new RandomAccessFile(file, "rw");
+        this.count = (int) (storage.length() / 4);
+        this.checksums = new int[Math.max(count, 16)];
+        storage.seek(0);
+        for (int i = 0; i < count; i++) {
+            checksums[i] = storage.readInt();
+        }
+    }
+
+    static File sidecarFor(File dataFile) {
+        String name = dataFile.getName();
+        if (name.endsWith(FileCache.TEMP_POSTFIX)) {
+            name = name.substring(0, name.length() - FileCache.TEMP_POSTFIX.length());
+        } else if (name.endsWith(FileCache.PREALLOCATED_POSTFIX)) {
+            name = name.substring(0, name.length() - FileCache.PREALLOCATED_POSTFIX.length());
+        }
+        return new File(dataFile.getParentFile(), name + EXTENSION);
+    }
+
+    static boolean isSidecar(File file) {
+        return file.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * Drops checksums beyond {@code dataLength} bytes of data and returns count of bytes covered by remaining checksums.
+     * Used for resuming not completed cache: data after last full checksummed block can't be trusted.
+     */
+    synchronized long truncate(long dataLength) throws IOException {
+        count = (int) Math.min(count, dataLength / BLOCK_SIZE);
+        storage.setLength(count * 4L);
+        tailChecksum.reset();
+        tailLength = 0;
+        return count * (long) BLOCK_SIZE;
+    }
+
+    synchronized void update(byte[] data, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int chunk = Math.min(length - offset, BLOCK_SIZE - tailLength);
+            tailChecksum.update(data, offset, chunk);
+            tailLength += chunk;
+            offset += chunk;
+            if (tailLength == BLOCK_SIZE) {
+                storeTail();
+            }
+        }
+    }
+
+    synchronized void complete() throws IOException {
+        if (tailLength > 0) {
+            storeTail();
+        }
+    }
+
+    synchronized boolean isVerificationNeeded(int block) {
+        return block < count && !verifiedBlocks.get(block);
+    }
+
+    synchronized boolean verify(int block, byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        boolean valid = block < count && checksums[block] == (int) crc.getValue();
+        if (valid) {
+            verifiedBlocks.set(block);
+        }
+        return valid;
+    }
+
+    synchronized void close() throws IOException {
+        storage.close();
+    }
+
+    private void storeTail() throws IOException {
+        int value = (int) tailChecksum.getValue();
+        if (count == checksums.length) {
+            checksums = Arrays.copyOf(checksums, count * 2);
+        }
+        checksums[count] = value;
+        storage.seek(count * 4L);
+        storage.writeInt(value);
+        verifiedBlocks.set(count); // just written from source, there is no need to check it again
+        count++;
+        tailChecksum.reset();
+        tailLength = 0;
+    }
+}
@@ -1,113 +1,523 @@
 package com.danikula.videocache.file;
 
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.util.Log;
+
+import com.danikula.videocache.BufferPool;
 import com.danikula.videocache.Cache;
+import com.danikula.videocache.CorruptedCacheException;
 import com.danikula.videocache.ProxyCacheException;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link Cache} that uses file for storing data.
+ * <p>
+ * Data is appended by single writer, methods changing file are synchronized. Reading doesn't take any lock:
+ * readers use positional reads from {@link FileChannel} and see data up to {@link #available()},
+ * which is published by writer after data is written. Writer uses {@link RandomAccessFile} itself, so its
+ * interruption doesn't close channel of readers. Every read holds a reference to opened file, it is closed
+ * by the last of {@link #close()} and running reads.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
 public class FileCache implements Cache {
 
-    private static final String TEMP_POSTFIX = ".download";
+    static final String TEMP_POSTFIX = ".download";
+    static final String PREALLOCATED_POSTFIX = ".prealloc";
+
+    private static final String TAG = "FileCache";
 
     private final DiskUsage diskUsage;
-    public File file;
-    private RandomAccessFile dataFile;
+    private final File completedFile;
+    public volatile File file;
+    private final RandomAccessFile dataFile;
+    private final FileChannel channel;
+    private final long maxMappedSize;
+    private final MemoryBlockCache memoryCache;
+    private BlockChecksums checksums;
+    private RandomAccessFile repairFile;
+    private volatile MappedByteBuffer mappedData;
+    private volatile long available;
+    private boolean preallocated;
+    private boolean closed;
+    // reference of cache's owner plus one for every running read
+    private final AtomicInteger references = new AtomicInteger(1);
 
     public FileCache(File file) throws ProxyCacheException {
         this(file, new UnlimitedDiskUsage());
     }
 
     public FileCache(File file, DiskUsage diskUsage) throws ProxyCacheException {
+        this(file, diskUsage, false, 0, null);
+    }
+
+    /**
+     * Creates file cache.
+     *
+     * @param file            a file to cache data in.
+     * @param diskUsage       a disk usage strategy.
+     * @param verifyChecksums {@code true} to keep checksum for every block of data and check it on reading,
+     *                        see {@link #repair(long, byte[], int)}.
+     * @param maxMappedSize   max size of completed file to be read through memory mapping, {@code 0} to never map file.
+     * @param memoryCache     a memory cache for hot blocks of not mapped completed file, may be {@code null}.
+     * @throws ProxyCacheException if file can't be used as cache.
+     */
+    public FileCache(File file, DiskUsage diskUsage, boolean verifyChecksums, long maxMappedSize, MemoryBlockCache memoryCache) throws ProxyCacheException {
         try {
             if (diskUsage == null) {
                 throw new NullPointerException();
             }
             this.diskUsage = diskUsage;
+            this.maxMappedSize = maxMappedSize;
+            this.memoryCache = memoryCache;
+            this.completedFile = file;
             File directory = file.getParentFile();
             Files.makeDir(directory);
             boolean completed = file.exists();
-            this.file = completed ? file : new File(file.getParentFile(), file.getName() + TEMP_POSTFIX);
+            boolean lengthUnknown = !completed && restorePreallocatedFile();
+            if (memoryCache != null && !completed && !getTempFile().exists()) {
+                // file is going to be downloaded from scratch, blocks of previous one may be stale
+                memoryCache.remove(file);
+            }
+            this.file = completed ? file : getTempFile();
             this.dataFile = new RandomAccessFile(this.file, completed ? "r" : "rw");
+            this.channel = dataFile.getChannel();
+            File checksumsFile = BlockChecksums.sidecarFor(file);
+            if (verifyChecksums) {
+                this.checksums = new BlockChecksums(checksumsFile);
+                if (!completed) {
+                    long trustedLength = checksums.truncate(dataFile.length());
+                    dataFile.setLength(trustedLength);
+                }
+            } else {
+                if (!completed && checksumsFile.exists()) {
+                    // data will be appended without checksums, so stored ones become invalid
+                    checksumsFile.delete();
+                }
+                if (lengthUnknown) {
+                    dataFile.setLength(0);
+                }
+            }
+            this.available = dataFile.length();
+            if (completed) {
+                map();
+            }
         } catch (IOException e) {
             throw new ProxyCacheException("Error using file " + file + " as disc cache", e);
         }
     }
 
+    /**
+     * Renames preallocated file left after app's crash back to temp file.
+     * Logical length of such file is unknown, so it must be truncated by caller.
+     *
+     * @return {@code true} if preallocated file was found.
+     */
+    private boolean restorePreallocatedFile() {
+        File preallocatedFile = getPreallocatedFile();
+        if (!preallocatedFile.exists()) {
+            return false;
+        }
+        Log.w(TAG, "Preallocated file " + preallocatedFile + " wasn't closed properly, its data will be truncated");
+        if (getTempFile().exists() || !preallocatedFile.renameTo(getTempFile())) {
+            preallocatedFile.delete();
+            return false;
+        }
+        return true;
+    }
+
     @Override
-    public synchronized long available() throws ProxyCacheException {
+    public long available() throws ProxyCacheException {
+        return available;
+    }
+
+    @Override
+    public int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
+        acquireReference();
         try {
-            return (int) dataFile.length();
-        } catch (IOException e) {
-            throw new ProxyCacheException("Error reading length of file " + file, e);
+            return readData(buffer, offset, length);
+        } finally {
+            releaseReference();
         }
     }
 
-    @Override
-    public synchronized int read(byte[] buffer, long offset, int length) throws ProxyCacheException {
+    private int readData(byte[] buffer, long offset, int length) throws ProxyCacheException {
         try {
-            dataFile.seek(offset);
-            return dataFile.read(buffer, 0, length);
+            long available = this.available;
+            MemoryBlockCache.Block memoryBlock = getMemoryBlock(offset, available);
+            if (memoryBlock != null) {
+                try {
+                    ByteBuffer data = memoryBlock.data();
+                    data.position((int) (offset % MemoryBlockCache.BLOCK_SIZE));
+                    int count = Math.min(length, data.remaining());
+                    data.get(buffer, 0, count);
+                    return count;
+                } finally {
+                    memoryCache.release(memoryBlock);
+                }
+            }
+            if (checksums != null) {
+                int block = (int) (offset / BlockChecksums.BLOCK_SIZE);
+                if (checksums.isVerificationNeeded(block)) {
+                    return readVerified(block, buffer, offset, length, available);
+                }
+            }
+            if (offset >= available) {
+                return -1;
+            }
+            MappedByteBuffer mappedData = this.mappedData;
+            if (mappedData != null) {
+                ByteBuffer data = mappedData.duplicate();
+                data.position((int) offset);
+                int count = Math.min(length, data.remaining());
+                data.get(buffer, 0, count);
+                return count;
+            }
+            return readFully(ByteBuffer.wrap(buffer, 0, (int) Math.min(length, available - offset)), offset);
         } catch (IOException e) {
             String format = "Error reading %d bytes with offset %d from file[%d bytes] to buffer[%d bytes]";
             throw new ProxyCacheException(String.format(format, length, offset, available(), buffer.length), e);
         }
     }
 
+    @Override
+    public long transferTo(long offset, long count, WritableByteChannel target) throws ProxyCacheException, IOException {
+        acquireReference();
+        try {
+            return transferData(offset, count, target);
+        } finally {
+            releaseReference();
+        }
+    }
+
+    private long transferData(long offset, long count, WritableByteChannel target) throws ProxyCacheException, IOException {
+        long available = this.available;
+        if (offset >= available) {
+            return -1;
+        }
+        count = Math.min(count, available - offset);
+        MemoryBlockCache.Block memoryBlock = getMemoryBlock(offset, available);
+        if (memoryBlock != null) {
+            try {
+                ByteBuffer data = memoryBlock.data();
+                data.position((int) (offset % MemoryBlockCache.BLOCK_SIZE));
+                data.limit((int) Math.min(data.limit(), data.position() + count));
+                int transferred = data.remaining();
+                writeFully(target, data);
+                return transferred;
+            } finally {
+                memoryCache.release(memoryBlock);
+            }
+        }
+        if (checksums != null) {
+            // every block must be checked before its data is sent
+            long blockEnd = (offset / BlockChecksums.BLOCK_SIZE + 1) * BlockChecksums.BLOCK_SIZE;
+            count = Math.min(count, blockEnd - offset);
+            if (checksums.isVerificationNeeded((int) (offset / BlockChecksums.BLOCK_SIZE))) {
+                byte[] data = BufferPool.acquire(BlockChecksums.BLOCK_SIZE);
+                try {
+                    int read = readData(data, offset, (int) Math.min(count, data.length));
+                    if (read > 0) {
+                        writeFully(target, ByteBuffer.wrap(data, 0, read));
+                    }
+                    return read;
+                } finally {
+                    BufferPool.release(data);
+                }
+            }
+        }
+        MappedByteBuffer mappedData = this.mappedData;
+        if (mappedData != null) {
+            ByteBuffer data = mappedData.duplicate();
+            data.limit((int) (offset + count));
+            data.position((int) offset);
+            writeFully(target, data);
+            return count;
+        }
+        return channel.transferTo(offset, count, target);
+    }
+
+    /**
+     * Returns block containing offset from memory cache, reading it from file if block is hot.
+     * Cold block is read from file directly, e.g. by {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     *
+     * @return block held for reading, it must be released, or {@code null} if block isn't served from memory.
+     */
+    private MemoryBlockCache.Block getMemoryBlock(long offset, long available) throws IOException {
+        if (memoryCache == null || mappedData != null || offset >= available || !isCompleted()) {
+            return null;
+        }
+        int block = (int) (offset / MemoryBlockCache.BLOCK_SIZE);
+        MemoryBlockCache.Block cached = memoryCache.acquire(completedFile, block);
+        if (cached != null) {
+            return cached;
+        }
+        if (checksums != null && checksums.isVerificationNeeded(block)) {
+            return null; // only verified data gets to memory
+        }
+        if (!memoryCache.onMiss(completedFile, block)) {
+            return null; // block is read for the first time, it gets to memory only if it is read again
+        }
+        long blockOffset = (long) block * MemoryBlockCache.BLOCK_SIZE;
+        int blockLength = (int) Math.min(MemoryBlockCache.BLOCK_SIZE, available - blockOffset);
+        ByteBuffer data = memoryCache.allocate(blockLength);
+        if (readFully(data, blockOffset) != blockLength) {
+            memoryCache.free(data);
+            return null;
+        }
+        data.flip();
+        return memoryCache.put(completedFile, block, data);
+    }
+
+    private void writeFully(WritableByteChannel target, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            target.write(data);
+        }
+    }
+
+    private int readVerified(int block, byte[] buffer, long offset, int length, long available) throws IOException, CorruptedCacheException {
+        long blockOffset = (long) block * BlockChecksums.BLOCK_SIZE;
+        int blockLength = (int) Math.min(BlockChecksums.BLOCK_SIZE, available - blockOffset);
+        byte[] blockData = BufferPool.acquire(BlockChecksums.BLOCK_SIZE);
+        try {
+            readFully(ByteBuffer.wrap(blockData, 0, blockLength), blockOffset);
+            if (!checksums.verify(block, blockData, blockLength)) {
+                throw new CorruptedCacheException("Block " + block + " of file " + file + " is corrupted", blockOffset, blockLength);
+            }
+            int start = (int) (offset - blockOffset);
+            int count = Math.min(length, blockLength - start);
+            if (count <= 0) {
+                return -1;
+            }
+            System.arraycopy(blockData, start, buffer, 0, count);
+            return count;
+        } finally {
+            BufferPool.release(blockData);
+        }
+    }
+
     @Override
     public synchronized void append(byte[] data, int length) throws ProxyCacheException {
         try {
             if (isCompleted()) {
                 throw new ProxyCacheException("Error append cache: cache file " + file + " is completed!");
             }
-            dataFile.seek(available());
+            if (closed) {
+                throw new ProxyCacheException("Error append cache: cache file " + file + " is closed!");
+            }
+            dataFile.seek(available);
             dataFile.write(data, 0, length);
+            if (checksums != null) {
+                checksums.update(data, length);
+            }
+            available += length;
         } catch (IOException e) {
             String format = "Error writing %d bytes to %s from buffer with size %d";
             throw new ProxyCacheException(String.format(format, length, dataFile, data.length), e);
         }
     }
 
+    /**
+     * Reserves disk space for whole data if its length is known, so appending doesn't grow file piece by piece.
+     * <p>
+     * Preallocated file gets {@link #PREALLOCATED_POSTFIX} instead of {@link #TEMP_POSTFIX} until it is closed,
+     * because its length doesn't match length of available data. Such file found on next start is truncated.
+     *
+     * @param length an expected length of cached data.
+     * @throws ProxyCacheException if space can't be reserved.
+     */
+    public synchronized void preallocate(long length) throws ProxyCacheException {
+        if (isCompleted() || preallocated || length <= available) {
+            return;
+        }
+        File preallocatedFile = getPreallocatedFile();
+        if (!file.renameTo(preallocatedFile)) {
+            Log.w(TAG, "Error renaming " + file + " to " + preallocatedFile + ", preallocation is skipped");
+            return;
+        }
+        file = preallocatedFile;
+        preallocated = true;
+        try {
+            allocate(length);
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error preallocating " + length + " bytes for file " + file, e);
+        }
+    }
+
+    private void allocate(long length) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                Os.posix_fallocate(dataFile.getFD(), 0, length);
+                return;
+            } catch (ErrnoException e) {
+                Log.w(TAG, "Error allocating space for " + file + ", length is set instead", e);
+            }
+        }
+        dataFile.setLength(length);
+    }
+
+    /**
+     * Overwrites corrupted block with data fetched from source once again.
+     * Data is written only if it matches checksum stored for this block.
+     *
+     * @param offset an offset of block, see {@link CorruptedCacheException#offset}.
+     * @param data   a block's data.
+     * @param length a length of block's data.
+     * @throws ProxyCacheException if data doesn't match checksum or can't be written.
+     */
+    public synchronized void repair(long offset, byte[] data, int length) throws ProxyCacheException {
+        int block = (int) (offset / BlockChecksums.BLOCK_SIZE);
+        if (checksums == null || !checksums.verify(block, data, length)) {
+            throw new ProxyCacheException("Error repairing block " + block + " of file " + file + ": source data doesn't match checksum");
+        }
+        try {
+            RandomAccessFile writableFile = isCompleted() ? getRepairFile() : dataFile;
+            writableFile.seek(offset);
+            writableFile.write(data, 0, length);
+        } catch (IOException e) {
+            throw new ProxyCacheException("Error repairing block " + block + " of file " + file, e);
+        }
+    }
+
+    /**
+     * Returns writable file for repairing completed file, which is opened read-only. It is opened once
+     * and kept until cache is closed, corrupted file usually has many broken blocks.
+     */
+    private RandomAccessFile getRepairFile() throws IOException {
+        if (repairFile == null) {
+            repairFile = new RandomAccessFile(file, "rw");
+        }
+        return repairFile;
+    }
+
     @Override
-    public synchronized void close() throws ProxyCacheException {
+    public void close() throws ProxyCacheException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
         try {
-            dataFile.close();
+            finishFile();
+        } finally {
+            // readers running now keep file opened until they are finished
+            releaseReference();
+        }
+    }
+
+    private synchronized void finishFile() throws ProxyCacheException {
+        try {
+            if (preallocated) {
+                dataFile.setLength(available);
+            }
+            mappedData = null; // mapping is released by gc, it can't be unmapped explicitly
+            if (preallocated) {
+                preallocated = false;
+                File tempFile = getTempFile();
+                if (!file.renameTo(tempFile)) {
+                    throw new IOException("Error renaming " + file + " to " + tempFile);
+                }
+                file = tempFile;
+            }
             diskUsage.touch(file);
         } catch (IOException e) {
             throw new ProxyCacheException("Error closing file " + file, e);
         }
     }
 
+    private void acquireReference() throws ProxyCacheException {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) {
+                throw new ProxyCacheException("Error reading file " + file + ": cache is closed!");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    private void releaseReference() {
+        if (references.decrementAndGet() == 0) {
+            closeFiles();
+        }
+    }
+
+    private synchronized void closeFiles() {
+        try {
+            channel.close();
+            if (repairFile != null) {
+                repairFile.close();
+                repairFile = null;
+            }
+            if (checksums != null) {
+                checksums.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing file " + file, e);
+        }
+    }
+
     @Override
     public synchronized void complete() throws ProxyCacheException {
         if (isCompleted()) {
             return;
         }
 
-        close();
-        String fileName = file.getName().substring(0, file.getName().length() - TEMP_POSTFIX.length());
-        File completedFile = new File(file.getParentFile(), fileName);
-        boolean renamed = file.renameTo(completedFile);
-        if (!renamed) {
-            throw new ProxyCacheException("Error renaming file " + file + " to " + completedFile + " for completion!");
-        }
-        file = completedFile;
         try {
-            dataFile = new RandomAccessFile(file, "r");
+            if (checksums != null) {
+                checksums.complete();
+            }
+            if (preallocated) {
+                dataFile.setLength(available);
+                preallocated = false;
+            }
+            // file stays opened while it is renamed, so concurrent readers aren't affected
+            boolean renamed = file.renameTo(completedFile);
+            if (!renamed) {
+                throw new ProxyCacheException("Error renaming file " + file + " to " + completedFile + " for completion!");
+            }
+            file = completedFile;
+            map();
             diskUsage.touch(file);
         } catch (IOException e) {
-            throw new ProxyCacheException("Error opening " + file + " as disc cache", e);
+            throw new ProxyCacheException("Error completing file " + file, e);
+        }
+    }
+
+    /**
+     * Deletes completed file with its checksums, e.g. when the same data is already stored by other file.
+     * Opened cache keeps reading deleted data until it is closed.
+     *
+     * @throws ProxyCacheException if cache isn't completed or file can't be deleted.
+     */
+    public synchronized void delete() throws ProxyCacheException {
+        if (!isCompleted()) {
+            throw new ProxyCacheException("Error deleting file " + file + ": cache isn't completed!");
+        }
+        if (!file.delete()) {
+            throw new ProxyCacheException("Error deleting file " + file);
+        }
+        File checksumsFile = BlockChecksums.sidecarFor(file);
+        if (checksumsFile.exists() && !checksumsFile.delete()) {
+            Log.e(TAG, "Error deleting checksums " + checksumsFile + " of deleted file");
+        }
+        if (memoryCache != null) {
+            memoryCache.remove(completedFile);
         }
     }
 
     @Override
-    public synchronized boolean isCompleted() {
+    public boolean isCompleted() {
         return !isTempFile(file);
     }
 
@@ -120,8 +530,38 @@ public class FileCache implements Cache {
         return file;
     }
 
+    /**
+     * Maps small completed file to memory, so it can be read many times (e.g. looped short video) without any syscall.
+     * Mapping lives until cache is closed, i.e. while there are clients for this file.
+     */
+    private void map() throws IOException {
+        if (available > 0 && available <= maxMappedSize) {
+            mappedData = channel.map(FileChannel.MapMode.READ_ONLY, 0, available);
+        }
+    }
+
+    private int readFully(ByteBuffer target, long offset) throws IOException {
+        int read = 0;
+        while (target.hasRemaining()) {
+            int count = channel.read(target, offset + read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    private File getTempFile() {
+        return new File(completedFile.getParentFile(), completedFile.getName() + TEMP_POSTFIX);
+    }
+
+    private File getPreallocatedFile() {
+        return new File(completedFile.getParentFile(), completedFile.getName() + PREALLOCATED_POSTFIX);
+    }
+
     private boolean isTempFile(File file) {
-        return file.getName().endsWith(TEMP_POSTFIX);
+        return file.getName().endsWith(TEMP_POSTFIX) || file.getName().endsWith(PREALLOCATED_POSTFIX);
     }
 
 }
@@ -7,7 +7,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -37,7 +36,11 @@ class Files {
         List<File> result = new LinkedList<>();
         File[] files = directory.listFiles();
         if (files != null) {
-            result = Arrays.asList(files);
+            for (File file : files) {
+                if (!BlockChecksums.isSidecar(file)) {
+                    result.add(file);
+                }
+            }
             Collections.sort(result, new LastAccessedComparator());
         }
         return result;
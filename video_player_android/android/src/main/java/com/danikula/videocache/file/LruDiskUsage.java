@@ -41,6 +41,7 @@ public abstract class LruDiskUsage implements DiskUsage {
                 long fileSize = file.length();
                 boolean deleted = file.delete();
                 if (deleted) {
+                    deleteChecksums(file);
                     totalCount--;
                     totalSize -= fileSize;
                     Log.i(TAG, "Cache file " + file + " is deleted because it exceeds cache limit");
@@ -51,6 +52,13 @@ public abstract class LruDiskUsage implements DiskUsage {
         }
     }
 
+    private void deleteChecksums(File file) {
+        File checksums = BlockChecksums.sidecarFor(file);
+        if (checksums.exists() && !checksums.delete()) {
+            Log.e(TAG, "Error deleting checksums " + checksums + " of trimmed file");
+        }
+    }
+
     private long countTotalSize(List<File> files) {
         long totalSize = 0;
         for (File file : files) {
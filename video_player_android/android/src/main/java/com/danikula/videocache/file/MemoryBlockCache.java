@@ -0,0 +1,248 @@
+package com.danikula.videocache.file;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory tier in front of {@link FileCache}: hot blocks of completed files kept in direct (off-heap) buffers.
+ * <p>
+ * Block gets to memory only when it is read again a while after its first read, so file streamed once doesn't
+ * evict blocks of short videos played again and again. Reads of one pass through block (chunk after chunk)
+ * come within short time, they don't make block hot. Blocks are evicted in LRU order when total size exceeds limit.
+ * Readers hold block while they read it without any lock, buffer of evicted block is reused for
+ * another block only after all its readers release it. One instance may be shared by all files and servers.
+ */
+public final class MemoryBlockCache {
+
+    /**
+     * Same blocks as {@link BlockChecksums} use, so block is verified as a whole before it gets to memory.
+     */
+    static final int BLOCK_SIZE = BlockChecksums.BLOCK_SIZE;
+    private static final int MAX_FREE_BUFFERS_COUNT = 4;
+    private static final long DEFAULT_REREAD_INTERVAL_MS = 1000;
+
+    private final Map<Key, Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Long> accessedBlocks;
+    private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>(MAX_FREE_BUFFERS_COUNT);
+    private final long maxSize;
+    private final long rereadIntervalNanos;
+    private long size;
+
+    /**
+     * Creates memory cache.
+     *
+     * @param maxSize max total size of cached blocks in bytes.
+     */
+    public MemoryBlockCache(long maxSize) {
+        this(maxSize, DEFAULT_REREAD_INTERVAL_MS);
+    }
+
+    /**
+     * Creates memory cache.
+     *
+     * @param maxSize           max total size of cached blocks in bytes.
+     * @param rereadIntervalMs min time between the first read of block and read making block hot.
+     */
+    MemoryBlockCache(long maxSize, long rereadIntervalMs) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive!");
+        }
+        this.maxSize = maxSize;
+        this.rereadIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rereadIntervalMs);
+        // blocks read once are remembered without data, twice as many as blocks fitting to memory
+        final int maxAccessedBlocksCount = (int) Math.min(Integer.MAX_VALUE / 2, maxSize / BLOCK_SIZE + 1) * 2;
+        this.accessedBlocks = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                return size() > maxAccessedBlocksCount;
+            }
+        };
+    }
+
+    /**
+     * Returns block held for reading, it must be released by {@link #release(Block)}.
+     *
+     * @return block or {@code null} if block isn't in memory.
+     */
+    synchronized Block acquire(File file, int block) {
+        Block cached = blocks.get(new Key(file, block));
+        if (cached != null) {
+            cached.readers++;
+        }
+        return cached;
+    }
+
+    synchronized void release(Block block) {
+        block.readers--;
+        if (block.evicted && block.readers == 0) {
+            free(block.data);
+        }
+    }
+
+    /**
+     * Registers read of block that isn't in memory.
+     *
+     * @return {@code true} if block is read again a while after its first read, so it is worth putting to memory.
+     */
+    synchronized boolean onMiss(File file, int block) {
+        Key key = new Key(file, block);
+        long now = System.nanoTime();
+        Long firstReadTime = accessedBlocks.get(key);
+        if (firstReadTime == null) {
+            accessedBlocks.put(key, now);
+            return false;
+        }
+        if (now - firstReadTime < rereadIntervalNanos) {
+            return false;
+        }
+        accessedBlocks.remove(key);
+        return true;
+    }
+
+    /**
+     * Returns buffer for block's data, reused buffer of evicted block if there is any.
+     *
+     * @param length a length of block's data.
+     * @return empty buffer with limit set to length.
+     */
+    synchronized ByteBuffer allocate(int length) {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Returns buffer got by {@link #allocate(int)} but not put to cache.
+     */
+    synchronized void free(ByteBuffer buffer) {
+        if (freeBuffers.size() < MAX_FREE_BUFFERS_COUNT) {
+            freeBuffers.push(buffer);
+        }
+    }
+
+    /**
+     * Puts block to memory, evicting least recently used blocks if needed.
+     *
+     * @param data block's data got by {@link #allocate(int)} from position {@code 0} to limit,
+     *             it must not be changed after this call.
+     * @return put block held for reading, it must be released by {@link #release(Block)}.
+     */
+    synchronized Block put(File file, int block, ByteBuffer data) {
+        Key key = new Key(file, block);
+        Block cached = new Block(data);
+        cached.readers = 1;
+        Block previous = blocks.put(key, cached);
+        if (previous != null) {
+            evict(previous);
+        }
+        size += BLOCK_SIZE;
+        Iterator<Block> iterator = blocks.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Block eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+        return cached;
+    }
+
+    /**
+     * Removes all blocks of file, e.g. because it is going to be downloaded again.
+     */
+    synchronized void remove(File file) {
+        Iterator<Map.Entry<Key, Block>> iterator = blocks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Block> entry = iterator.next();
+            if (entry.getKey().file.equals(file)) {
+                iterator.remove();
+                evict(entry.getValue());
+            }
+        }
+        Iterator<Key> accessedIterator = accessedBlocks.keySet().iterator();
+        while (accessedIterator.hasNext()) {
+            if (accessedIterator.next().file.equals(file)) {
+                accessedIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases all blocks. Memory of direct buffers is freed by gc when they aren't read anymore.
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        accessedBlocks.clear();
+        freeBuffers.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private void evict(Block block) {
+        size -= BLOCK_SIZE;
+        block.evicted = true;
+        if (block.readers == 0) {
+            free(block.data);
+        }
+    }
+
+    /**
+     * Block of data in memory.
+     */
+    static final class Block {
+
+        private final ByteBuffer data;
+        private int readers;
+        private boolean evicted;
+
+        Block(ByteBuffer data) {
+            this.data = data;
+        }
+
+        /**
+         * Returns block's data, its position is {@code 0} and limit is length of block.
+         */
+        ByteBuffer data() {
+            return data.duplicate();
+        }
+    }
+
+    private static final class Key {
+
+        private final File file;
+        private final int block;
+
+        Key(File file, int block) {
+            this.file = file;
+            this.block = block;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return block == key.block && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * file.hashCode() + block;
+        }
+    }
+}
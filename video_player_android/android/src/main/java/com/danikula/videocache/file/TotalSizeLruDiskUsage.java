@@ -9,9 +9,18 @@ import java.io.File;
  */
 public class TotalSizeLruDiskUsage extends LruDiskUsage {
 
-    private final long maxSize;
+    private volatile long maxSize;
 
     public TotalSizeLruDiskUsage(long maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Changes max size of cache, cache is trimmed to new size when next file is touched.
+     *
+     * @param maxSize max size of cache in bytes.
+     */
+    public void setMaxSize(long maxSize) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("Max size must be positive number!");
         }
@@ -23,17 +23,35 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
     private static final String COLUMN_URL = "url";
     private static final String COLUMN_LENGTH = "length";
     private static final String COLUMN_MIME = "mime";
-    private static final String[] ALL_COLUMNS = new String[]{COLUMN_ID, COLUMN_URL, COLUMN_LENGTH, COLUMN_MIME};
+    private static final String COLUMN_ETAG = "etag";
+    private static final String[] ALL_COLUMNS = new String[]{COLUMN_ID, COLUMN_URL, COLUMN_LENGTH, COLUMN_MIME, COLUMN_ETAG};
     private static final String CREATE_SQL =
             "CREATE TABLE " + TABLE + " (" +
                     COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL," +
                     COLUMN_URL + " TEXT NOT NULL," +
                     COLUMN_MIME + " TEXT," +
-                    COLUMN_LENGTH + " INTEGER" +
+                    COLUMN_LENGTH + " INTEGER," +
+                    COLUMN_ETAG + " TEXT" +
+                    ");";
+    private static final String ADD_ETAG_SQL = "ALTER TABLE " + TABLE + " ADD COLUMN " + COLUMN_ETAG + " TEXT;";
+
+    private static final String CONTENT_INDEX_TABLE = "ContentIndex";
+    private static final String CONTENT_FILE_TABLE = "ContentFile";
+    private static final String COLUMN_CONTENT_ID = "contentId";
+    private static final String COLUMN_FILE = "file";
+    private static final String CREATE_CONTENT_INDEX_SQL =
+            "CREATE TABLE " + CONTENT_INDEX_TABLE + " (" +
+                    COLUMN_URL + " TEXT PRIMARY KEY NOT NULL," +
+                    COLUMN_CONTENT_ID + " TEXT NOT NULL" +
+                    ");";
+    private static final String CREATE_CONTENT_FILE_SQL =
+            "CREATE TABLE " + CONTENT_FILE_TABLE + " (" +
+                    COLUMN_CONTENT_ID + " TEXT PRIMARY KEY NOT NULL," +
+                    COLUMN_FILE + " TEXT NOT NULL" +
                     ");";
 
     DatabaseSourceInfoStorage(Context context) {
-        super(context, "AndroidVideoCache.db", null, 1);
+        super(context, "AndroidVideoCache.db", null, 2);
         checkNotNull(context);
     }
 
@@ -41,11 +59,20 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
     public void onCreate(SQLiteDatabase db) {
         checkNotNull(db);
         db.execSQL(CREATE_SQL);
+        createContentTables(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        throw new IllegalStateException("Should not be called. There is no any migration");
+        if (oldVersion < 2) {
+            db.execSQL(ADD_ETAG_SQL);
+            createContentTables(db);
+        }
+    }
+
+    private void createContentTables(SQLiteDatabase db) {
+        db.execSQL(CREATE_CONTENT_INDEX_SQL);
+        db.execSQL(CREATE_CONTENT_FILE_SQL);
     }
 
     @Override
@@ -75,16 +102,59 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
         }
     }
 
+    @Override
+    public String getContentId(String url) {
+        checkNotNull(url);
+        return queryString(CONTENT_INDEX_TABLE, COLUMN_CONTENT_ID, COLUMN_URL, url);
+    }
+
+    @Override
+    public void putContentId(String url, String contentId) {
+        checkAllNotNull(url, contentId);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_URL, url);
+        values.put(COLUMN_CONTENT_ID, contentId);
+        getWritableDatabase().insertWithOnConflict(CONTENT_INDEX_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public String getContentFile(String contentId) {
+        checkNotNull(contentId);
+        return queryString(CONTENT_FILE_TABLE, COLUMN_FILE, COLUMN_CONTENT_ID, contentId);
+    }
+
+    @Override
+    public void putContentFile(String contentId, String fileName) {
+        checkAllNotNull(contentId, fileName);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CONTENT_ID, contentId);
+        values.put(COLUMN_FILE, fileName);
+        getWritableDatabase().insertWithOnConflict(CONTENT_FILE_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
     @Override
     public void release() {
         close();
     }
 
+    private String queryString(String table, String column, String keyColumn, String key) {
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(table, new String[]{column}, keyColumn + "=?", new String[]{key}, null, null, null);
+            return cursor == null || !cursor.moveToFirst() ? null : cursor.getString(0);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     private SourceInfo convert(Cursor cursor) {
         return new SourceInfo(
                 cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL)),
                 cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LENGTH)),
-                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MIME))
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MIME)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ETAG))
         );
     }
 
@@ -93,6 +163,7 @@ class DatabaseSourceInfoStorage extends SQLiteOpenHelper implements SourceInfoSt
         values.put(COLUMN_URL, sourceInfo.url);
         values.put(COLUMN_LENGTH, sourceInfo.length);
         values.put(COLUMN_MIME, sourceInfo.mime);
+        values.put(COLUMN_ETAG, sourceInfo.etag);
         return values;
     }
 }
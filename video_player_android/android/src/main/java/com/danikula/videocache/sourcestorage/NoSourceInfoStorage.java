@@ -18,6 +18,24 @@ public class NoSourceInfoStorage implements SourceInfoStorage {
     public void put(String url, SourceInfo sourceInfo) {
     }
 
+    @Override
+    public String getContentId(String url) {
+        return null;
+    }
+
+    @Override
+    public void putContentId(String url, String contentId) {
+    }
+
+    @Override
+    public String getContentFile(String contentId) {
+        return null;
+    }
+
+    @Override
+    public void putContentFile(String contentId, String fileName) {
+    }
+
     @Override
     public void release() {
     }
@@ -4,6 +4,9 @@ import com.danikula.videocache.SourceInfo;
 
 /**
  * Storage for {@link SourceInfo}.
+ * <p>
+ * Storage also keeps index of content for deduplication of cache: url is mapped to id of its content
+ * and content is mapped to name of file storing it, so different urls of the same content share one file.
  *
  * @author Alexey Danilov (danikula@gmail.com).
  */
@@ -13,5 +16,25 @@ public interface SourceInfoStorage {
 
     void put(String url, SourceInfo sourceInfo);
 
+    /**
+     * Returns id of content of url.
+     *
+     * @param url an url.
+     * @return content id or {@code null} if content of url is unknown.
+     */
+    String getContentId(String url);
+
+    void putContentId(String url, String contentId);
+
+    /**
+     * Returns name of cache file storing content.
+     *
+     * @param contentId an id of content.
+     * @return name of file in cache directory or {@code null} if content isn't stored.
+     */
+    String getContentFile(String contentId);
+
+    void putContentFile(String contentId, String fileName);
+
     void release();
 }
@@ -13,18 +13,24 @@ import java.util.Map;
 class CacheDataSourceFactory implements DataSource.Factory {
     private final Context context;
     private DefaultDataSource.Factory defaultDatasourceFactory;
-    private final long maxFileSize, maxCacheSize;
+    private final long maxFileSize;
+    @Nullable
+    private final Long maxCacheSize;
 
     private DefaultHttpDataSource.Factory defaultHttpDataSourceFactory;
 
     private final String cacheKey;
+    private final String uri;
+    private SimpleCache simpleCache;
 
-    CacheDataSourceFactory(Context context, @Nullable Long maxCacheSize, @Nullable Long maxFileSize, String cacheKey) {
+    CacheDataSourceFactory(Context context, @Nullable Long maxCacheSize, @Nullable Long maxFileSize, String cacheKey,
+            @Nullable String uri) {
         super();
         this.context = context;
-        this.maxCacheSize = maxCacheSize != null ? maxCacheSize : 1 * 1024 * 1024 * 1024;
+        this.maxCacheSize = maxCacheSize;
         this.maxFileSize = maxFileSize != null ? maxFileSize : 100 * 1024 * 1024;
         this.cacheKey = cacheKey;
+        this.uri = uri;
 
         defaultHttpDataSourceFactory = new DefaultHttpDataSource.Factory();
         defaultHttpDataSourceFactory.setUserAgent("ExoPlayer");
@@ -36,18 +42,24 @@ class CacheDataSourceFactory implements DataSource.Factory {
     }
 
     @Override
-    public DataSource createDataSource() {
-        final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter.Builder(context).build();
-
+    public CacheDataSource createDataSource() {
+        // player registers its bandwidth meter itself, reading without player must add it explicitly
         defaultDatasourceFactory = new DefaultDataSource.Factory(this.context, defaultHttpDataSourceFactory);
-        defaultDatasourceFactory.setTransferListener(bandwidthMeter);
 
-        final SimpleCache simpleCache = SimpleCacheSingleton.getInstance(context, maxCacheSize).simpleCache;
-        final CacheKeyFactory cacheKeyProvider = new CustomCacheKeyProvider(this.cacheKey);
+        final SimpleCache simpleCache = getSimpleCache();
+        final CacheKeyFactory cacheKeyProvider = new CustomCacheKeyProvider(this.cacheKey, this.uri);
         return new CacheDataSource(simpleCache, defaultDatasourceFactory.createDataSource(),
                 new FileDataSource(), new CacheDataSink(simpleCache, maxFileSize),
                 CacheDataSource.FLAG_BLOCK_ON_CACHE | CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null,
                 cacheKeyProvider);
     }
 
+    synchronized SimpleCache getSimpleCache() {
+        if (simpleCache == null) {
+            // size requested by the latest player applies to cache shared with other players
+            simpleCache = SimpleCacheRegistry.getInstance(context, maxCacheSize).simpleCache;
+        }
+        return simpleCache;
+    }
+
 }
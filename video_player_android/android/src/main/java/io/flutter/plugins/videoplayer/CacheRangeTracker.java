@@ -0,0 +1,207 @@
+package io.flutter.plugins.videoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+
+import com.danikula.videocache.CacheListener;
+import com.danikula.videocache.HttpProxyCacheServer;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tracks byte ranges of one media item that are cached on disk, either by proxy server or by {@link Cache}.
+ * <p>
+ * Cache reports progress from loader threads, possibly many times a second. Changes are only recorded there,
+ * merged ranges are delivered to {@link Listener} on main thread at most once per {@link #BATCH_DELAY_MS}.
+ * <p>
+ * Attaching opens cache and reads its state under cache lock, so it runs on background executor and the first
+ * ranges are posted to main thread like later ones. Main thread only merges recorded ranges.
+ */
+final class CacheRangeTracker {
+
+    static final long BATCH_DELAY_MS = 250;
+
+    // shared by all trackers, detaching runs after attaching on the same thread
+    private static final ExecutorService attachExecutor = Executors.newSingleThreadExecutor();
+
+    interface Listener {
+        /**
+         * Called on main thread when cached ranges are changed.
+         *
+         * @param byteRanges sorted, non-overlapping {@code [start, end)} ranges of cached bytes.
+         * @param totalBytes length of media or {@link C#LENGTH_UNSET} if it is unknown yet.
+         */
+        void onCacheRangesChanged(@NonNull String url, @NonNull List<long[]> byteRanges, long totalBytes);
+    }
+
+    private final String url;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+    // start -> end of cached spans, spans may be adjacent, they are merged when delivered
+    private final TreeMap<Long, Long> spans = new TreeMap<>();
+    private long totalBytes = C.LENGTH_UNSET;
+    private boolean flushScheduled;
+    private boolean released;
+
+    // accessed only on attach executor
+    private HttpProxyCacheServer proxy;
+    private CacheListener proxyListener;
+    private Cache cache;
+    private String cacheKey;
+    private Cache.Listener cacheListener;
+
+    CacheRangeTracker(@NonNull String url, @NonNull Listener listener) {
+        this.url = url;
+        this.listener = listener;
+    }
+
+    /**
+     * Follows data cached by proxy for url, proxy always caches from the beginning of file.
+     */
+    void attach(@NonNull HttpProxyCacheServer proxy) {
+        attachExecutor.execute(() -> {
+            if (isReleased()) {
+                return;
+            }
+            this.proxy = proxy;
+            this.proxyListener = (cacheFile, cachedUrl, availableBytes, totalBytes) -> setCached(availableBytes, totalBytes);
+            long cachedLength = proxy.getCachedLength(url);
+            if (cachedLength >= 0) {
+                setCached(cachedLength, cachedLength);
+            }
+            proxy.registerCacheListener(proxyListener, url);
+        });
+    }
+
+    /**
+     * Follows spans of {@code cacheKey} in cache of factory, spans may be anywhere in file because player reads
+     * only what it needs.
+     */
+    void attach(@NonNull CacheDataSourceFactory cacheDataSourceFactory, @NonNull String cacheKey) {
+        attachExecutor.execute(() -> {
+            if (isReleased()) {
+                return;
+            }
+            this.cache = cacheDataSourceFactory.getSimpleCache();
+            this.cacheKey = cacheKey;
+            this.cacheListener = new Cache.Listener() {
+                @Override
+                public void onSpanAdded(@NonNull Cache cache, @NonNull CacheSpan span) {
+                    addSpan(cache, span);
+                }
+
+                @Override
+                public void onSpanRemoved(@NonNull Cache cache, @NonNull CacheSpan span) {
+                    removeSpan(span);
+                }
+
+                @Override
+                public void onSpanTouched(@NonNull Cache cache, @NonNull CacheSpan oldSpan, @NonNull CacheSpan newSpan) {
+                    removeSpan(oldSpan);
+                    addSpan(cache, newSpan);
+                }
+            };
+            for (CacheSpan span : cache.addListener(cacheKey, cacheListener)) {
+                addSpan(cache, span);
+            }
+        });
+    }
+
+    /**
+     * Delivers current ranges again, e.g. when they can be mapped to time because duration became known.
+     */
+    synchronized void requestUpdate() {
+        scheduleFlush();
+    }
+
+    void release() {
+        synchronized (this) {
+            released = true;
+            handler.removeCallbacks(flushRunnable);
+        }
+        // runs after attach, so listener registered by it is always removed
+        attachExecutor.execute(() -> {
+            if (proxy != null) {
+                proxy.unregisterCacheListener(proxyListener, url);
+            }
+            if (cache != null) {
+                cache.removeListener(cacheKey, cacheListener);
+            }
+        });
+    }
+
+    private synchronized boolean isReleased() {
+        return released;
+    }
+
+    private synchronized void setCached(long availableBytes, long totalBytes) {
+        spans.clear();
+        if (availableBytes > 0) {
+            spans.put(0L, availableBytes);
+        }
+        if (totalBytes > 0) {
+            this.totalBytes = totalBytes;
+        }
+        scheduleFlush();
+    }
+
+    private void addSpan(Cache cache, CacheSpan span) {
+        // cache is locked before tracker, as it is when cache calls listener
+        long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(span.key));
+        synchronized (this) {
+            if (contentLength != C.LENGTH_UNSET) {
+                totalBytes = contentLength;
+            }
+            if (span.isCached && span.length > 0) {
+                spans.put(span.position, span.position + span.length);
+                scheduleFlush();
+            }
+        }
+    }
+
+    private synchronized void removeSpan(CacheSpan span) {
+        if (spans.remove(span.position) != null) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !released) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, BATCH_DELAY_MS);
+        }
+    }
+
+    private void flush() {
+        List<long[]> byteRanges = new ArrayList<>();
+        long totalBytes;
+        synchronized (this) {
+            flushScheduled = false;
+            if (released) {
+                return;
+            }
+            long[] last = null;
+            for (Map.Entry<Long, Long> span : spans.entrySet()) {
+                if (last != null && span.getKey() <= last[1]) {
+                    last[1] = Math.max(last[1], span.getValue());
+                } else {
+                    last = new long[] {span.getKey(), span.getValue()};
+                    byteRanges.add(last);
+                }
+            }
+            totalBytes = this.totalBytes;
+        }
+        listener.onCacheRangesChanged(url, byteRanges, totalBytes);
+    }
+}
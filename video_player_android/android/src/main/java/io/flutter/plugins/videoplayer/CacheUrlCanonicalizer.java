@@ -0,0 +1,34 @@
+package io.flutter.plugins.videoplayer;
+
+import androidx.annotation.NonNull;
+
+import com.danikula.videocache.RuleBasedUrlCanonicalizer;
+import com.danikula.videocache.UrlCanonicalizer;
+
+/**
+ * Canonicalization rules shared by proxy caches and {@link CustomCacheKeyProvider}, so the same video with a new
+ * CDN signature is found in either cache. Rules are set from Dart and apply to urls opened afterwards.
+ */
+final class CacheUrlCanonicalizer implements UrlCanonicalizer {
+
+    // tokens of Akamai only: generic names like "token" or "expires" may select content on other servers
+    static final String[] DEFAULT_DROPPED_QUERY_PARAMETERS = {"hdnts", "hdnea", "__gda__"};
+
+    static final CacheUrlCanonicalizer INSTANCE = new CacheUrlCanonicalizer();
+
+    private volatile UrlCanonicalizer rules = new RuleBasedUrlCanonicalizer.Builder()
+            .dropQueryParameters(DEFAULT_DROPPED_QUERY_PARAMETERS)
+            .build();
+
+    private CacheUrlCanonicalizer() {
+    }
+
+    void setRules(@NonNull UrlCanonicalizer rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    public String canonicalize(String url) {
+        return rules.canonicalize(url);
+    }
+}
@@ -1,22 +1,59 @@
 package io.flutter.plugins.videoplayer;
 
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
 
+/**
+ * Builds cache keys in namespace of user's cache key.
+ * <p>
+ * Media url itself is stored under the user's key. Adaptive streams also load playlists, init sections and
+ * segments with the same data source, every such url gets {@code cacheKey + "#" + canonical url}, so entries
+ * of one stream are grouped by user's key but never overwrite each other. Without user's key canonical url
+ * is the key. Urls are canonicalized by {@link CacheUrlCanonicalizer}, so the same segment fetched with new
+ * token is still found. Byte ranges aren't part of the key: spans of {@code SimpleCache} already keep ranges
+ * of one resource apart.
+ */
 class CustomCacheKeyProvider implements CacheKeyFactory {
+    private static final String SEPARATOR = "#";
+
     private final String cacheKey;
+    private final String mediaIdentity;
 
-    CustomCacheKeyProvider(String cacheKey) {
+    CustomCacheKeyProvider(@Nullable String cacheKey, @Nullable String mediaUri) {
         this.cacheKey = cacheKey;
+        this.mediaIdentity = mediaUri != null ? getIdentity(Uri.parse(mediaUri)) : null;
     }
 
     @Override
     public String buildCacheKey(final DataSpec dataSpec) {
-        if (this.cacheKey == null) {
+        if (dataSpec.key != null) {
             return dataSpec.key;
-        } else {
+        }
+        String identity = getIdentity(dataSpec.uri);
+        if (this.cacheKey == null) {
+            return identity;
+        }
+        if (mediaIdentity == null || identity.equals(mediaIdentity)) {
             return cacheKey;
         }
+        return cacheKey + SEPARATOR + identity;
+    }
+
+    /**
+     * Returns key media url itself is cached under.
+     */
+    @NonNull
+    static String getMediaKey(@Nullable String cacheKey, @NonNull String mediaUri) {
+        return cacheKey != null ? cacheKey : getIdentity(Uri.parse(mediaUri));
+    }
 
+    @NonNull
+    private static String getIdentity(@NonNull Uri uri) {
+        return CacheUrlCanonicalizer.INSTANCE.canonicalize(uri.buildUpon().fragment(null).build().toString());
     }
 }
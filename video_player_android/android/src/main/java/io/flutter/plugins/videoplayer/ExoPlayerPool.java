@@ -0,0 +1,132 @@
+package io.flutter.plugins.videoplayer;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps players of disposed videos to be reused by next ones instead of building new player for every video.
+ * <p>
+ * Player is reset to idle state when it is put to pool: media, surface and listeners of previous video are removed,
+ * so only its playback thread, renderers, track selector and load control are reused. Players are keyed by buffer
+ * options they are built with, player is never reused with other load control. Number of idle players is capped by
+ * memory class of device, low-RAM devices don't keep idle players at all.
+ * <p>
+ * Players are bound to application's main looper, so pool is used only on platform thread.
+ */
+final class ExoPlayerPool {
+
+    interface PlayerFactory {
+        @NonNull
+        ExoPlayer build(@Nullable Map<String, Object> bufferOptions);
+    }
+
+    private static final int MAX_IDLE_PLAYERS = 3;
+    private static final int MEMORY_CLASS_PER_PLAYER_MB = 128;
+
+    private final PlayerFactory factory;
+    private final int capacity;
+    // idle players from the oldest one
+    private final List<IdlePlayer> idlePlayers = new ArrayList<>();
+
+    ExoPlayerPool(@NonNull Context context) {
+        this(getCapacity(context), bufferOptions -> VideoPlayer.buildExoPlayer(context, bufferOptions));
+    }
+
+    @VisibleForTesting
+    ExoPlayerPool(int capacity, @NonNull PlayerFactory factory) {
+        this.capacity = capacity;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns idle player built with the same buffer options or new one if there is no such player.
+     */
+    @NonNull
+    ExoPlayer acquire(@Nullable Map<String, Object> bufferOptions) {
+        String key = getKey(bufferOptions);
+        for (int i = idlePlayers.size() - 1; i >= 0; i--) {
+            if (idlePlayers.get(i).key.equals(key)) {
+                return idlePlayers.remove(i).player;
+            }
+        }
+        return factory.build(bufferOptions);
+    }
+
+    /**
+     * Resets player and keeps it for reuse, the oldest idle player is released if pool is full.
+     * Caller must remove its listeners before.
+     *
+     * @param bufferOptions buffer options player was acquired with.
+     * @param player        a player that is not used anymore.
+     */
+    void release(@Nullable Map<String, Object> bufferOptions, @NonNull ExoPlayer player) {
+        if (capacity <= 0) {
+            player.release();
+            return;
+        }
+        player.stop();
+        player.clearMediaItems();
+        player.clearVideoSurface();
+        player.setPlayWhenReady(false);
+        player.setRepeatMode(Player.REPEAT_MODE_OFF);
+        player.setVolume(1f);
+        player.setPlaybackParameters(PlaybackParameters.DEFAULT);
+        idlePlayers.add(new IdlePlayer(getKey(bufferOptions), player));
+        if (idlePlayers.size() > capacity) {
+            idlePlayers.remove(0).player.release();
+        }
+    }
+
+    /**
+     * Releases all idle players, e.g. when system is short of memory.
+     */
+    void clear() {
+        for (IdlePlayer idlePlayer : idlePlayers) {
+            idlePlayer.player.release();
+        }
+        idlePlayers.clear();
+    }
+
+    @VisibleForTesting
+    int getIdleCount() {
+        return idlePlayers.size();
+    }
+
+    private static String getKey(@Nullable Map<String, Object> bufferOptions) {
+        return bufferOptions == null || bufferOptions.isEmpty() ? "" : new TreeMap<>(bufferOptions).toString();
+    }
+
+    private static int getCapacity(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return 0;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && activityManager.isLowRamDevice()) {
+            return 0;
+        }
+        return Math.min(MAX_IDLE_PLAYERS, activityManager.getMemoryClass() / MEMORY_CLASS_PER_PLAYER_MB);
+    }
+
+    private static final class IdlePlayer {
+        final String key;
+        final ExoPlayer player;
+
+        IdlePlayer(String key, ExoPlayer player) {
+            this.key = key;
+            this.player = player;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import io.flutter.plugin.common.StandardMessageCodec;
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /** Generated class from Pigeon. */
@@ -736,6 +737,417 @@ public class Messages {
     }
   }
 
+  /** Generated class from Pigeon that represents data sent in messages. */
+  public static final class PreloadMessage {
+    private @NonNull String uri;
+
+    public @NonNull String getUri() {
+      return uri;
+    }
+
+    public void setUri(@NonNull String setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"uri\" is null.");
+      }
+      this.uri = setterArg;
+    }
+
+    private @NonNull Map<String, String> httpHeaders;
+
+    public @NonNull Map<String, String> getHttpHeaders() {
+      return httpHeaders;
+    }
+
+    public void setHttpHeaders(@NonNull Map<String, String> setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"httpHeaders\" is null.");
+      }
+      this.httpHeaders = setterArg;
+    }
+
+    private @Nullable String cacheKey;
+
+    public @Nullable String getCacheKey() {
+      return cacheKey;
+    }
+
+    public void setCacheKey(@Nullable String setterArg) {
+      this.cacheKey = setterArg;
+    }
+
+    private @Nullable String cacheDirectory;
+
+    public @Nullable String getCacheDirectory() {
+      return cacheDirectory;
+    }
+
+    public void setCacheDirectory(@Nullable String setterArg) {
+      this.cacheDirectory = setterArg;
+    }
+
+    private @Nullable Long maxSingleFileCacheSize;
+
+    public @Nullable Long getMaxSingleFileCacheSize() {
+      return maxSingleFileCacheSize;
+    }
+
+    public void setMaxSingleFileCacheSize(@Nullable Long setterArg) {
+      this.maxSingleFileCacheSize = setterArg;
+    }
+
+    private @Nullable Long maxTotalCacheSize;
+
+    public @Nullable Long getMaxTotalCacheSize() {
+      return maxTotalCacheSize;
+    }
+
+    public void setMaxTotalCacheSize(@Nullable Long setterArg) {
+      this.maxTotalCacheSize = setterArg;
+    }
+
+    private @Nullable Long preloadBytes;
+
+    public @Nullable Long getPreloadBytes() {
+      return preloadBytes;
+    }
+
+    public void setPreloadBytes(@Nullable Long setterArg) {
+      this.preloadBytes = setterArg;
+    }
+
+    private @Nullable Long preloadDurationMs;
+
+    public @Nullable Long getPreloadDurationMs() {
+      return preloadDurationMs;
+    }
+
+    public void setPreloadDurationMs(@Nullable Long setterArg) {
+      this.preloadDurationMs = setterArg;
+    }
+
+    private @Nullable Long priority;
+
+    public @Nullable Long getPriority() {
+      return priority;
+    }
+
+    public void setPriority(@Nullable Long setterArg) {
+      this.priority = setterArg;
+    }
+
+    /** Constructor is non-public to enforce null safety; use Builder. */
+    PreloadMessage() {
+    }
+
+    public static final class Builder {
+
+      private @Nullable String uri;
+
+      public @NonNull Builder setUri(@NonNull String setterArg) {
+        this.uri = setterArg;
+        return this;
+      }
+
+      private @Nullable Map<String, String> httpHeaders;
+
+      public @NonNull Builder setHttpHeaders(@NonNull Map<String, String> setterArg) {
+        this.httpHeaders = setterArg;
+        return this;
+      }
+
+      private @Nullable String cacheKey;
+
+      public @NonNull Builder setCacheKey(@Nullable String setterArg) {
+        this.cacheKey = setterArg;
+        return this;
+      }
+
+      private @Nullable String cacheDirectory;
+
+      public @NonNull Builder setCacheDirectory(@Nullable String setterArg) {
+        this.cacheDirectory = setterArg;
+        return this;
+      }
+
+      private @Nullable Long maxSingleFileCacheSize;
+
+      public @NonNull Builder setMaxSingleFileCacheSize(@Nullable Long setterArg) {
+        this.maxSingleFileCacheSize = setterArg;
+        return this;
+      }
+
+      private @Nullable Long maxTotalCacheSize;
+
+      public @NonNull Builder setMaxTotalCacheSize(@Nullable Long setterArg) {
+        this.maxTotalCacheSize = setterArg;
+        return this;
+      }
+
+      private @Nullable Long preloadBytes;
+
+      public @NonNull Builder setPreloadBytes(@Nullable Long setterArg) {
+        this.preloadBytes = setterArg;
+        return this;
+      }
+
+      private @Nullable Long preloadDurationMs;
+
+      public @NonNull Builder setPreloadDurationMs(@Nullable Long setterArg) {
+        this.preloadDurationMs = setterArg;
+        return this;
+      }
+
+      private @Nullable Long priority;
+
+      public @NonNull Builder setPriority(@Nullable Long setterArg) {
+        this.priority = setterArg;
+        return this;
+      }
+
+      public @NonNull PreloadMessage build() {
+        PreloadMessage pigeonReturn = new PreloadMessage();
+        pigeonReturn.setUri(uri);
+        pigeonReturn.setHttpHeaders(httpHeaders);
+        pigeonReturn.setCacheKey(cacheKey);
+        pigeonReturn.setCacheDirectory(cacheDirectory);
+        pigeonReturn.setMaxSingleFileCacheSize(maxSingleFileCacheSize);
+        pigeonReturn.setMaxTotalCacheSize(maxTotalCacheSize);
+        pigeonReturn.setPreloadBytes(preloadBytes);
+        pigeonReturn.setPreloadDurationMs(preloadDurationMs);
+        pigeonReturn.setPriority(priority);
+        return pigeonReturn;
+      }
+    }
+
+    @NonNull
+    ArrayList<Object> toList() {
+      ArrayList<Object> toListResult = new ArrayList<Object>(9);
+      toListResult.add(uri);
+      toListResult.add(httpHeaders);
+      toListResult.add(cacheKey);
+      toListResult.add(cacheDirectory);
+      toListResult.add(maxSingleFileCacheSize);
+      toListResult.add(maxTotalCacheSize);
+      toListResult.add(preloadBytes);
+      toListResult.add(preloadDurationMs);
+      toListResult.add(priority);
+      return toListResult;
+    }
+
+    static @NonNull PreloadMessage fromList(@NonNull ArrayList<Object> list) {
+      PreloadMessage pigeonResult = new PreloadMessage();
+      Object uri = list.get(0);
+      pigeonResult.setUri((String) uri);
+      Object httpHeaders = list.get(1);
+      pigeonResult.setHttpHeaders((Map<String, String>) httpHeaders);
+      Object cacheKey = list.get(2);
+      pigeonResult.setCacheKey((String) cacheKey);
+      Object cacheDirectory = list.get(3);
+      pigeonResult.setCacheDirectory((String) cacheDirectory);
+      Object maxSingleFileCacheSize = list.get(4);
+      pigeonResult.setMaxSingleFileCacheSize(
+          (maxSingleFileCacheSize == null)
+              ? null
+              : ((maxSingleFileCacheSize instanceof Integer) ? (Integer) maxSingleFileCacheSize : (Long) maxSingleFileCacheSize));
+      Object maxTotalCacheSize = list.get(5);
+      pigeonResult.setMaxTotalCacheSize(
+          (maxTotalCacheSize == null)
+              ? null
+              : ((maxTotalCacheSize instanceof Integer) ? (Integer) maxTotalCacheSize : (Long) maxTotalCacheSize));
+      Object preloadBytes = list.get(6);
+      pigeonResult.setPreloadBytes(
+          (preloadBytes == null)
+              ? null
+              : ((preloadBytes instanceof Integer) ? (Integer) preloadBytes : (Long) preloadBytes));
+      Object preloadDurationMs = list.get(7);
+      pigeonResult.setPreloadDurationMs(
+          (preloadDurationMs == null)
+              ? null
+              : ((preloadDurationMs instanceof Integer) ? (Integer) preloadDurationMs : (Long) preloadDurationMs));
+      Object priority = list.get(8);
+      pigeonResult.setPriority(
+          (priority == null)
+              ? null
+              : ((priority instanceof Integer) ? (Integer) priority : (Long) priority));
+      return pigeonResult;
+    }
+  }
+
+  /** Generated class from Pigeon that represents data sent in messages. */
+  public static final class PreloadHandleMessage {
+    private @NonNull Long handleId;
+
+    public @NonNull Long getHandleId() {
+      return handleId;
+    }
+
+    public void setHandleId(@NonNull Long setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"handleId\" is null.");
+      }
+      this.handleId = setterArg;
+    }
+
+    /** Constructor is non-public to enforce null safety; use Builder. */
+    PreloadHandleMessage() {
+    }
+
+    public static final class Builder {
+
+      private @Nullable Long handleId;
+
+      public @NonNull Builder setHandleId(@NonNull Long setterArg) {
+        this.handleId = setterArg;
+        return this;
+      }
+
+      public @NonNull PreloadHandleMessage build() {
+        PreloadHandleMessage pigeonReturn = new PreloadHandleMessage();
+        pigeonReturn.setHandleId(handleId);
+        return pigeonReturn;
+      }
+    }
+
+    @NonNull
+    ArrayList<Object> toList() {
+      ArrayList<Object> toListResult = new ArrayList<Object>(1);
+      toListResult.add(handleId);
+      return toListResult;
+    }
+
+    static @NonNull PreloadHandleMessage fromList(@NonNull ArrayList<Object> list) {
+      PreloadHandleMessage pigeonResult = new PreloadHandleMessage();
+      Object handleId = list.get(0);
+      pigeonResult.setHandleId(
+          (handleId == null)
+              ? null
+              : ((handleId instanceof Integer) ? (Integer) handleId : (Long) handleId));
+      return pigeonResult;
+    }
+  }
+
+  /** Generated class from Pigeon that represents data sent in messages. */
+  public static final class UrlCanonicalizationMessage {
+    private @NonNull List<String> dropQueryParameters;
+
+    public @NonNull List<String> getDropQueryParameters() {
+      return dropQueryParameters;
+    }
+
+    public void setDropQueryParameters(@NonNull List<String> setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"dropQueryParameters\" is null.");
+      }
+      this.dropQueryParameters = setterArg;
+    }
+
+    private @NonNull List<String> stripPathPrefixes;
+
+    public @NonNull List<String> getStripPathPrefixes() {
+      return stripPathPrefixes;
+    }
+
+    public void setStripPathPrefixes(@NonNull List<String> setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"stripPathPrefixes\" is null.");
+      }
+      this.stripPathPrefixes = setterArg;
+    }
+
+    private @NonNull List<String> rewritePatterns;
+
+    public @NonNull List<String> getRewritePatterns() {
+      return rewritePatterns;
+    }
+
+    public void setRewritePatterns(@NonNull List<String> setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"rewritePatterns\" is null.");
+      }
+      this.rewritePatterns = setterArg;
+    }
+
+    private @NonNull List<String> rewriteReplacements;
+
+    public @NonNull List<String> getRewriteReplacements() {
+      return rewriteReplacements;
+    }
+
+    public void setRewriteReplacements(@NonNull List<String> setterArg) {
+      if (setterArg == null) {
+        throw new IllegalStateException("Nonnull field \"rewriteReplacements\" is null.");
+      }
+      this.rewriteReplacements = setterArg;
+    }
+
+    /** Constructor is non-public to enforce null safety; use Builder. */
+    UrlCanonicalizationMessage() {
+    }
+
+    public static final class Builder {
+
+      private @Nullable List<String> dropQueryParameters;
+
+      public @NonNull Builder setDropQueryParameters(@NonNull List<String> setterArg) {
+        this.dropQueryParameters = setterArg;
+        return this;
+      }
+
+      private @Nullable List<String> stripPathPrefixes;
+
+      public @NonNull Builder setStripPathPrefixes(@NonNull List<String> setterArg) {
+        this.stripPathPrefixes = setterArg;
+        return this;
+      }
+
+      private @Nullable List<String> rewritePatterns;
+
+      public @NonNull Builder setRewritePatterns(@NonNull List<String> setterArg) {
+        this.rewritePatterns = setterArg;
+        return this;
+      }
+
+      private @Nullable List<String> rewriteReplacements;
+
+      public @NonNull Builder setRewriteReplacements(@NonNull List<String> setterArg) {
+        this.rewriteReplacements = setterArg;
+        return this;
+      }
+
+      public @NonNull UrlCanonicalizationMessage build() {
+        UrlCanonicalizationMessage pigeonReturn = new UrlCanonicalizationMessage();
+        pigeonReturn.setDropQueryParameters(dropQueryParameters);
+        pigeonReturn.setStripPathPrefixes(stripPathPrefixes);
+        pigeonReturn.setRewritePatterns(rewritePatterns);
+        pigeonReturn.setRewriteReplacements(rewriteReplacements);
+        return pigeonReturn;
+      }
+    }
+
+    @NonNull
+    ArrayList<Object> toList() {
+      ArrayList<Object> toListResult = new ArrayList<Object>(4);
+      toListResult.add(dropQueryParameters);
+      toListResult.add(stripPathPrefixes);
+      toListResult.add(rewritePatterns);
+      toListResult.add(rewriteReplacements);
+      return toListResult;
+    }
+
+    static @NonNull UrlCanonicalizationMessage fromList(@NonNull ArrayList<Object> list) {
+      UrlCanonicalizationMessage pigeonResult = new UrlCanonicalizationMessage();
+      Object dropQueryParameters = list.get(0);
+      pigeonResult.setDropQueryParameters((List<String>) dropQueryParameters);
+      Object stripPathPrefixes = list.get(1);
+      pigeonResult.setStripPathPrefixes((List<String>) stripPathPrefixes);
+      Object rewritePatterns = list.get(2);
+      pigeonResult.setRewritePatterns((List<String>) rewritePatterns);
+      Object rewriteReplacements = list.get(3);
+      pigeonResult.setRewriteReplacements((List<String>) rewriteReplacements);
+      return pigeonResult;
+    }
+  }
+
   private static class AndroidVideoPlayerApiCodec extends StandardMessageCodec {
     public static final AndroidVideoPlayerApiCodec INSTANCE = new AndroidVideoPlayerApiCodec();
 
@@ -756,8 +1168,14 @@ public class Messages {
         case (byte) 132:
           return PositionMessage.fromList((ArrayList<Object>) readValue(buffer));
         case (byte) 133:
-          return TextureMessage.fromList((ArrayList<Object>) readValue(buffer));
+          return PreloadHandleMessage.fromList((ArrayList<Object>) readValue(buffer));
         case (byte) 134:
+          return PreloadMessage.fromList((ArrayList<Object>) readValue(buffer));
+        case (byte) 135:
+          return TextureMessage.fromList((ArrayList<Object>) readValue(buffer));
+        case (byte) 136:
+          return UrlCanonicalizationMessage.fromList((ArrayList<Object>) readValue(buffer));
+        case (byte) 137:
           return VolumeMessage.fromList((ArrayList<Object>) readValue(buffer));
         default:
           return super.readValueOfType(type, buffer);
@@ -781,11 +1199,20 @@ public class Messages {
       } else if (value instanceof PositionMessage) {
         stream.write(132);
         writeValue(stream, ((PositionMessage) value).toList());
-      } else if (value instanceof TextureMessage) {
+      } else if (value instanceof PreloadHandleMessage) {
         stream.write(133);
+        writeValue(stream, ((PreloadHandleMessage) value).toList());
+      } else if (value instanceof PreloadMessage) {
+        stream.write(134);
+        writeValue(stream, ((PreloadMessage) value).toList());
+      } else if (value instanceof TextureMessage) {
+        stream.write(135);
         writeValue(stream, ((TextureMessage) value).toList());
+      } else if (value instanceof UrlCanonicalizationMessage) {
+        stream.write(136);
+        writeValue(stream, ((UrlCanonicalizationMessage) value).toList());
       } else if (value instanceof VolumeMessage) {
-        stream.write(134);
+        stream.write(137);
         writeValue(stream, ((VolumeMessage) value).toList());
       } else {
         super.writeValue(stream, value);
@@ -823,6 +1250,13 @@ public class Messages {
 
     void setMixWithOthers(@NonNull MixWithOthersMessage msg);
 
+    @NonNull
+    PreloadHandleMessage preload(@NonNull PreloadMessage msg);
+
+    void cancelPreload(@NonNull PreloadHandleMessage msg);
+
+    void setUrlCanonicalization(@NonNull UrlCanonicalizationMessage msg);
+
     /** The codec used by AndroidVideoPlayerApi. */
     static @NonNull MessageCodec<Object> getCodec() {
       return AndroidVideoPlayerApiCodec.INSTANCE;
@@ -1078,6 +1512,72 @@ public class Messages {
           channel.setMessageHandler(null);
         }
       }
+      {
+        BasicMessageChannel<Object> channel = new BasicMessageChannel<>(
+            binaryMessenger, "dev.flutter.pigeon.AndroidVideoPlayerApi.preload", getCodec());
+        if (api != null) {
+          channel.setMessageHandler(
+              (message, reply) -> {
+                ArrayList<Object> wrapped = new ArrayList<Object>();
+                ArrayList<Object> args = (ArrayList<Object>) message;
+                PreloadMessage msgArg = (PreloadMessage) args.get(0);
+                try {
+                  PreloadHandleMessage output = api.preload(msgArg);
+                  wrapped.add(0, output);
+                } catch (Throwable exception) {
+                  ArrayList<Object> wrappedError = wrapError(exception);
+                  wrapped = wrappedError;
+                }
+                reply.reply(wrapped);
+              });
+        } else {
+          channel.setMessageHandler(null);
+        }
+      }
+      {
+        BasicMessageChannel<Object> channel = new BasicMessageChannel<>(
+            binaryMessenger, "dev.flutter.pigeon.AndroidVideoPlayerApi.cancelPreload", getCodec());
+        if (api != null) {
+          channel.setMessageHandler(
+              (message, reply) -> {
+                ArrayList<Object> wrapped = new ArrayList<Object>();
+                ArrayList<Object> args = (ArrayList<Object>) message;
+                PreloadHandleMessage msgArg = (PreloadHandleMessage) args.get(0);
+                try {
+                  api.cancelPreload(msgArg);
+                  wrapped.add(0, null);
+                } catch (Throwable exception) {
+                  ArrayList<Object> wrappedError = wrapError(exception);
+                  wrapped = wrappedError;
+                }
+                reply.reply(wrapped);
+              });
+        } else {
+          channel.setMessageHandler(null);
+        }
+      }
+      {
+        BasicMessageChannel<Object> channel = new BasicMessageChannel<>(
+            binaryMessenger, "dev.flutter.pigeon.AndroidVideoPlayerApi.setUrlCanonicalization", getCodec());
+        if (api != null) {
+          channel.setMessageHandler(
+              (message, reply) -> {
+                ArrayList<Object> wrapped = new ArrayList<Object>();
+                ArrayList<Object> args = (ArrayList<Object>) message;
+                UrlCanonicalizationMessage msgArg = (UrlCanonicalizationMessage) args.get(0);
+                try {
+                  api.setUrlCanonicalization(msgArg);
+                  wrapped.add(0, null);
+                } catch (Throwable exception) {
+                  ArrayList<Object> wrappedError = wrapError(exception);
+                  wrapped = wrappedError;
+                }
+                reply.reply(wrapped);
+              });
+        } else {
+          channel.setMessageHandler(null);
+        }
+      }
     }
   }
 }
@@ -0,0 +1,256 @@
+package io.flutter.plugins.videoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import android.util.Log;
+
+import com.danikula.videocache.PrefetchScheduler;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills cache with the beginning of media without creating a player.
+ * <p>
+ * Data goes to the same cache player would use: proxy's file cache if cache directory is set, {@link CacheWriter}
+ * writes to {@code SimpleCache} otherwise. Every preload gets a handle, so it can be cancelled when user scrolls away.
+ * Proxy preloads are queued by {@link PrefetchScheduler} with their priority, preloading the same url again
+ * reprioritizes it.
+ */
+final class Preloader {
+
+    private static final String TAG = "Preloader";
+    private static final long DEFAULT_PRELOAD_BYTES = 1024 * 1024;
+    // media isn't parsed, so duration is converted to bytes by typical bitrate of feed video
+    private static final long ESTIMATED_BITRATE = 2_000_000;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final Context context;
+    private final AtomicLong nextHandleId = new AtomicLong();
+    private final Map<Long, PreloadTask> tasks = new ConcurrentHashMap<>();
+
+    Preloader(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts preloading in background.
+     *
+     * @return handle of preload to be passed to {@link #cancel(long)}.
+     */
+    long preload(@NonNull String uri, @NonNull Map<String, String> httpHeaders, @Nullable String cacheKey,
+            @Nullable String cacheDirectory, @Nullable Long maxSingleFileCacheSize, @Nullable Long maxTotalCacheSize,
+            @Nullable Long preloadBytes, @Nullable Long preloadDurationMs, @Nullable Long priority) {
+        long bytes = getPreloadBytes(preloadBytes, preloadDurationMs);
+        PreloadTask task = cacheDirectory != null
+                ? new ProxyPreloadTask(uri, httpHeaders, cacheKey, cacheDirectory, maxTotalCacheSize, bytes,
+                        getPriority(priority))
+                : new CacheWriterPreloadTask(uri, httpHeaders, cacheKey, maxSingleFileCacheSize, maxTotalCacheSize, bytes);
+        purgeFinishedTasks();
+        long handleId = nextHandleId.incrementAndGet();
+        tasks.put(handleId, task);
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                if (!task.cancelled) {
+                    Log.w(TAG, "Error preloading " + uri, e);
+                }
+            } finally {
+                task.finished = true;
+                if (!task.isPending()) {
+                    tasks.remove(handleId);
+                }
+            }
+        });
+        return handleId;
+    }
+
+    /**
+     * Stops preload, data cached so far stays in cache. Does nothing if preload is finished already.
+     */
+    void cancel(long handleId) {
+        PreloadTask task = tasks.remove(handleId);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    void cancelAll() {
+        for (Long handleId : tasks.keySet()) {
+            cancel(handleId);
+        }
+    }
+
+    private void purgeFinishedTasks() {
+        for (Map.Entry<Long, PreloadTask> entry : tasks.entrySet()) {
+            PreloadTask task = entry.getValue();
+            if (task.finished && !task.isPending()) {
+                tasks.remove(entry.getKey());
+            }
+        }
+    }
+
+    private static long getPreloadBytes(@Nullable Long preloadBytes, @Nullable Long preloadDurationMs) {
+        if (preloadBytes != null) {
+            return preloadBytes;
+        }
+        if (preloadDurationMs != null) {
+            return preloadDurationMs * ESTIMATED_BITRATE / 8 / 1000;
+        }
+        return DEFAULT_PRELOAD_BYTES;
+    }
+
+    private static PrefetchScheduler.Priority getPriority(@Nullable Long priority) {
+        PrefetchScheduler.Priority[] priorities = PrefetchScheduler.Priority.values();
+        if (priority == null || priority < 0 || priority >= priorities.length) {
+            return PrefetchScheduler.Priority.NEXT;
+        }
+        return priorities[priority.intValue()];
+    }
+
+    private abstract static class PreloadTask {
+        volatile boolean cancelled;
+        volatile boolean finished;
+
+        abstract void run() throws IOException;
+
+        /** Checks whether work handed to somebody else is still going on after {@link #run()} is returned. */
+        boolean isPending() {
+            return false;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Hands the beginning of media to proxy's prefetch scheduler, proxy downloads it as it does for player.
+     */
+    private final class ProxyPreloadTask extends PreloadTask {
+        private final String uri;
+        private final Map<String, String> httpHeaders;
+        private final String cacheKey;
+        private final String cacheDirectory;
+        private final Long maxTotalCacheSize;
+        private final long bytes;
+        private final PrefetchScheduler.Priority priority;
+        // scheduling and cancelling are done under task's lock, so cancelled task is never scheduled
+        private PrefetchScheduler scheduler;
+        private Runnable onPrefetchFinished;
+        private volatile boolean prefetchFinished;
+
+        ProxyPreloadTask(String uri, Map<String, String> httpHeaders, String cacheKey, String cacheDirectory,
+                Long maxTotalCacheSize, long bytes, PrefetchScheduler.Priority priority) {
+            this.uri = uri;
+            this.httpHeaders = httpHeaders;
+            this.cacheKey = cacheKey;
+            this.cacheDirectory = cacheDirectory;
+            this.maxTotalCacheSize = maxTotalCacheSize;
+            this.bytes = bytes;
+            this.priority = priority;
+        }
+
+        @Override
+        void run() {
+            // starting proxy may touch disk, so it is done here and not on caller's thread
+            ProxyFactory.Registration registration = ProxyFactory.register(context, cacheDirectory, uri, httpHeaders,
+                    cacheKey, maxTotalCacheSize);
+            // headers and cache key are needed until prefetch is finished
+            Runnable onPrefetchFinished = () -> {
+                prefetchFinished = true;
+                registration.release();
+            };
+            synchronized (this) {
+                if (!cancelled) {
+                    scheduler = registration.prefetchScheduler;
+                    this.onPrefetchFinished = onPrefetchFinished;
+                    // callback tags request, so cancelling it keeps preloads of the same url by other handles
+                    scheduler.prefetch(uri, bytes, priority, onPrefetchFinished);
+                    return;
+                }
+            }
+            registration.release();
+        }
+
+        @Override
+        synchronized boolean isPending() {
+            return !cancelled && scheduler != null && !prefetchFinished;
+        }
+
+        @Override
+        synchronized void cancel() {
+            super.cancel();
+            if (scheduler != null) {
+                scheduler.cancel(uri, onPrefetchFinished);
+            }
+        }
+    }
+
+    /**
+     * Writes the beginning of media to {@code SimpleCache} with the same cache key player uses.
+     */
+    private final class CacheWriterPreloadTask extends PreloadTask {
+        private final String uri;
+        private final Map<String, String> httpHeaders;
+        private final String cacheKey;
+        private final Long maxSingleFileCacheSize;
+        private final Long maxTotalCacheSize;
+        private final long bytes;
+        private volatile CacheWriter cacheWriter;
+
+        CacheWriterPreloadTask(String uri, Map<String, String> httpHeaders, String cacheKey, Long maxSingleFileCacheSize,
+                Long maxTotalCacheSize, long bytes) {
+            this.uri = uri;
+            this.httpHeaders = httpHeaders;
+            this.cacheKey = cacheKey;
+            this.maxSingleFileCacheSize = maxSingleFileCacheSize;
+            this.maxTotalCacheSize = maxTotalCacheSize;
+            this.bytes = bytes;
+        }
+
+        @Override
+        void run() throws IOException {
+            // cache is opened here, it reads index from disk when it is used first time
+            CacheDataSourceFactory factory = new CacheDataSourceFactory(context, maxTotalCacheSize,
+                    maxSingleFileCacheSize, cacheKey, uri);
+            if (!httpHeaders.isEmpty()) {
+                factory.setHeaders(httpHeaders);
+            }
+            CacheDataSource dataSource = factory.createDataSource();
+            // preloads measure network like players do, so the next player starts with their estimate
+            dataSource.addTransferListener(SharedBandwidthMeter.getInstance(context));
+            DataSpec dataSpec = new DataSpec.Builder().setUri(Uri.parse(uri)).setLength(bytes).build();
+            cacheWriter = new CacheWriter(dataSource, dataSpec, null, null);
+            if (cancelled) {
+                return;
+            }
+            try {
+                cacheWriter.cache();
+            } catch (InterruptedIOException e) {
+                // cancelled
+            }
+        }
+
+        @Override
+        void cancel() {
+            super.cancel();
+            CacheWriter cacheWriter = this.cacheWriter;
+            if (cacheWriter != null) {
+                cacheWriter.cancel();
+            }
+        }
+    }
+}
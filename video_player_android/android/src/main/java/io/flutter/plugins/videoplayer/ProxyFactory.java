@@ -2,63 +2,275 @@
 package io.flutter.plugins.videoplayer;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Log;
 
 import com.danikula.videocache.HttpProxyCacheServer;
+import com.danikula.videocache.PrefetchScheduler;
 import com.danikula.videocache.file.DiskUsage;
 import com.danikula.videocache.file.FileNameGenerator;
+import com.danikula.videocache.file.MemoryBlockCache;
+import com.danikula.videocache.file.TotalSizeLruDiskUsage;
 import com.danikula.videocache.headers.HeaderInjector;
 
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Registry of proxy servers shared by all players, one server per cache directory.
+ * <p>
+ * Servers are started off the platform thread on warm-up executor: recently used directories are warmed up when
+ * plugin is attached to engine, and player of a directory that isn't warmed up waits for its server without holding
+ * the registry. Headers and cache key are registered for every url, so players with different options share a server.
+ */
 public class ProxyFactory {
 
-    public static HttpProxyCacheServer getProxy(Context context, @Nullable String cacheDirectory,
+    private static final String TAG = "ProxyFactory";
+    private static final String PREFERENCES_NAME = "video_player_proxy";
+    private static final String RECENT_CACHE_DIRECTORIES = "recentCacheDirectories";
+    private static final String MAX_TOTAL_CACHE_SIZE_PREFIX = "maxTotalCacheSize:";
+    private static final int MAX_RECENT_CACHE_DIRECTORIES = 4;
+    private static final long DEFAULT_MAX_TOTAL_CACHE_SIZE = 1024 * 1024 * 1024;
+
+    // hot blocks of all proxies share one budget, data is kept outside of java heap
+    private static final MemoryBlockCache memoryCache = new MemoryBlockCache(16 * 1024 * 1024);
+    private static final ConcurrentMap<String, Future<ProxyEntry>> proxies = new ConcurrentHashMap<>();
+    private static final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Starts proxies for recently used cache directories in background, so first players don't wait for them.
+     */
+    public static void warmUp(final Context context) {
+        final Context applicationContext = context.getApplicationContext();
+        warmUpExecutor.execute(() -> {
+            SharedPreferences preferences = getPreferences(applicationContext);
+            for (String cacheDirectory : getRecentCacheDirectories(preferences)) {
+                long maxTotalCacheSize = preferences.getLong(MAX_TOTAL_CACHE_SIZE_PREFIX + cacheDirectory,
+                        DEFAULT_MAX_TOTAL_CACHE_SIZE);
+                getProxyEntry(applicationContext, new File(cacheDirectory), maxTotalCacheSize);
+            }
+        });
+    }
+
+    /**
+     * Registers headers and cache key of url for proxy of cache directory, they are kept until registration
+     * is released.
+     * <p>
+     * Waits for proxy of directory to be started if it isn't warmed up yet.
+     *
+     * @throws IllegalStateException if proxy can't be started.
+     */
+    public static Registration register(Context context, @Nullable String cacheDirectory, String url,
             Map<String, String> httpHeaders, @Nullable String cacheKey, @Nullable Long maxTotalCacheSize) {
+        final Context applicationContext = context.getApplicationContext();
         final File cacheDir = cacheDirectory != null ? new File(cacheDirectory) : context.getCacheDir();
-        final Long totalCacheSize = maxTotalCacheSize != null ? maxTotalCacheSize : 1 * 1024 * 1024 * 1024;
-        return new HttpProxyCacheServer.Builder(context)
-                .maxCacheSize(totalCacheSize)
-                .cacheDirectory(cacheDir)
-                .headerInjector(new _UserAgentHeadersInjector(httpHeaders))
-                .fileNameGenerator(new _MyFileNameGenerator(cacheKey))
-                .build();
+        final long totalCacheSize = maxTotalCacheSize != null ? maxTotalCacheSize : DEFAULT_MAX_TOTAL_CACHE_SIZE;
+        ProxyEntry entry = awaitProxyEntry(cacheDir, getProxyEntry(applicationContext, cacheDir, totalCacheSize));
+        // directory can't have two LRU policies, size requested by the latest player is applied to it
+        entry.diskUsage.setMaxSize(totalCacheSize);
+        // file name generator gets canonical url, so cache key is registered for it
+        Registration registration = new Registration(entry, url, new HashMap<>(httpHeaders),
+                CacheUrlCanonicalizer.INSTANCE.canonicalize(url), cacheKey);
+        // preferences are loaded from disk on first access, so they are never touched on caller's thread
+        warmUpExecutor.execute(() -> putRecentCacheDirectory(getPreferences(applicationContext),
+                cacheDir.getAbsolutePath(), totalCacheSize));
+        return registration;
+    }
+
+    /** Releases memory cache shared by all proxies, called when system asks to trim memory. */
+    public static void releaseMemoryCache() {
+        memoryCache.clear();
+    }
+
+    private static Future<ProxyEntry> getProxyEntry(final Context context, final File cacheDir,
+            final long totalCacheSize) {
+        String key = cacheDir.getAbsolutePath();
+        Future<ProxyEntry> entry = proxies.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        FutureTask<ProxyEntry> newEntry = new FutureTask<>(() -> {
+            ProxyEntry proxyEntry = new ProxyEntry(context, cacheDir, totalCacheSize);
+            Log.d(TAG, "Proxy for " + cacheDir + " is started");
+            return proxyEntry;
+        });
+        entry = proxies.putIfAbsent(key, newEntry);
+        if (entry != null) {
+            return entry;
+        }
+        // server is built by executor, so registry isn't locked while socket is bound
+        warmUpExecutor.execute(newEntry);
+        return newEntry;
+    }
+
+    private static ProxyEntry awaitProxyEntry(File cacheDir, Future<ProxyEntry> entry) {
+        try {
+            return entry.get();
+        } catch (ExecutionException e) {
+            // failed entry is dropped, so next player tries to start proxy again
+            proxies.remove(cacheDir.getAbsolutePath(), entry);
+            throw new IllegalStateException("Error starting proxy for " + cacheDir, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting proxy for " + cacheDir, e);
+        }
+    }
+
+    private static List<String> getRecentCacheDirectories(SharedPreferences preferences) {
+        String directories = preferences.getString(RECENT_CACHE_DIRECTORIES, null);
+        return directories == null || directories.isEmpty()
+                ? Collections.<String>emptyList() : Arrays.asList(directories.split("\n"));
+    }
+
+    private static void putRecentCacheDirectory(SharedPreferences preferences, String cacheDirectory,
+            long maxTotalCacheSize) {
+        List<String> directories = new ArrayList<>(getRecentCacheDirectories(preferences));
+        directories.remove(cacheDirectory);
+        directories.add(0, cacheDirectory);
+        SharedPreferences.Editor editor = preferences.edit();
+        while (directories.size() > MAX_RECENT_CACHE_DIRECTORIES) {
+            editor.remove(MAX_TOTAL_CACHE_SIZE_PREFIX + directories.remove(directories.size() - 1));
+        }
+        editor.putString(RECENT_CACHE_DIRECTORIES, TextUtils.join("\n", directories))
+                .putLong(MAX_TOTAL_CACHE_SIZE_PREFIX + cacheDirectory, maxTotalCacheSize)
+                .apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Proxy with headers and cache key registered for url by player or preload.
+     * <p>
+     * Registrations are counted, so releasing one of them never drops headers or cache key another player
+     * of the same url still uses.
+     */
+    public static final class Registration {
+        public final HttpProxyCacheServer proxy;
+        public final PrefetchScheduler prefetchScheduler;
+        private final ProxyEntry entry;
+        private final String url;
+        private final Map<String, String> httpHeaders;
+        private final String canonicalUrl;
+        @Nullable
+        private final String cacheKey;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Registration(ProxyEntry entry, String url, Map<String, String> httpHeaders, String canonicalUrl,
+                @Nullable String cacheKey) {
+            this.proxy = entry.proxy;
+            this.prefetchScheduler = entry.prefetchScheduler;
+            this.entry = entry;
+            this.url = url;
+            this.httpHeaders = httpHeaders;
+            this.canonicalUrl = canonicalUrl;
+            this.cacheKey = cacheKey;
+            entry.headersInjector.register(url, httpHeaders);
+            entry.fileNameGenerator.register(canonicalUrl, cacheKey);
+        }
+
+        /** Unregisters headers and cache key of url, does nothing if registration is released already. */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                entry.headersInjector.unregister(url, httpHeaders);
+                entry.fileNameGenerator.unregister(canonicalUrl, cacheKey);
+            }
+        }
+    }
+
+    private static final class ProxyEntry {
+        final _UserAgentHeadersInjector headersInjector = new _UserAgentHeadersInjector();
+        final _MyFileNameGenerator fileNameGenerator = new _MyFileNameGenerator();
+        final TotalSizeLruDiskUsage diskUsage;
+        final HttpProxyCacheServer proxy;
+        final PrefetchScheduler prefetchScheduler;
+
+        ProxyEntry(Context context, File cacheDir, long totalCacheSize) {
+            this.diskUsage = new TotalSizeLruDiskUsage(totalCacheSize);
+            this.proxy = new HttpProxyCacheServer.Builder(context)
+                    .diskUsage(diskUsage)
+                    .cacheDirectory(cacheDir)
+                    .headerInjector(headersInjector)
+                    .fileNameGenerator(fileNameGenerator)
+                    .urlCanonicalizer(CacheUrlCanonicalizer.INSTANCE)
+                    // the same video is often served by several CDN hostnames
+                    .deduplicateContent(true)
+                    .memoryCache(memoryCache)
+                    // ExoPlayer reopens connection on every seek, keep download running for it
+                    .sourceLingerTime(5, TimeUnit.SECONDS)
+                    .maxBackgroundCompletionSize(8 * 1024 * 1024)
+                    // preloads of next videos must not starve the one on screen
+                    .throttleBackgroundDownloads(128 * 1024, 2 * 1024 * 1024)
+                    .sourceTransferListener(SharedBandwidthMeter.getProxyTransferListener(context))
+                    .build();
+            this.prefetchScheduler = new PrefetchScheduler(proxy);
+        }
     }
 
 }
 
 class _UserAgentHeadersInjector implements HeaderInjector {
-    private final Map<String, String> headers = new HashMap<>();
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    private final UrlRegistry<Map<String, String>> headers = new UrlRegistry<>();
+
+    void register(String url, Map<String, String> headers) {
+        this.headers.register(url, headers);
+    }
 
-    _UserAgentHeadersInjector(Map<String, String> headers) {
-        this.headers.clear();
-        this.headers.putAll(headers);
+    void unregister(String url, Map<String, String> headers) {
+        this.headers.unregister(url, headers);
     }
 
     @Override
     public Map<String, String> addHeaders(String url) {
-        return headers;
+        Map<String, String> urlHeaders = headers.get(url);
+        return urlHeaders != null ? urlHeaders : NO_HEADERS;
     }
 }
 
 class _MyFileNameGenerator implements FileNameGenerator {
 
-    private final String cacheKey;
+    private final UrlRegistry<String> cacheKeys = new UrlRegistry<>();
 
-    _MyFileNameGenerator(@Nullable String cacheKey) {
-        this.cacheKey = cacheKey;
+    // player without cache key uses cache key of another player of the same url, if there is one
+    void register(String url, @Nullable String cacheKey) {
+        if (cacheKey != null) {
+            cacheKeys.register(url, cacheKey);
+        }
+    }
+
+    void unregister(String url, @Nullable String cacheKey) {
+        if (cacheKey != null) {
+            cacheKeys.unregister(url, cacheKey);
+        }
     }
 
     @Override
     public String generate(String url) {
+        String cacheKey = cacheKeys.get(url);
         if (cacheKey == null) {
             try {
                 byte[] bytesOfMessage;
@@ -76,3 +288,72 @@ class _MyFileNameGenerator implements FileNameGenerator {
 
     }
 }
+
+/**
+ * Values registered for urls, value of url is the latest registered one that is still in use.
+ * Equal values of url share one counted registration.
+ */
+final class UrlRegistry<V> {
+
+    private final Map<String, List<Entry<V>>> entries = new HashMap<>();
+
+    synchronized void register(String url, V value) {
+        List<Entry<V>> urlEntries = entries.get(url);
+        if (urlEntries == null) {
+            urlEntries = new ArrayList<>(1);
+            entries.put(url, urlEntries);
+        }
+        Entry<V> entry = remove(urlEntries, value);
+        if (entry == null) {
+            entry = new Entry<>(value);
+        }
+        entry.count++;
+        urlEntries.add(entry);
+    }
+
+    synchronized void unregister(String url, V value) {
+        List<Entry<V>> urlEntries = entries.get(url);
+        if (urlEntries == null) {
+            return;
+        }
+        for (Iterator<Entry<V>> iterator = urlEntries.iterator(); iterator.hasNext(); ) {
+            Entry<V> entry = iterator.next();
+            if (entry.value.equals(value)) {
+                if (--entry.count == 0) {
+                    iterator.remove();
+                }
+                break;
+            }
+        }
+        if (urlEntries.isEmpty()) {
+            entries.remove(url);
+        }
+    }
+
+    @Nullable
+    synchronized V get(String url) {
+        List<Entry<V>> urlEntries = entries.get(url);
+        return urlEntries != null ? urlEntries.get(urlEntries.size() - 1).value : null;
+    }
+
+    @Nullable
+    private Entry<V> remove(List<Entry<V>> urlEntries, V value) {
+        for (Iterator<Entry<V>> iterator = urlEntries.iterator(); iterator.hasNext(); ) {
+            Entry<V> entry = iterator.next();
+            if (entry.value.equals(value)) {
+                iterator.remove();
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        int count;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package io.flutter.plugins.videoplayer;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+
+import java.util.TreeSet;
+
+/**
+ * {@link LeastRecentlyUsedCacheEvictor} which max size can be changed while cache is used.
+ * <p>
+ * Evictor is called by cache under its lock, so size is changed under the same lock and spans exceeding
+ * new size are evicted at once.
+ */
+final class ResizableLruCacheEvictor implements CacheEvictor {
+
+    private final TreeSet<CacheSpan> leastRecentlyUsed = new TreeSet<>(ResizableLruCacheEvictor::compare);
+    private long maxBytes;
+    private long currentSize;
+
+    ResizableLruCacheEvictor(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets new max size of cache, the least recently used spans are evicted if cache is bigger.
+     *
+     * @param cache    a cache this evictor is used by.
+     * @param maxBytes new max size of cache in bytes.
+     */
+    void setMaxBytes(@NonNull Cache cache, long maxBytes) {
+        synchronized (cache) {
+            this.maxBytes = maxBytes;
+            evictCache(cache, 0);
+        }
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+        if (length != C.LENGTH_UNSET) {
+            evictCache(cache, length);
+        }
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+        leastRecentlyUsed.add(span);
+        currentSize += span.length;
+        evictCache(cache, 0);
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+        leastRecentlyUsed.remove(span);
+        currentSize -= span.length;
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        onSpanRemoved(cache, oldSpan);
+        onSpanAdded(cache, newSpan);
+    }
+
+    private void evictCache(Cache cache, long requiredSpace) {
+        while (currentSize + requiredSpace > maxBytes && !leastRecentlyUsed.isEmpty()) {
+            cache.removeSpan(leastRecentlyUsed.first());
+        }
+    }
+
+    private static int compare(CacheSpan lhs, CacheSpan rhs) {
+        if (lhs.lastTouchTimestamp == rhs.lastTouchTimestamp) {
+            return lhs.compareTo(rhs);
+        }
+        return lhs.lastTouchTimestamp < rhs.lastTouchTimestamp ? -1 : 1;
+    }
+}
@@ -0,0 +1,145 @@
+package io.flutter.plugins.videoplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.danikula.videocache.SourceTransferListener;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.PlaceholderDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.NetworkTypeObserver;
+
+import java.util.Map;
+
+/**
+ * Bandwidth meter shared by all players and preloads of process, so adaptive track selection of every new player
+ * starts from bandwidth measured by previous ones instead of cold estimate.
+ * <p>
+ * The latest estimate is persisted per network type and used as initial estimate of that network type on next
+ * launch, so the first variant of HLS/DASH stream is chosen close to real bandwidth.
+ * <p>
+ * Players reading from proxy don't measure their loopback connections, proxy reports its own network
+ * transfers instead.
+ */
+final class SharedBandwidthMeter {
+
+    private static final String PREFERENCES_NAME = "video_player_bandwidth";
+    private static final String ESTIMATE_PREFIX = "estimate_";
+    private static final long SAVE_INTERVAL_MS = 10 * 1000;
+
+    private static DefaultBandwidthMeter instance;
+
+    interface NetworkTypeProvider {
+        int getNetworkType();
+    }
+
+    private SharedBandwidthMeter() {
+    }
+
+    /**
+     * Starts loading persisted estimates in background, so building meter later doesn't wait for disk.
+     */
+    static void warmUp(@NonNull Context context) {
+        getPreferences(context.getApplicationContext());
+    }
+
+    @NonNull
+    static synchronized DefaultBandwidthMeter getInstance(@NonNull Context context) {
+        if (instance == null) {
+            Context applicationContext = context.getApplicationContext();
+            SharedPreferences preferences = getPreferences(applicationContext);
+            DefaultBandwidthMeter.Builder builder = new DefaultBandwidthMeter.Builder(applicationContext);
+            loadEstimates(preferences, builder);
+            instance = builder.build();
+            NetworkTypeObserver networkTypeObserver = NetworkTypeObserver.getInstance(applicationContext);
+            instance.addEventListener(new Handler(Looper.getMainLooper()),
+                    new EstimatePersister(preferences, networkTypeObserver::getNetworkType));
+        }
+        return instance;
+    }
+
+    /**
+     * Sets persisted estimates as initial estimates of their network types.
+     */
+    @VisibleForTesting
+    static void loadEstimates(@NonNull SharedPreferences preferences, @NonNull DefaultBandwidthMeter.Builder builder) {
+        for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+            if (entry.getKey().startsWith(ESTIMATE_PREFIX) && entry.getValue() instanceof Long) {
+                int networkType = Integer.parseInt(entry.getKey().substring(ESTIMATE_PREFIX.length()));
+                builder.setInitialBitrateEstimate(networkType, (Long) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns listener feeding network transfers of proxy to shared meter. Players don't measure reads from
+     * proxy, loopback connection is much faster than network.
+     */
+    @NonNull
+    static SourceTransferListener getProxyTransferListener(@NonNull Context context) {
+        return new ProxyTransferListener(getInstance(context));
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static final class ProxyTransferListener implements SourceTransferListener {
+        // meter checks only flags of data spec, so one spec stands for transfers of all urls
+        private static final DataSpec NETWORK_DATA_SPEC = new DataSpec(Uri.EMPTY);
+
+        private final TransferListener meter;
+
+        ProxyTransferListener(TransferListener meter) {
+            this.meter = meter;
+        }
+
+        @Override
+        public void onTransferStart(String url) {
+            meter.onTransferStart(PlaceholderDataSource.INSTANCE, NETWORK_DATA_SPEC, true);
+        }
+
+        @Override
+        public void onBytesTransferred(String url, int bytes) {
+            meter.onBytesTransferred(PlaceholderDataSource.INSTANCE, NETWORK_DATA_SPEC, true, bytes);
+        }
+
+        @Override
+        public void onTransferEnd(String url) {
+            meter.onTransferEnd(PlaceholderDataSource.INSTANCE, NETWORK_DATA_SPEC, true);
+        }
+    }
+
+    @VisibleForTesting
+    static final class EstimatePersister implements BandwidthMeter.EventListener {
+        private final SharedPreferences preferences;
+        private final NetworkTypeProvider networkTypeProvider;
+        private long lastSaveTime = -SAVE_INTERVAL_MS;
+
+        EstimatePersister(SharedPreferences preferences, NetworkTypeProvider networkTypeProvider) {
+            this.preferences = preferences;
+            this.networkTypeProvider = networkTypeProvider;
+        }
+
+        @Override
+        public void onBandwidthSample(int elapsedMs, long bytesTransferred, long bitrateEstimate) {
+            long now = SystemClock.elapsedRealtime();
+            int networkType = networkTypeProvider.getNetworkType();
+            if (now - lastSaveTime < SAVE_INTERVAL_MS
+                    || networkType == C.NETWORK_TYPE_UNKNOWN || networkType == C.NETWORK_TYPE_OFFLINE) {
+                return;
+            }
+            lastSaveTime = now;
+            preferences.edit().putLong(ESTIMATE_PREFIX + networkType, bitrateEstimate).apply();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.flutter.plugins.videoplayer;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of {@link SimpleCache}s, one cache per directory with its own size, so different kinds of content
+ * don't evict each other. {@code SimpleCache} locks its directory, so caches are never released.
+ * <p>
+ * Size of cache is the last size requested for its directory: cache is trimmed at once when it is made smaller.
+ * Caches of other directories keep their sizes.
+ */
+public class SimpleCacheRegistry {
+    private static final long DEFAULT_MAX_CACHE_SIZE = 1024 * 1024 * 1024;
+
+    private static final Map<String, SimpleCacheRegistry> caches = new HashMap<>();
+    private static StandaloneDatabaseProvider databaseProvider;
+
+    final ResizableLruCacheEvictor evictor;
+    final SimpleCache simpleCache;
+
+    private SimpleCacheRegistry(File directory, long maxCacheSize, StandaloneDatabaseProvider databaseProvider) {
+        evictor = new ResizableLruCacheEvictor(maxCacheSize);
+        simpleCache = new SimpleCache(directory, evictor, databaseProvider);
+    }
+
+    /**
+     * Returns cache of default directory, see {@link #getInstance(Context, File, Long)}.
+     */
+    @NonNull
+    public static SimpleCacheRegistry getInstance(@NonNull Context context, @Nullable Long maxCacheSize) {
+        return getInstance(context, new File(context.getCacheDir(), "media"), maxCacheSize);
+    }
+
+    /**
+     * Returns cache of directory, creating it on first call.
+     *
+     * @param directory    a directory used only by this cache.
+     * @param maxCacheSize max size of cache in bytes, {@code null} to keep current size or use default one for new cache.
+     */
+    @NonNull
+    public static synchronized SimpleCacheRegistry getInstance(@NonNull Context context, @NonNull File directory,
+            @Nullable Long maxCacheSize) {
+        String key = getCanonicalPath(directory);
+        SimpleCacheRegistry instance = caches.get(key);
+        if (instance == null) {
+            if (databaseProvider == null) {
+                // index of every cache is kept in its own tables of shared database
+                databaseProvider = new StandaloneDatabaseProvider(context.getApplicationContext());
+            }
+            instance = new SimpleCacheRegistry(directory,
+                    maxCacheSize != null ? maxCacheSize : DEFAULT_MAX_CACHE_SIZE, databaseProvider);
+            caches.put(key, instance);
+        } else if (maxCacheSize != null && maxCacheSize != instance.evictor.getMaxBytes()) {
+            instance.evictor.setMaxBytes(instance.simpleCache, maxCacheSize);
+        }
+        return instance;
+    }
+
+    // the same directory given by different paths must not get a second cache, SimpleCache would refuse it
+    private static String getCanonicalPath(File directory) {
+        try {
+            return directory.getCanonicalPath();
+        } catch (IOException e) {
+            return directory.getAbsolutePath();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.google.android.exoplayer2.util.Util;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.view.TextureRegistry;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -46,6 +47,14 @@ final class VideoPlayer {
 
     private ExoPlayer exoPlayer;
 
+    @Nullable
+    private final ExoPlayerPool playerPool;
+
+    @Nullable
+    private final Map<String, Object> bufferOptions;
+
+    private Listener playerListener;
+
     private Surface surface;
 
     private final TextureRegistry.SurfaceTextureEntry textureEntry;
@@ -54,6 +63,15 @@ final class VideoPlayer {
 
     private final EventChannel eventChannel;
 
+    @Nullable
+    private final EventChannel.EventSink cacheEventSink;
+
+    @Nullable
+    private CacheRangeTracker cacheRangeTracker;
+
+    @Nullable
+    private ProxyFactory.Registration proxyRegistration;
+
     private static final String USER_AGENT = "User-Agent";
 
     @VisibleForTesting
@@ -71,57 +89,92 @@ final class VideoPlayer {
             String formatHint,
             @NonNull Map<String, String> httpHeaders,
             @Nullable Map<String, Object> bufferOptions,
+            @NonNull ExoPlayerPool playerPool,
             boolean enableCaching,
             @Nullable String cacheKey,
             @Nullable String cacheDirectory,
             @Nullable Long maxSingleFileCacheSize,
             @Nullable Long maxTotalCacheSize,
-            VideoPlayerOptions options) {
+            VideoPlayerOptions options,
+            @Nullable EventChannel.EventSink cacheEventSink) {
         this.eventChannel = eventChannel;
         this.textureEntry = textureEntry;
         this.options = options;
+        this.cacheEventSink = cacheEventSink;
+        this.playerPool = playerPool;
+        this.bufferOptions = bufferOptions;
+
+        final ExoPlayer exoPlayer = playerPool.acquire(bufferOptions);
+        try {
+            buildHttpDataSourceFactory(httpHeaders);
+            DataSource.Factory dataSourceFactory;
+
+            Uri uri = Uri.parse(dataSource);
+
+            final boolean shouldUseProxyCaching = cacheDirectory != null;
+
+            if (enableCaching && isHTTP(uri)) {
+                if (shouldUseProxyCaching) {
+                    proxyRegistration = ProxyFactory.register(context, cacheDirectory, dataSource, httpHeaders,
+                            cacheKey, maxTotalCacheSize);
+                    final HttpProxyCacheServer proxy = proxyRegistration.proxy;
+                    // cached file isn't looked up on disk here, proxy serves it without network anyway
+                    final String proxyUrl = proxy.getProxyUrl(dataSource, false);
+                    uri = Uri.parse(proxyUrl);
+                    // loopback speed isn't network bandwidth, proxy reports its network transfers to meter itself
+                    dataSourceFactory = new ResolvingDataSource.Factory(
+                            new DefaultDataSource.Factory(context, httpDataSourceFactory),
+                            dataSpec -> dataSpec.buildUpon()
+                                    .setFlags(dataSpec.flags | DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+                                    .build());
+                    cacheRangeTracker = new CacheRangeTracker(dataSource, this::sendCacheUpdate);
+                    cacheRangeTracker.attach(proxy);
+                } else {
+                    CacheDataSourceFactory cacheDataSourceFactory = new CacheDataSourceFactory(
+                            context,
+                            maxTotalCacheSize,
+                            maxSingleFileCacheSize, cacheKey, dataSource);
+                    if (!httpHeaders.isEmpty()) {
+                        cacheDataSourceFactory.setHeaders(httpHeaders);
+                    }
+                    dataSourceFactory = cacheDataSourceFactory;
+                    cacheRangeTracker = new CacheRangeTracker(dataSource, this::sendCacheUpdate);
+                    // cache is opened in background, not on platform thread
+                    cacheRangeTracker.attach(cacheDataSourceFactory,
+                            CustomCacheKeyProvider.getMediaKey(cacheKey, dataSource));
+                }
 
-        final ExoPlayer exoPlayer = buildExoPlayer(context, bufferOptions);
-        buildHttpDataSourceFactory(httpHeaders);
-        DataSource.Factory dataSourceFactory;
-
-        Uri uri = Uri.parse(dataSource);
-
-        final boolean shouldUseProxyCaching = cacheDirectory != null;
-
-        if (enableCaching && isHTTP(uri)) {
-            if (shouldUseProxyCaching) {
-                final HttpProxyCacheServer proxy = ProxyFactory.getProxy(context, cacheDirectory, httpHeaders,
-                        cacheKey, maxTotalCacheSize);
-                final String proxyUrl = proxy.getProxyUrl(dataSource);
-                uri = Uri.parse(proxyUrl);
-                dataSourceFactory = new DefaultDataSource.Factory(context, httpDataSourceFactory);
             } else {
-                CacheDataSourceFactory cacheDataSourceFactory = new CacheDataSourceFactory(
-                        context,
-                        maxTotalCacheSize,
-                        maxSingleFileCacheSize, cacheKey);
-                if (!httpHeaders.isEmpty()) {
-                    cacheDataSourceFactory.setHeaders(httpHeaders);
-                }
-                dataSourceFactory = cacheDataSourceFactory;
+                dataSourceFactory = new DefaultDataSource.Factory(context, httpDataSourceFactory);
             }
 
-        } else {
-            dataSourceFactory = new DefaultDataSource.Factory(context, httpDataSourceFactory);
-        }
+            // proxy url encodes the original one, so type is inferred from the original extension
+            MediaSource mediaSource = buildMediaSource(uri, Uri.parse(dataSource), dataSourceFactory, formatHint);
 
-        MediaSource mediaSource = buildMediaSource(uri, dataSourceFactory, formatHint);
-
-        exoPlayer.setMediaSource(mediaSource);
-        exoPlayer.prepare();
+            exoPlayer.setMediaSource(mediaSource);
+            exoPlayer.prepare();
+        } catch (RuntimeException e) {
+            // nothing owns the pooled player and proxy registration yet
+            if (cacheRangeTracker != null) {
+                cacheRangeTracker.release();
+                cacheRangeTracker = null;
+            }
+            if (proxyRegistration != null) {
+                proxyRegistration.release();
+                proxyRegistration = null;
+            }
+            playerPool.release(bufferOptions, exoPlayer);
+            throw e;
+        }
 
         setUpVideoPlayer(exoPlayer, new QueuingEventSink());
     }
 
-    ExoPlayer buildExoPlayer(Context context, @Nullable Map<String, Object> bufferOptions) {
+    static ExoPlayer buildExoPlayer(Context context, @Nullable Map<String, Object> bufferOptions) {
         if (bufferOptions == null || bufferOptions.isEmpty()) {
-            return new ExoPlayer.Builder(context).build();
+            return new ExoPlayer.Builder(context)
+                    .setBandwidthMeter(SharedBandwidthMeter.getInstance(context))
+                    .build();
         } else {
 
             final Number minBufferMSMap = (Number) bufferOptions.get("minBufferMS");
@@ -175,7 +228,10 @@ final class VideoPlayer {
                     .setBackBuffer(backwardBufferDurationMS.intValue(), retainBackwardBufferFromKeyframe)
                     .setPrioritizeTimeOverSizeThresholds(prioritizeTimeOverSizeThresholds)
                     .build();
-            return new ExoPlayer.Builder(context).setLoadControl(loadControl).build();
+            return new ExoPlayer.Builder(context)
+                    .setLoadControl(loadControl)
+                    .setBandwidthMeter(SharedBandwidthMeter.getInstance(context))
+                    .build();
         }
 
     }
@@ -192,6 +248,9 @@ final class VideoPlayer {
         this.eventChannel = eventChannel;
         this.textureEntry = textureEntry;
         this.options = options;
+        this.cacheEventSink = null;
+        this.playerPool = null;
+        this.bufferOptions = null;
         this.httpDataSourceFactory = httpDataSourceFactory;
 
         setUpVideoPlayer(exoPlayer, eventSink);
@@ -220,10 +279,10 @@ final class VideoPlayer {
     }
 
     private MediaSource buildMediaSource(
-            Uri uri, DataSource.Factory mediaDataSourceFactory, String formatHint) {
+            Uri uri, Uri originalUri, DataSource.Factory mediaDataSourceFactory, String formatHint) {
         int type;
         if (formatHint == null) {
-            type = Util.inferContentType(uri);
+            type = Util.inferContentType(originalUri);
         } else {
             switch (formatHint) {
                 case FORMAT_SS:
@@ -285,7 +344,7 @@ final class VideoPlayer {
         exoPlayer.setVideoSurface(surface);
         setAudioAttributes(exoPlayer, options.mixWithOthers);
 
-        exoPlayer.addListener(
+        playerListener =
                 new Listener() {
                     private boolean isBuffering = false;
 
@@ -307,6 +366,10 @@ final class VideoPlayer {
                             if (!isInitialized) {
                                 isInitialized = true;
                                 sendInitialized();
+                                if (cacheRangeTracker != null) {
+                                    // duration is known now, so cached ranges can be mapped to time
+                                    cacheRangeTracker.requestUpdate();
+                                }
                             }
                         } else if (playbackState == Player.STATE_ENDED) {
                             Map<String, Object> event = new HashMap<>();
@@ -336,7 +399,8 @@ final class VideoPlayer {
                             eventSink.success(event);
                         }
                     }
-                });
+                };
+        exoPlayer.addListener(playerListener);
     }
 
     void sendBufferingUpdate() {
@@ -349,6 +413,33 @@ final class VideoPlayer {
         eventSink.success(event);
     }
 
+    /**
+     * Sends ranges cached on disk to the channel shared by all players, events are tagged with texture id.
+     * Ranges are also mapped to time proportionally to byte offsets, which is exact enough for constant bitrate
+     * and for deciding what is playable without network.
+     */
+    private void sendCacheUpdate(String url, List<long[]> byteRanges, long totalBytes) {
+        long duration = exoPlayer.getDuration();
+        boolean timeKnown = totalBytes > 0 && duration != C.TIME_UNSET;
+        List<List<Long>> bytes = new ArrayList<>(byteRanges.size());
+        List<List<Long>> values = new ArrayList<>(byteRanges.size());
+        for (long[] range : byteRanges) {
+            bytes.add(Arrays.asList(range[0], range[1]));
+            if (timeKnown) {
+                values.add(Arrays.asList(range[0] * duration / totalBytes, Math.min(range[1] * duration / totalBytes, duration)));
+            }
+        }
+        Map<String, Object> event = new HashMap<>();
+        event.put("textureId", textureEntry.id());
+        event.put("url", url);
+        event.put("values", values);
+        event.put("byteRanges", bytes);
+        event.put("totalBytes", totalBytes);
+        if (cacheEventSink != null) {
+            cacheEventSink.success(event);
+        }
+    }
+
     private static void setAudioAttributes(ExoPlayer exoPlayer, boolean isMixMode) {
         exoPlayer.setAudioAttributes(
                 new AudioAttributes.Builder().setContentType(C.AUDIO_CONTENT_TYPE_MOVIE).build(),
@@ -429,13 +520,25 @@ final class VideoPlayer {
         if (isInitialized) {
             exoPlayer.stop();
         }
+        if (cacheRangeTracker != null) {
+            cacheRangeTracker.release();
+        }
+        if (proxyRegistration != null) {
+            proxyRegistration.release();
+        }
+        if (exoPlayer != null) {
+            exoPlayer.removeListener(playerListener);
+            if (playerPool != null) {
+                // player leaves surface before it is released
+                playerPool.release(bufferOptions, exoPlayer);
+            } else {
+                exoPlayer.release();
+            }
+        }
         textureEntry.release();
         eventChannel.setStreamHandler(null);
         if (surface != null) {
             surface.release();
         }
-        if (exoPlayer != null) {
-            exoPlayer.release();
-        }
     }
 }
@@ -4,10 +4,13 @@
 
 package io.flutter.plugins.videoplayer;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Build;
 import android.util.LongSparseArray;
 import androidx.annotation.NonNull;
+import com.danikula.videocache.RuleBasedUrlCanonicalizer;
 import io.flutter.FlutterInjector;
 import io.flutter.Log;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
@@ -19,21 +22,45 @@ import io.flutter.plugins.videoplayer.Messages.LoopingMessage;
 import io.flutter.plugins.videoplayer.Messages.MixWithOthersMessage;
 import io.flutter.plugins.videoplayer.Messages.PlaybackSpeedMessage;
 import io.flutter.plugins.videoplayer.Messages.PositionMessage;
+import io.flutter.plugins.videoplayer.Messages.PreloadHandleMessage;
+import io.flutter.plugins.videoplayer.Messages.PreloadMessage;
 import io.flutter.plugins.videoplayer.Messages.TextureMessage;
+import io.flutter.plugins.videoplayer.Messages.UrlCanonicalizationMessage;
 import io.flutter.plugins.videoplayer.Messages.VolumeMessage;
 import io.flutter.view.TextureRegistry;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.net.ssl.HttpsURLConnection;
 
 /** Android platform implementation of the VideoPlayerPlugin. */
 public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
   private static final String TAG = "VideoPlayerPlugin";
+  private static final String CACHE_EVENTS_CHANNEL = "flutter.io/videoPlayer/cacheEvents";
   private final LongSparseArray<VideoPlayer> videoPlayers = new LongSparseArray<>();
   private FlutterState flutterState;
+  private Preloader preloader;
+  private ExoPlayerPool playerPool;
   private final VideoPlayerOptions options = new VideoPlayerOptions();
+  private final ComponentCallbacks2 memoryCallbacks =
+      new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+          ProxyFactory.releaseMemoryCache();
+          releaseIdlePlayers();
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {}
+
+        @Override
+        public void onLowMemory() {
+          ProxyFactory.releaseMemoryCache();
+          releaseIdlePlayers();
+        }
+      };
 
   /**
    * Register this with the v2 embedding for the plugin to respond to lifecycle
@@ -91,6 +118,9 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
         injector.flutterLoader()::getLookupKeyForAsset,
         binding.getTextureRegistry());
     flutterState.startListening(this, binding.getBinaryMessenger());
+    flutterState.applicationContext.registerComponentCallbacks(memoryCallbacks);
+    ProxyFactory.warmUp(flutterState.applicationContext);
+    SharedBandwidthMeter.warmUp(flutterState.applicationContext);
   }
 
   @Override
@@ -99,6 +129,7 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
       Log.wtf(TAG, "Detached from the engine before registering to it.");
     }
     flutterState.stopListening(binding.getBinaryMessenger());
+    flutterState.applicationContext.unregisterComponentCallbacks(memoryCallbacks);
     flutterState = null;
     initialize();
   }
@@ -108,6 +139,20 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
       videoPlayers.valueAt(i).dispose();
     }
     videoPlayers.clear();
+    releaseIdlePlayers();
+  }
+
+  private void releaseIdlePlayers() {
+    if (playerPool != null) {
+      playerPool.clear();
+    }
+  }
+
+  private ExoPlayerPool getPlayerPool() {
+    if (playerPool == null) {
+      playerPool = new ExoPlayerPool(flutterState.applicationContext);
+    }
+    return playerPool;
   }
 
   private void onDestroy() {
@@ -123,6 +168,9 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
 
   public void initialize() {
     disposeAllPlayers();
+    if (preloader != null) {
+      preloader.cancelAll();
+    }
   }
 
   public @NonNull TextureMessage create(@NonNull CreateMessage arg) {
@@ -147,12 +195,14 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
           null,
           new HashMap<>(),
           bufferOptions,
+          getPlayerPool(),
           arg.getEnableCaching(),
           arg.getCacheKey(),
           arg.getCacheDirectory(),
           arg.getMaxSingleFileCacheSize(),
           arg.getMaxTotalCacheSize(),
-          options);
+          options,
+          flutterState.cacheEvents);
     } else {
       Map<String, String> httpHeaders = arg.getHttpHeaders();
       Map<String, Object> bufferOptions = arg.getBufferOptions();
@@ -164,12 +214,14 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
           arg.getFormatHint(),
           httpHeaders,
           bufferOptions,
+          getPlayerPool(),
           arg.getEnableCaching(),
           arg.getCacheKey(),
           arg.getCacheDirectory(),
           arg.getMaxSingleFileCacheSize(),
           arg.getMaxTotalCacheSize(),
-          options);
+          options,
+          flutterState.cacheEvents);
     }
     videoPlayers.put(handle.id(), player);
 
@@ -227,6 +279,54 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
     options.mixWithOthers = arg.getMixWithOthers();
   }
 
+  @Override
+  public @NonNull PreloadHandleMessage preload(@NonNull PreloadMessage arg) {
+    if (preloader == null) {
+      preloader = new Preloader(flutterState.applicationContext);
+    }
+    long handleId = preloader.preload(
+        arg.getUri(),
+        arg.getHttpHeaders(),
+        arg.getCacheKey(),
+        arg.getCacheDirectory(),
+        arg.getMaxSingleFileCacheSize(),
+        arg.getMaxTotalCacheSize(),
+        arg.getPreloadBytes(),
+        arg.getPreloadDurationMs(),
+        arg.getPriority());
+    return new PreloadHandleMessage.Builder().setHandleId(handleId).build();
+  }
+
+  @Override
+  public void cancelPreload(@NonNull PreloadHandleMessage arg) {
+    if (preloader != null) {
+      preloader.cancel(arg.getHandleId());
+    }
+  }
+
+  @Override
+  public void setUrlCanonicalization(@NonNull UrlCanonicalizationMessage arg) {
+    List<String> patterns = arg.getRewritePatterns();
+    List<String> replacements = arg.getRewriteReplacements();
+    if (patterns.size() != replacements.size()) {
+      throw new IllegalArgumentException(
+          "Every rewrite pattern needs a replacement: "
+              + patterns.size()
+              + " patterns, "
+              + replacements.size()
+              + " replacements");
+    }
+    RuleBasedUrlCanonicalizer.Builder builder = new RuleBasedUrlCanonicalizer.Builder()
+        .dropQueryParameters(arg.getDropQueryParameters().toArray(new String[0]));
+    for (String prefix : arg.getStripPathPrefixes()) {
+      builder.stripPathPrefix(prefix);
+    }
+    for (int i = 0; i < patterns.size(); i++) {
+      builder.rewrite(patterns.get(i), replacements.get(i));
+    }
+    CacheUrlCanonicalizer.INSTANCE.setRules(builder.build());
+  }
+
   private interface KeyForAssetFn {
     String get(String asset);
   }
@@ -235,12 +335,52 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
     String get(String asset, String packageName);
   }
 
+  /**
+   * Sink of the channel shared by all players. Unlike per-player events, cache events are dropped while
+   * nobody listens, only the latest ranges are relevant.
+   */
+  private static final class CacheEventsSink implements EventChannel.EventSink, EventChannel.StreamHandler {
+    private EventChannel.EventSink delegate;
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      delegate = events;
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      delegate = null;
+    }
+
+    @Override
+    public void success(Object event) {
+      if (delegate != null) {
+        delegate.success(event);
+      }
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      if (delegate != null) {
+        delegate.error(errorCode, errorMessage, errorDetails);
+      }
+    }
+
+    @Override
+    public void endOfStream() {
+      if (delegate != null) {
+        delegate.endOfStream();
+      }
+    }
+  }
+
   private static final class FlutterState {
     final Context applicationContext;
     final BinaryMessenger binaryMessenger;
     final KeyForAssetFn keyForAsset;
     final KeyForAssetAndPackageName keyForAssetAndPackageName;
     final TextureRegistry textureRegistry;
+    final CacheEventsSink cacheEvents = new CacheEventsSink();
 
     FlutterState(
         Context applicationContext,
@@ -257,10 +397,12 @@ public class VideoPlayerPlugin implements FlutterPlugin, AndroidVideoPlayerApi {
 
     void startListening(VideoPlayerPlugin methodCallHandler, BinaryMessenger messenger) {
       AndroidVideoPlayerApi.setup(messenger, methodCallHandler);
+      new EventChannel(messenger, CACHE_EVENTS_CHANNEL).setStreamHandler(cacheEvents);
     }
 
     void stopListening(BinaryMessenger messenger) {
       AndroidVideoPlayerApi.setup(messenger, null);
+      new EventChannel(messenger, CACHE_EVENTS_CHANNEL).setStreamHandler(null);
     }
   }
 }
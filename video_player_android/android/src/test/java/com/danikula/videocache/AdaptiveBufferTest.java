@@ -0,0 +1,67 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class AdaptiveBufferTest {
+
+  @Test
+  public void startsWithSmallestBuffer() {
+    AdaptiveBuffer buffer = new AdaptiveBuffer();
+
+    assertEquals(BufferPool.MIN_SIZE, buffer.get().length);
+    buffer.release();
+  }
+
+  @Test
+  public void keepsSizeUntilThroughputIsMeasured() {
+    AdaptiveBuffer buffer = new AdaptiveBuffer();
+
+    buffer.onTransferred(100 * 1024 * 1024);
+
+    assertEquals(BufferPool.MIN_SIZE, buffer.get().length);
+    buffer.release();
+  }
+
+  @Test
+  public void growsForFastTransfer() throws InterruptedException {
+    AdaptiveBuffer buffer = new AdaptiveBuffer();
+    Thread.sleep(150);
+
+    buffer.onTransferred(100 * 1024 * 1024);
+
+    assertEquals(BufferPool.MAX_SIZE, buffer.get().length);
+    buffer.release();
+  }
+
+  @Test
+  public void shrinksForSlowTransfer() throws InterruptedException {
+    AdaptiveBuffer buffer = new AdaptiveBuffer();
+    Thread.sleep(150);
+    buffer.onTransferred(100 * 1024 * 1024);
+    Thread.sleep(150);
+
+    buffer.onTransferred(1024);
+
+    assertEquals(BufferPool.MIN_SIZE, buffer.get().length);
+    buffer.release();
+  }
+
+  @Test
+  public void releaseReturnsArrayToPool() {
+    AdaptiveBuffer buffer = new AdaptiveBuffer();
+    byte[] array = buffer.get();
+
+    buffer.release();
+
+    assertNull(buffer.get());
+    assertSame(array, BufferPool.acquire(BufferPool.MIN_SIZE));
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+  @Test
+  public void roundsSizeUpToPowerOfTwoInRange() {
+    assertEquals(BufferPool.MIN_SIZE, BufferPool.sizeOf(1));
+    assertEquals(BufferPool.MIN_SIZE, BufferPool.sizeOf(BufferPool.MIN_SIZE));
+    assertEquals(BufferPool.MIN_SIZE * 2, BufferPool.sizeOf(BufferPool.MIN_SIZE + 1));
+    assertEquals(64 * 1024, BufferPool.sizeOf(50_000));
+    assertEquals(BufferPool.MAX_SIZE, BufferPool.sizeOf(BufferPool.MAX_SIZE * 4));
+    assertEquals(32 * 1024, BufferPool.acquire(20_000).length);
+  }
+
+  @Test
+  public void reusesReleasedArray() {
+    byte[] buffer = BufferPool.acquire(100_000);
+
+    BufferPool.release(buffer);
+
+    assertSame(buffer, BufferPool.acquire(BufferPool.sizeOf(100_000)));
+  }
+
+  @Test
+  public void ignoresArrayNotMadeByPool() {
+    byte[] foreign = new byte[10_000];
+
+    BufferPool.release(foreign);
+
+    assertNotSame(foreign, BufferPool.acquire(10_000));
+  }
+
+  @Test
+  public void keepsFewFreeArraysOfEachSize() {
+    int size = BufferPool.MAX_SIZE / 2;
+    List<byte[]> released = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      released.add(BufferPool.acquire(size));
+    }
+    for (byte[] buffer : released) {
+      BufferPool.release(buffer);
+    }
+
+    int reused = 0;
+    for (int i = 0; i < 5; i++) {
+      byte[] buffer = BufferPool.acquire(size);
+      for (byte[] releasedBuffer : released) {
+        if (releasedBuffer == buffer) {
+          reused++;
+        }
+      }
+    }
+    assertEquals(4, reused);
+  }
+}
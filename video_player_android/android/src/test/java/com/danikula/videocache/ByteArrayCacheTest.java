@@ -0,0 +1,116 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class ByteArrayCacheTest {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @Test
+  public void readsDataAppendedAcrossChunks() throws Exception {
+    byte[] data = newData(CHUNK_SIZE * 20 + 123);
+    ByteArrayCache cache = new ByteArrayCache();
+    // odd portions make appends cross chunk boundaries and grow chunk table over initial 16 chunks
+    int offset = 0;
+    while (offset < data.length) {
+      int length = Math.min(10_000, data.length - offset);
+      cache.append(Arrays.copyOfRange(data, offset, offset + length), length);
+      offset += length;
+    }
+
+    assertEquals(data.length, cache.available());
+    byte[] read = new byte[data.length];
+    assertEquals(data.length, cache.read(read, 0, data.length));
+    assertArrayEquals(data, read);
+  }
+
+  @Test
+  public void readsAcrossChunkBoundary() throws Exception {
+    byte[] data = newData(CHUNK_SIZE * 3);
+    ByteArrayCache cache = new ByteArrayCache(data);
+
+    byte[] read = new byte[1000];
+    assertEquals(1000, cache.read(read, CHUNK_SIZE - 500, 1000));
+    assertArrayEquals(Arrays.copyOfRange(data, CHUNK_SIZE - 500, CHUNK_SIZE + 500), read);
+  }
+
+  @Test
+  public void readIsLimitedByAvailableData() throws Exception {
+    byte[] data = newData(CHUNK_SIZE + 10);
+    ByteArrayCache cache = new ByteArrayCache(data);
+
+    byte[] read = new byte[100];
+    assertEquals(20, cache.read(read, data.length - 20, 100));
+    assertArrayEquals(
+        Arrays.copyOfRange(data, data.length - 20, data.length), Arrays.copyOf(read, 20));
+    assertEquals(-1, cache.read(read, data.length, 100));
+  }
+
+  @Test
+  public void transfersAcrossChunks() throws Exception {
+    byte[] data = newData(CHUNK_SIZE * 4 + 7);
+    ByteArrayCache cache = new ByteArrayCache(data);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    WritableByteChannel target = Channels.newChannel(output);
+
+    long offset = CHUNK_SIZE / 2;
+    assertEquals(data.length - offset, cache.transferTo(offset, Long.MAX_VALUE, target));
+    assertArrayEquals(Arrays.copyOfRange(data, (int) offset, data.length), output.toByteArray());
+    assertEquals(-1, cache.transferTo(data.length, 1, target));
+  }
+
+  @Test
+  public void appendBeyondMaxSizeFails() throws Exception {
+    ByteArrayCache cache = new ByteArrayCache(CHUNK_SIZE + 100);
+    cache.append(newData(CHUNK_SIZE), CHUNK_SIZE);
+    try {
+      cache.append(newData(101), 101);
+      fail("Appending beyond max size must fail");
+    } catch (ProxyCacheException expected) {
+    }
+
+    assertEquals(CHUNK_SIZE, cache.available());
+    cache.append(newData(100), 100);
+    assertEquals(CHUNK_SIZE + 100, cache.available());
+  }
+
+  @Test
+  public void appendsOnlyGivenLength() throws Exception {
+    byte[] data = newData(100);
+    ByteArrayCache cache = new ByteArrayCache();
+    cache.append(data, 40);
+
+    byte[] read = new byte[100];
+    assertEquals(40, cache.read(read, 0, 100));
+    assertArrayEquals(Arrays.copyOf(data, 40), Arrays.copyOf(read, 40));
+  }
+
+  @Test
+  public void completes() throws Exception {
+    ByteArrayCache cache = new ByteArrayCache();
+    assertFalse(cache.isCompleted());
+    cache.complete();
+    assertTrue(cache.isCompleted());
+  }
+
+  private static byte[] newData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.danikula.videocache.file.FileCache;
+import com.danikula.videocache.sourcestorage.SourceInfoStorage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentDeduplicatorTest {
+  private static final String FIRST_URL = "http://mirror1/video.mp4";
+  private static final String SECOND_URL = "http://mirror2/video.mp4";
+  private static final String ETAG = "\"5f2b-abc\"";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final InMemorySourceInfoStorage storage = new InMemorySourceInfoStorage();
+  private ContentDeduplicator deduplicator;
+
+  @Before
+  public void before() {
+    deduplicator = new ContentDeduplicator(folder.getRoot(), storage);
+  }
+
+  @Test
+  public void duplicateIsDeletedAndResolvedToStoredFile() throws Exception {
+    File first = complete("first.mp4", "content", ETAG, FIRST_URL);
+    File second = complete("second.mp4", "content", ETAG, SECOND_URL);
+
+    assertTrue(first.exists());
+    assertFalse(second.exists());
+    assertEquals(first, deduplicator.resolve(SECOND_URL, second));
+    assertEquals(first, deduplicator.resolve(FIRST_URL, first));
+  }
+
+  @Test
+  public void weakEtagIsNotDeduplicated() throws Exception {
+    File first = complete("first.mp4", "content", "W/" + ETAG, FIRST_URL);
+    File second = complete("second.mp4", "content", "W/" + ETAG, SECOND_URL);
+
+    assertTrue(first.exists());
+    assertTrue(second.exists());
+    assertNull(storage.getContentId(SECOND_URL));
+  }
+
+  @Test
+  public void sourceWithoutEtagIsNotDeduplicated() throws Exception {
+    File first = complete("first.mp4", "content", null, FIRST_URL);
+    File second = complete("second.mp4", "content", null, SECOND_URL);
+
+    assertTrue(first.exists());
+    assertTrue(second.exists());
+    assertNull(storage.getContentId(SECOND_URL));
+  }
+
+  @Test
+  public void differentContentWithSameEtagIsNotMerged() throws Exception {
+    File first = complete("first.mp4", "content", ETAG, FIRST_URL);
+    File second = complete("second.mp4", "CONTENT", ETAG, SECOND_URL);
+
+    assertTrue(first.exists());
+    assertTrue(second.exists());
+    assertNull(storage.getContentId(SECOND_URL));
+    assertEquals(second, deduplicator.resolve(SECOND_URL, second));
+  }
+
+  @Test
+  public void ownFileIsUsedWhenStoredFileIsEvicted() throws Exception {
+    File first = complete("first.mp4", "content", ETAG, FIRST_URL);
+    File second = complete("second.mp4", "content", ETAG, SECOND_URL);
+
+    assertTrue(first.delete());
+
+    assertEquals(second, deduplicator.resolve(SECOND_URL, second));
+  }
+
+  private File complete(String fileName, String content, String etag, String url) throws Exception {
+    FileCache cache = new FileCache(new File(folder.getRoot(), fileName));
+    byte[] data = content.getBytes("UTF-8");
+    cache.append(data, data.length);
+    cache.complete();
+    File file = cache.getFile();
+    deduplicator.onCompleted(url, etag, cache);
+    cache.close();
+    return file;
+  }
+
+  private static final class InMemorySourceInfoStorage implements SourceInfoStorage {
+    private final Map<String, String> contentIds = new HashMap<>();
+    private final Map<String, String> contentFiles = new HashMap<>();
+
+    @Override
+    public SourceInfo get(String url) {
+      return null;
+    }
+
+    @Override
+    public void put(String url, SourceInfo sourceInfo) {}
+
+    @Override
+    public String getContentId(String url) {
+      return contentIds.get(url);
+    }
+
+    @Override
+    public void putContentId(String url, String contentId) {
+      contentIds.put(url, contentId);
+    }
+
+    @Override
+    public String getContentFile(String contentId) {
+      return contentFiles.get(contentId);
+    }
+
+    @Override
+    public void putContentFile(String contentId, String fileName) {
+      contentFiles.put(contentId, fileName);
+    }
+
+    @Override
+    public void release() {}
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+public class DashManifestProxyTest {
+  private static final String PROXY = "http://127.0.0.1:8080/";
+  private static final String MANIFEST_URL = "http://origin/v1/manifest.mpd";
+
+  private final Map<String, Map<String, String>> registeredHeaders = new HashMap<>();
+  private InheritedHeadersInjector headersInjector;
+  private DashManifestProxy manifestProxy;
+
+  @Before
+  public void before() {
+    headersInjector =
+        new InheritedHeadersInjector(
+            url -> {
+              Map<String, String> headers = registeredHeaders.get(url);
+              return headers != null ? headers : new HashMap<>();
+            });
+    manifestProxy = new DashManifestProxy(PROXY, headersInjector);
+  }
+
+  @Test
+  public void keepsTemplateIdentifiersUnencoded() throws Exception {
+    String manifest =
+        mpd(
+            "<Period><AdaptationSet>"
+                + "<SegmentTemplate media=\"seg-$Number%05d$.m4s\" initialization=\"init-$RepresentationID$.mp4\"/>"
+                + "<Representation id=\"r1\"/>"
+                + "</AdaptationSet></Period>");
+
+    Document rewritten = rewrite(manifest);
+
+    Element template = element(rewritten, "SegmentTemplate");
+    assertEquals(
+        PROXY + encode("http://origin/v1/seg-") + "$Number%05d$" + encode(".m4s"),
+        template.getAttribute("media"));
+    assertEquals(
+        PROXY + encode("http://origin/v1/init-") + "$RepresentationID$" + encode(".mp4"),
+        template.getAttribute("initialization"));
+  }
+
+  @Test
+  public void resolvesSegmentsAgainstBaseUrlChain() throws Exception {
+    String manifest =
+        mpd(
+            "<BaseURL>http://cdn/content/</BaseURL>"
+                + "<Period><AdaptationSet><Representation id=\"r1\">"
+                + "<BaseURL>video/</BaseURL>"
+                + "<SegmentList><Initialization sourceURL=\"init.mp4\"/>"
+                + "<SegmentURL media=\"seg-1.m4s\"/></SegmentList>"
+                + "</Representation></AdaptationSet></Period>");
+
+    Document rewritten = rewrite(manifest);
+
+    assertEquals(
+        proxied("http://cdn/content/video/init.mp4"),
+        element(rewritten, "Initialization").getAttribute("sourceURL"));
+    assertEquals(
+        proxied("http://cdn/content/video/seg-1.m4s"),
+        element(rewritten, "SegmentURL").getAttribute("media"));
+    assertEquals(proxied("http://cdn/content/video/"), elements(rewritten, "BaseURL")[1].getTextContent());
+  }
+
+  @Test
+  public void mergesInheritedTemplateResolvedAgainstOwnBaseUrl() throws Exception {
+    String manifest =
+        mpd(
+            "<Period><AdaptationSet>"
+                + "<SegmentTemplate timescale=\"1000\" media=\"seg-$Number$.m4s\" startNumber=\"1\"/>"
+                + "<Representation id=\"r1\"><BaseURL>r1/</BaseURL>"
+                + "<SegmentTemplate initialization=\"init.mp4\"/></Representation>"
+                + "<Representation id=\"r2\"><BaseURL>r2/</BaseURL></Representation>"
+                + "</AdaptationSet></Period>");
+
+    Document rewritten = rewrite(manifest);
+
+    Element[] templates = elements(rewritten, "SegmentTemplate");
+    assertEquals(3, templates.length);
+    Element first = templates[1];
+    assertEquals("1000", first.getAttribute("timescale"));
+    assertEquals("1", first.getAttribute("startNumber"));
+    assertEquals(proxied("http://origin/v1/r1/init.mp4"), first.getAttribute("initialization"));
+    assertEquals(
+        PROXY + encode("http://origin/v1/r1/seg-") + "$Number$" + encode(".m4s"), first.getAttribute("media"));
+    Element second = templates[2];
+    assertEquals("1000", second.getAttribute("timescale"));
+    assertEquals(
+        PROXY + encode("http://origin/v1/r2/seg-") + "$Number$" + encode(".m4s"), second.getAttribute("media"));
+  }
+
+  @Test
+  public void templateSegmentsInheritHeadersOfManifest() throws Exception {
+    registeredHeaders.put(MANIFEST_URL, Collections.singletonMap("Authorization", "token"));
+    String manifest =
+        mpd(
+            "<Period><AdaptationSet>"
+                + "<SegmentTemplate media=\"seg-$Number%05d$.m4s\"/>"
+                + "<Representation id=\"r1\"/>"
+                + "</AdaptationSet></Period>");
+
+    rewrite(manifest);
+
+    assertEquals("token", headersInjector.addHeaders("http://origin/v1/seg-00012.m4s").get("Authorization"));
+    assertTrue(headersInjector.addHeaders("http://origin/v2/seg-00012.m4s").isEmpty());
+  }
+
+  @Test(expected = ProxyCacheException.class)
+  public void rejectsManifestWithDoctype() throws Exception {
+    String manifest =
+        "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE MPD [<!ENTITY xxe SYSTEM \"file:///etc/hosts\">]>\n"
+            + mpd("<Period><BaseURL>&xxe;</BaseURL></Period>");
+
+    manifestProxy.rewrite(manifest, MANIFEST_URL, MANIFEST_URL);
+  }
+
+  @Test
+  public void templatePatternMatchesSubstitutedUrls() {
+    Pattern pattern = DashManifestProxy.toUrlPattern("http://origin/v1/$RepresentationID$/seg-$Number%05d$.m4s");
+
+    assertTrue(pattern.matcher("http://origin/v1/video-720/seg-00012.m4s").matches());
+    assertFalse(pattern.matcher("http://origin/v1/video/720/seg-00012.m4s").matches());
+    assertFalse(pattern.matcher("http://origin/v1/video-720/seg-00012.mp4").matches());
+    assertTrue(DashManifestProxy.toUrlPattern("http://origin/a$$b.m4s").matcher("http://origin/a$b.m4s").matches());
+  }
+
+  @Test
+  public void manifestIsKeptByItsType() {
+    assertEquals(ManifestProxy.STATIC_MANIFEST_TTL, manifestProxy.getTimeToLive(mpd("")));
+    assertEquals(
+        2000, manifestProxy.getTimeToLive("<MPD type=\"dynamic\" minimumUpdatePeriod=\"PT4S\"></MPD>"));
+    assertEquals(
+        ManifestProxy.DEFAULT_LIVE_MANIFEST_TTL, manifestProxy.getTimeToLive("<MPD type=\"dynamic\"></MPD>"));
+  }
+
+  private Document rewrite(String manifest) throws Exception {
+    String rewritten = manifestProxy.rewrite(manifest, MANIFEST_URL, MANIFEST_URL);
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new InputSource(new StringReader(rewritten)));
+  }
+
+  private static String mpd(String content) {
+    return "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\">" + content + "</MPD>";
+  }
+
+  private static Element element(Document document, String name) {
+    return elements(document, name)[0];
+  }
+
+  private static Element[] elements(Document document, String name) {
+    NodeList nodes = document.getElementsByTagNameNS("*", name);
+    Element[] result = new Element[nodes.getLength()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (Element) nodes.item(i);
+    }
+    return result;
+  }
+
+  private static String proxied(String url) {
+    return PROXY + encode(url);
+  }
+
+  private static String encode(String url) {
+    return ProxyCacheUtils.encode(url);
+  }
+}
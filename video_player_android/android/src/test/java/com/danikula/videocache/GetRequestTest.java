@@ -0,0 +1,62 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GetRequestTest {
+
+  @Test
+  public void parsesUri() {
+    GetRequest request = new GetRequest("GET /http%3A%2F%2Fhost%2Fvideo.mp4 HTTP/1.1\nHost: 127.0.0.1\n");
+
+    assertEquals("http%3A%2F%2Fhost%2Fvideo.mp4", request.uri);
+  }
+
+  @Test
+  public void requestWithoutRangeIsNotPartial() {
+    GetRequest request = new GetRequest("GET /video HTTP/1.1\n");
+
+    assertFalse(request.partial);
+    assertEquals(0, request.rangeOffset);
+    assertEquals(-1, request.rangeEnd);
+  }
+
+  @Test
+  public void parsesOpenRange() {
+    GetRequest request = new GetRequest("GET /video HTTP/1.1\nRange: bytes=100-\n");
+
+    assertTrue(request.partial);
+    assertEquals(100, request.rangeOffset);
+    assertEquals(-1, request.rangeEnd);
+  }
+
+  @Test
+  public void parsesClosedRange() {
+    GetRequest request = new GetRequest("GET /video HTTP/1.1\nrange:bytes=100-199\n");
+
+    assertTrue(request.partial);
+    assertEquals(100, request.rangeOffset);
+    assertEquals(199, request.rangeEnd);
+  }
+
+  @Test
+  public void suffixRangeIsServedAsWholeContent() {
+    GetRequest request = new GetRequest("GET /video HTTP/1.1\nRange: bytes=-500\n");
+
+    assertFalse(request.partial);
+    assertEquals(0, request.rangeOffset);
+    assertEquals(-1, request.rangeEnd);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRequestWithoutUri() {
+    new GetRequest("POST / HTTP/1.1\n");
+  }
+}
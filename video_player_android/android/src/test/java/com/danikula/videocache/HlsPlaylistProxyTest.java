@@ -0,0 +1,123 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HlsPlaylistProxyTest {
+  private static final String PROXY = "http://127.0.0.1:8080/";
+  private static final String PLAYLIST_URL = "http://cdn/video/master.m3u8";
+
+  private final Map<String, Map<String, String>> registeredHeaders = new HashMap<>();
+  private HlsPlaylistProxy playlistProxy;
+
+  @Before
+  public void before() {
+    playlistProxy = new HlsPlaylistProxy(PROXY, newInjector());
+  }
+
+  @Test
+  public void rewritesNestedPlaylists() {
+    String master =
+        "#EXTM3U\n"
+            + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",URI=\"audio/index.m3u8\"\n"
+            + "#EXT-X-STREAM-INF:BANDWIDTH=800000\n"
+            + "low/chunklist?quality=low\n";
+
+    String rewritten = playlistProxy.rewrite(master, PLAYLIST_URL, PLAYLIST_URL);
+
+    String[] lines = rewritten.split("\n");
+    assertEquals(
+        "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aac\",URI=\"" + proxied("http://cdn/video/audio/index.m3u8") + "\"",
+        lines[1]);
+    assertEquals(proxied("http://cdn/video/low/chunklist?quality=low"), lines[3]);
+    // variant has no playlist extension, it is known as playlist because master references it
+    assertTrue(playlistProxy.isManifest("http://cdn/video/low/chunklist?quality=low"));
+    assertTrue(playlistProxy.isManifest("http://cdn/video/audio/index.m3u8"));
+  }
+
+  @Test
+  public void rewritesSegmentsKeysAndInitSection() {
+    String playlist =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:6\n"
+            + "#EXT-X-KEY:METHOD=AES-128,URI=\"keys/key.bin\"\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:6.0,\n"
+            + "seg-1.ts\n"
+            + "#EXTINF:6.0,\n"
+            + "https://other/seg-2.ts\n";
+
+    String rewritten = playlistProxy.rewrite(playlist, PLAYLIST_URL, "http://cdn/redirected/index.m3u8");
+
+    String[] lines = rewritten.split("\n");
+    assertEquals(
+        "#EXT-X-KEY:METHOD=AES-128,URI=\"" + proxied("http://cdn/redirected/keys/key.bin") + "\"",
+        lines[2]);
+    assertEquals("#EXT-X-MAP:URI=\"" + proxied("http://cdn/redirected/init.mp4") + "\"", lines[3]);
+    assertEquals(proxied("http://cdn/redirected/seg-1.ts"), lines[5]);
+    assertEquals(proxied("https://other/seg-2.ts"), lines[7]);
+    assertFalse(playlistProxy.isManifest("http://cdn/redirected/seg-1.ts"));
+  }
+
+  @Test
+  public void keepsUrisProxyCantFetch() {
+    String playlist = "#EXTM3U\n#EXT-X-KEY:METHOD=SAMPLE-AES,URI=\"skd://key-id\"\n";
+
+    String rewritten = playlistProxy.rewrite(playlist, PLAYLIST_URL, PLAYLIST_URL);
+
+    assertEquals(playlist, rewritten);
+  }
+
+  @Test
+  public void segmentsInheritHeadersOfPlaylist() {
+    registeredHeaders.put(PLAYLIST_URL, Collections.singletonMap("Authorization", "token"));
+    InheritedHeadersInjector headersInjector = newInjector();
+    HlsPlaylistProxy proxy = new HlsPlaylistProxy(PROXY, headersInjector);
+
+    proxy.rewrite("#EXTM3U\n#EXTINF:6.0,\nseg-1.ts\n", PLAYLIST_URL, PLAYLIST_URL);
+
+    assertEquals("token", headersInjector.addHeaders("http://cdn/video/seg-1.ts").get("Authorization"));
+    assertTrue(headersInjector.addHeaders("http://cdn/video/seg-2.ts").isEmpty());
+  }
+
+  @Test
+  public void playlistIsKeptByItsType() {
+    assertEquals(
+        ManifestProxy.STATIC_MANIFEST_TTL,
+        playlistProxy.getTimeToLive("#EXTM3U\n#EXT-X-TARGETDURATION:6\nseg.ts\n#EXT-X-ENDLIST\n"));
+    assertEquals(
+        ManifestProxy.STATIC_MANIFEST_TTL,
+        playlistProxy.getTimeToLive("#EXTM3U\n#EXT-X-STREAM-INF:BANDWIDTH=1\nlow.m3u8\n"));
+    assertEquals(3000, playlistProxy.getTimeToLive("#EXTM3U\n#EXT-X-TARGETDURATION:6\nseg.ts\n"));
+    assertEquals(ManifestProxy.DEFAULT_LIVE_MANIFEST_TTL, playlistProxy.getTimeToLive("#EXTM3U\nseg.ts\n"));
+  }
+
+  @Test
+  public void recognizesPlaylistByExtension() {
+    assertTrue(playlistProxy.isManifest("http://cdn/video/INDEX.M3U8?token=1"));
+    assertFalse(playlistProxy.isManifest("http://cdn/video/seg.ts?path=a.m3u8"));
+  }
+
+  private InheritedHeadersInjector newInjector() {
+    return new InheritedHeadersInjector(
+        url -> {
+          Map<String, String> headers = registeredHeaders.get(url);
+          return headers != null ? headers : new HashMap<>();
+        });
+  }
+
+  private static String proxied(String url) {
+    return PROXY + ProxyCacheUtils.encode(url);
+  }
+}
@@ -0,0 +1,296 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.danikula.videocache.file.Md5FileNameGenerator;
+import com.danikula.videocache.file.UnlimitedDiskUsage;
+import com.danikula.videocache.headers.EmptyHeadersInjector;
+import com.danikula.videocache.sourcestorage.NoSourceInfoStorage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HttpProxyCacheServerClientsTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final ConcurrentMap<String, HttpProxyCacheServerClients> registry =
+      new ConcurrentHashMap<>();
+  private ScheduledExecutorService scheduler;
+  private SlowServer server;
+
+  @Before
+  public void before() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void after() throws Exception {
+    for (HttpProxyCacheServerClients clients : registry.values()) {
+      clients.shutdown();
+    }
+    scheduler.shutdownNow();
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void shutsSourceDownWhenLastClientLeavesWithoutLinger() throws Exception {
+    server = new SlowServer(newData(4 * 1024 * 1024), 16 * 1024, 10);
+    HttpProxyCacheServerClients clients = newClients(0, 0);
+
+    prefetch(clients, 16 * 1024, true);
+
+    assertFalse(registry.containsKey(server.url()));
+    assertFalse(cacheFile().exists());
+  }
+
+  @Test
+  public void reconnectedClientContinuesLingeringDownload() throws Exception {
+    server = new SlowServer(newData(4 * 1024 * 1024), 16 * 1024, 10);
+    HttpProxyCacheServerClients clients = newClients(5000, 0);
+
+    prefetch(clients, 16 * 1024, true);
+    assertSame(clients, registry.get(server.url()));
+    assertEquals(0, clients.getClientsCount());
+    int requests = server.requests.get();
+
+    prefetch(clients, 256 * 1024, true);
+
+    assertSame(clients, registry.get(server.url()));
+    assertEquals(requests, server.requests.get());
+  }
+
+  @Test
+  public void shutsSourceDownWhenLingerTimeIsOver() throws Exception {
+    byte[] data = newData(4 * 1024 * 1024);
+    server = new SlowServer(data, 16 * 1024, 10);
+    HttpProxyCacheServerClients clients = newClients(200, 0);
+
+    prefetch(clients, 16 * 1024, true);
+    assertSame(clients, registry.get(server.url()));
+
+    waitForRemoval();
+    assertTrue(new File(folder.getRoot(), cacheFile().getName() + ".download").length() < data.length);
+  }
+
+  @Test
+  public void completesSmallSourceWithoutClients() throws Exception {
+    byte[] data = newData(512 * 1024);
+    server = new SlowServer(data, 16 * 1024, 10);
+    HttpProxyCacheServerClients clients = newClients(0, 1024 * 1024);
+
+    prefetch(clients, 16 * 1024, true);
+    assertSame(clients, registry.get(server.url()));
+
+    waitForRemoval();
+    assertArrayEquals(data, Files.readAllBytes(cacheFile().toPath()));
+  }
+
+  @Test
+  public void doesNotLingerForBackgroundPrefetch() throws Exception {
+    server = new SlowServer(newData(4 * 1024 * 1024), 16 * 1024, 10);
+    HttpProxyCacheServerClients clients = newClients(5000, 0);
+
+    prefetch(clients, 16 * 1024, false);
+
+    assertFalse(registry.containsKey(server.url()));
+  }
+
+  @Test
+  public void removesIdleClientsWhenLastReferenceIsReleased() throws Exception {
+    server = new SlowServer(newData(1024), 1024, 0);
+    HttpProxyCacheServerClients clients = newClients(0, 0);
+
+    assertTrue(clients.acquire());
+    assertTrue(clients.acquire());
+    clients.release();
+    assertSame(clients, registry.get(server.url()));
+
+    clients.release();
+    assertFalse(registry.containsKey(server.url()));
+    assertFalse(clients.acquire());
+  }
+
+  @Test
+  public void keepsClientsWithListeners() throws Exception {
+    server = new SlowServer(newData(1024), 1024, 0);
+    HttpProxyCacheServerClients clients = newClients(0, 0);
+    CacheListener listener = (file, url, availableBytes, totalBytes) -> {};
+
+    assertTrue(clients.acquire());
+    clients.registerCacheListener(listener);
+    clients.release();
+    assertSame(clients, registry.get(server.url()));
+
+    clients.unregisterCacheListener(listener);
+    assertFalse(registry.containsKey(server.url()));
+  }
+
+  @Test
+  public void shutdownClientsCanNotBeAcquired() throws Exception {
+    server = new SlowServer(newData(1024), 1024, 0);
+    HttpProxyCacheServerClients clients = newClients(0, 0);
+
+    clients.shutdown();
+
+    assertFalse(clients.acquire());
+  }
+
+  private HttpProxyCacheServerClients newClients(long sourceLingerTime, long maxBackgroundCompletionSize) {
+    Config config =
+        new Config(
+            folder.getRoot(),
+            new Md5FileNameGenerator(),
+            new UnlimitedDiskUsage(),
+            new NoSourceInfoStorage(),
+            new InheritedHeadersInjector(new EmptyHeadersInjector()),
+            false,
+            0,
+            64 * 1024,
+            null,
+            sourceLingerTime,
+            maxBackgroundCompletionSize,
+            0,
+            0,
+            url -> url,
+            null,
+            null);
+    String url = server.url();
+    HttpProxyCacheServerClients clients =
+        new HttpProxyCacheServerClients(
+            url, url, config, scheduler, registry, new ProgressDispatcher(), null);
+    registry.put(url, clients);
+    return clients;
+  }
+
+  private static void prefetch(HttpProxyCacheServerClients clients, long end, boolean foreground)
+      throws Exception {
+    assertTrue(clients.acquire());
+    try {
+      clients.prefetch(end, foreground, new AtomicBoolean());
+    } finally {
+      clients.release();
+    }
+  }
+
+  private void waitForRemoval() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (registry.containsKey(server.url()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertFalse(registry.containsKey(server.url()));
+  }
+
+  private File cacheFile() {
+    return new File(folder.getRoot(), new Md5FileNameGenerator().generate(server.url()));
+  }
+
+  private static byte[] newData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+
+  /** Http server that sends data by small portions, so download lasts long enough to be observed. */
+  private static final class SlowServer {
+    private final byte[] data;
+    private final int portionSize;
+    private final long portionDelay;
+    private final ServerSocket serverSocket;
+    final AtomicInteger requests = new AtomicInteger();
+
+    SlowServer(byte[] data, int portionSize, long portionDelay) throws IOException {
+      this.data = data;
+      this.portionSize = portionSize;
+      this.portionDelay = portionDelay;
+      this.serverSocket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+      Thread acceptThread = new Thread(this::accept, "Slow server");
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+    }
+
+    String url() {
+      return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/video.mp4";
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          Socket socket = serverSocket.accept();
+          Thread thread = new Thread(() -> serve(socket), "Slow server connection");
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException closed) {
+      }
+    }
+
+    private void serve(Socket socket) {
+      try {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        int offset = 0;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+          String header = line.toLowerCase(Locale.US);
+          if (header.startsWith("range: bytes=")) {
+            offset = Integer.parseInt(header.substring(13, header.indexOf('-', 13)));
+          }
+        }
+        requests.incrementAndGet();
+        OutputStream out = socket.getOutputStream();
+        String status = offset > 0 ? "206 Partial Content" : "200 OK";
+        String headers =
+            "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: video/mp4\r\n"
+                + "Content-Length: " + (data.length - offset) + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(headers.getBytes("US-ASCII"));
+        for (int position = offset; position < data.length; position += portionSize) {
+          out.write(data, position, Math.min(portionSize, data.length - position));
+          out.flush();
+          Thread.sleep(portionDelay);
+        }
+      } catch (IOException | InterruptedException closed) {
+      } finally {
+        try {
+          socket.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.danikula.videocache.file.FileCache;
+import com.danikula.videocache.sourcestorage.SourceInfoStorage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HttpProxyCacheTest {
+  private static final String URL = "http://host/video.mp4";
+  private static final byte[] DATA = "0123456789".getBytes();
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private HttpProxyCache proxyCache;
+
+  @Before
+  public void before() throws Exception {
+    FileCache cache = new FileCache(new File(folder.getRoot(), "video.mp4"));
+    cache.append(DATA, DATA.length);
+    cache.complete();
+    HttpUrlSource source =
+        new HttpUrlSource(URL, new KnownSourceInfoStorage(new SourceInfo(URL, DATA.length, "video/mp4")));
+    proxyCache = new HttpProxyCache(source, cache);
+  }
+
+  @Test
+  public void servesWholeContent() throws Exception {
+    String response = process("GET /video HTTP/1.1\n");
+
+    assertTrue(response.startsWith("HTTP/1.1 200 OK\n"));
+    assertTrue(response.contains("Content-Length: 10\n"));
+    assertTrue(response.endsWith("\n\n0123456789"));
+  }
+
+  @Test
+  public void servesOpenRange() throws Exception {
+    String response = process("GET /video HTTP/1.1\nRange: bytes=4-\n");
+
+    assertTrue(response.startsWith("HTTP/1.1 206 PARTIAL CONTENT\n"));
+    assertTrue(response.contains("Content-Length: 6\n"));
+    assertTrue(response.contains("Content-Range: bytes 4-9/10\n"));
+    assertTrue(response.endsWith("\n\n456789"));
+  }
+
+  @Test
+  public void servesClosedRange() throws Exception {
+    String response = process("GET /video HTTP/1.1\nRange: bytes=2-4\n");
+
+    assertTrue(response.contains("Content-Length: 3\n"));
+    assertTrue(response.contains("Content-Range: bytes 2-4/10\n"));
+    assertTrue(response.endsWith("\n\n234"));
+  }
+
+  @Test
+  public void clampsRangeEndToContentLength() throws Exception {
+    String response = process("GET /video HTTP/1.1\nRange: bytes=5-100\n");
+
+    assertTrue(response.contains("Content-Length: 5\n"));
+    assertTrue(response.contains("Content-Range: bytes 5-9/10\n"));
+    assertTrue(response.endsWith("\n\n56789"));
+  }
+
+  private String process(String request) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    proxyCache.processRequest(new GetRequest(request), new StreamSocket(out));
+    return out.toString("UTF-8");
+  }
+
+  private static final class StreamSocket extends Socket {
+    private final OutputStream out;
+
+    StreamSocket(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public SocketChannel getChannel() {
+      return null;
+    }
+  }
+
+  private static final class KnownSourceInfoStorage implements SourceInfoStorage {
+    private final SourceInfo sourceInfo;
+
+    KnownSourceInfoStorage(SourceInfo sourceInfo) {
+      this.sourceInfo = sourceInfo;
+    }
+
+    @Override
+    public SourceInfo get(String url) {
+      return sourceInfo;
+    }
+
+    @Override
+    public void put(String url, SourceInfo sourceInfo) {}
+
+    @Override
+    public String getContentId(String url) {
+      return null;
+    }
+
+    @Override
+    public void putContentId(String url, String contentId) {}
+
+    @Override
+    public String getContentFile(String contentId) {
+      return null;
+    }
+
+    @Override
+    public void putContentFile(String contentId, String fileName) {}
+
+    @Override
+    public void release() {}
+  }
+}
@@ -0,0 +1,259 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefetchSchedulerTest {
+  private final BlockingQueue<StartedFetch> startedFetches = new LinkedBlockingQueue<>();
+  private final AtomicInteger runningFetches = new AtomicInteger();
+  private final AtomicInteger maxRunningFetches = new AtomicInteger();
+  // cancelled fetch keeps reading until it checks the flag
+  private volatile long stopDelayMs;
+  private HttpProxyCacheServer server;
+  private PrefetchScheduler scheduler;
+
+  @Before
+  public void before() throws ProxyCacheException {
+    server = mock(HttpProxyCacheServer.class);
+    // every fetch runs until it is cancelled or released by test
+    doAnswer(
+            invocation -> {
+              StartedFetch fetch =
+                  new StartedFetch(
+                      invocation.getArgument(0),
+                      invocation.getArgument(1),
+                      invocation.getArgument(2),
+                      invocation.getArgument(3));
+              int running = runningFetches.incrementAndGet();
+              maxRunningFetches.accumulateAndGet(running, Math::max);
+              startedFetches.add(fetch);
+              try {
+                while (!fetch.cancelled.get()
+                    && !fetch.released.await(10, TimeUnit.MILLISECONDS)) {
+                  // waiting
+                }
+                if (fetch.cancelled.get()) {
+                  Thread.sleep(stopDelayMs);
+                }
+              } finally {
+                runningFetches.decrementAndGet();
+              }
+              return null;
+            })
+        .when(server)
+        .prefetch(anyString(), anyLong(), anyBoolean(), any(AtomicBoolean.class));
+    scheduler = new PrefetchScheduler(server, 1);
+  }
+
+  @After
+  public void after() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void higherPriorityPreemptsRunningFetch() throws InterruptedException {
+    scheduler.prefetch("later", 1024, PrefetchScheduler.Priority.LATER);
+    StartedFetch later = takeStarted();
+
+    scheduler.prefetch("playing", 2048, PrefetchScheduler.Priority.PLAYING);
+    StartedFetch playing = takeStarted();
+
+    assertEquals("later", later.url);
+    assertFalse(later.foreground);
+    assertTrue(later.cancelled.get());
+    assertEquals("playing", playing.url);
+    assertTrue(playing.foreground);
+    assertTrue(scheduler.isScheduled("later"));
+  }
+
+  @Test
+  public void preemptingFetchWaitsForStoppedRun() throws InterruptedException {
+    stopDelayMs = 300;
+    scheduler.prefetch("later", 1024, PrefetchScheduler.Priority.LATER);
+    StartedFetch later = takeStarted();
+
+    scheduler.prefetch("playing", 2048, PrefetchScheduler.Priority.PLAYING);
+
+    assertTrue(later.cancelled.get());
+    assertNull(startedFetches.poll(100, TimeUnit.MILLISECONDS));
+    assertEquals("playing", takeStarted().url);
+    assertEquals(1, maxRunningFetches.get());
+  }
+
+  @Test
+  public void preemptedFetchIsResumedWhenSlotIsFree() throws InterruptedException {
+    scheduler.prefetch("later", 1024, PrefetchScheduler.Priority.LATER);
+    takeStarted();
+    scheduler.prefetch("playing", 2048, PrefetchScheduler.Priority.PLAYING);
+    StartedFetch playing = takeStarted();
+
+    playing.released.countDown();
+    StartedFetch resumed = takeStarted();
+
+    assertEquals("later", resumed.url);
+    assertEquals(1024, resumed.bytes);
+    assertFalse(resumed.cancelled.get());
+    assertFalse(scheduler.isScheduled("playing"));
+  }
+
+  @Test
+  public void lowerPriorityWaitsForRunningFetch() throws InterruptedException {
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT);
+    StartedFetch next = takeStarted();
+
+    scheduler.prefetch("later", 1024, PrefetchScheduler.Priority.LATER);
+
+    assertNull(startedFetches.poll(100, TimeUnit.MILLISECONDS));
+    assertFalse(next.cancelled.get());
+    next.released.countDown();
+    assertEquals("later", takeStarted().url);
+  }
+
+  @Test
+  public void extendedFetchIsRequeuedAfterCompletion() throws InterruptedException {
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT);
+    StartedFetch first = takeStarted();
+
+    scheduler.prefetch("next", 4096, PrefetchScheduler.Priority.NEXT);
+    first.released.countDown();
+    StartedFetch second = takeStarted();
+
+    assertEquals(1024, first.bytes);
+    assertEquals("next", second.url);
+    assertEquals(4096, second.bytes);
+  }
+
+  @Test
+  public void cancelStopsFetchAndCallsBack() throws InterruptedException {
+    AtomicInteger finished = new AtomicInteger();
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT, finished::incrementAndGet);
+    StartedFetch fetch = takeStarted();
+
+    scheduler.cancel("next");
+
+    assertTrue(fetch.cancelled.get());
+    assertFalse(scheduler.isScheduled("next"));
+    assertEquals(1, finished.get());
+  }
+
+  @Test
+  public void cancellingOneRequestKeepsOtherRequestsOfUrl() throws InterruptedException {
+    AtomicInteger firstFinished = new AtomicInteger();
+    AtomicInteger secondFinished = new AtomicInteger();
+    Runnable first = firstFinished::incrementAndGet;
+    Runnable second = secondFinished::incrementAndGet;
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT, first);
+    StartedFetch fetch = takeStarted();
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT, second);
+
+    scheduler.cancel("next", first);
+
+    assertEquals(1, firstFinished.get());
+    assertEquals(0, secondFinished.get());
+    assertFalse(fetch.cancelled.get());
+    assertTrue(scheduler.isScheduled("next"));
+
+    scheduler.cancel("next", second);
+
+    assertEquals(1, secondFinished.get());
+    assertTrue(fetch.cancelled.get());
+    assertFalse(scheduler.isScheduled("next"));
+  }
+
+  @Test
+  public void cancellingFinishedRequestDoesNothing() throws InterruptedException {
+    AtomicInteger finished = new AtomicInteger();
+    Runnable request = finished::incrementAndGet;
+    scheduler.prefetch("next", 1024, PrefetchScheduler.Priority.NEXT, request);
+    scheduler.cancel("next");
+
+    scheduler.cancel("next", request);
+
+    assertEquals(1, finished.get());
+  }
+
+  @Test
+  public void finishCallbackIsCalledOutsideOfScheduler() throws InterruptedException {
+    CountDownLatch finished = new CountDownLatch(1);
+    scheduler.prefetch(
+        "next",
+        1024,
+        PrefetchScheduler.Priority.NEXT,
+        () -> {
+          // scheduler used from another thread must not wait for callback's caller
+          Thread thread = new Thread(() -> scheduler.isScheduled("other"));
+          thread.start();
+          try {
+            thread.join(1000);
+          } catch (InterruptedException ignored) {
+          }
+          if (!thread.isAlive()) {
+            finished.countDown();
+          }
+        });
+    takeStarted();
+
+    scheduler.cancel("next");
+
+    assertTrue(finished.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void cachedUrlIsNotFetched() throws ProxyCacheException {
+    when(server.isCached("cached")).thenReturn(true);
+    AtomicInteger finished = new AtomicInteger();
+
+    scheduler.prefetch("cached", 1024, PrefetchScheduler.Priority.PLAYING, finished::incrementAndGet);
+
+    assertFalse(scheduler.isScheduled("cached"));
+    assertEquals(1, finished.get());
+    verify(server, never()).prefetch(anyString(), anyLong(), anyBoolean(), any(AtomicBoolean.class));
+  }
+
+  private StartedFetch takeStarted() throws InterruptedException {
+    StartedFetch fetch = startedFetches.poll(1, TimeUnit.SECONDS);
+    assertNotNull(fetch);
+    return fetch;
+  }
+
+  private static final class StartedFetch {
+    final String url;
+    final long bytes;
+    final boolean foreground;
+    final AtomicBoolean cancelled;
+    final CountDownLatch released = new CountDownLatch(1);
+
+    StartedFetch(String url, long bytes, boolean foreground, AtomicBoolean cancelled) {
+      this.url = url;
+      this.bytes = bytes;
+      this.foreground = foreground;
+      this.cancelled = cancelled;
+    }
+  }
+}
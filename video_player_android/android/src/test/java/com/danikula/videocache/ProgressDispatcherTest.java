@@ -0,0 +1,74 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ProgressDispatcherTest {
+  private static final File FILE = new File("video.mp4");
+
+  private final ProgressDispatcher dispatcher = new ProgressDispatcher();
+  private final List<String> delivered = new ArrayList<>();
+  private final CacheListener listener =
+      (file, url, availableBytes, totalBytes) ->
+          delivered.add(url + ":" + availableBytes + "/" + totalBytes);
+
+  @Test
+  public void deliversOnlyLatestProgressOfUrl() {
+    List<CacheListener> listeners = Collections.singletonList(listener);
+    dispatcher.post(FILE, "first", 10, 100, listeners);
+    dispatcher.post(FILE, "second", 5, -1, listeners);
+    dispatcher.post(FILE, "first", 20, 100, listeners);
+    dispatcher.post(FILE, "first", 30, 100, listeners);
+
+    dispatcher.run();
+
+    assertEquals(Arrays.asList("first:30/100", "second:5/-1"), delivered);
+  }
+
+  @Test
+  public void deliversProgressToAllListenersOfUrl() {
+    List<String> otherDelivered = new ArrayList<>();
+    CacheListener otherListener =
+        (file, url, availableBytes, totalBytes) -> otherDelivered.add(url + ":" + availableBytes);
+    dispatcher.post(FILE, "url", 10, 100, Arrays.asList(listener, otherListener));
+
+    dispatcher.run();
+
+    assertEquals(Collections.singletonList("url:10/100"), delivered);
+    assertEquals(Collections.singletonList("url:10"), otherDelivered);
+  }
+
+  @Test
+  public void deliversProgressOnce() {
+    dispatcher.post(FILE, "url", 10, 100, Collections.singletonList(listener));
+    dispatcher.run();
+    dispatcher.run();
+
+    assertEquals(Collections.singletonList("url:10/100"), delivered);
+
+    dispatcher.post(FILE, "url", 20, 100, Collections.singletonList(listener));
+    dispatcher.run();
+
+    assertEquals(Arrays.asList("url:10/100", "url:20/100"), delivered);
+  }
+
+  @Test
+  public void dropsPendingProgressWhenCancelled() {
+    dispatcher.post(FILE, "url", 10, 100, Collections.singletonList(listener));
+
+    dispatcher.cancel();
+    dispatcher.run();
+
+    assertEquals(Collections.emptyList(), delivered);
+  }
+}
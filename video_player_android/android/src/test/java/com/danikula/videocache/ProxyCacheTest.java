@@ -0,0 +1,154 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ProxyCacheTest {
+
+  @Test
+  public void readsSourceThroughWriteBuffer() throws Exception {
+    byte[] data = newData(1024 * 1024);
+    ByteArrayCache cache = new ByteArrayCache();
+    List<Long> progress = Collections.synchronizedList(new ArrayList<>());
+    ProxyCache proxyCache =
+        new ProxyCache(new ByteArraySource(data), cache, 64 * 1024) {
+          @Override
+          protected void onCacheProgress(long cacheAvailable, long sourceLength) {
+            progress.add(cacheAvailable);
+          }
+        };
+
+    assertArrayEquals(data, readAll(proxyCache, data.length));
+    waitForSourceReader(proxyCache);
+
+    assertTrue(cache.isCompleted());
+    assertEquals(data.length, cache.available());
+    assertEquals(Long.valueOf(data.length), progress.get(progress.size() - 1));
+    for (int i = 1; i < progress.size(); i++) {
+      assertTrue(progress.get(i) >= progress.get(i - 1));
+    }
+  }
+
+  @Test
+  public void shutdownStopsSourceReader() throws Exception {
+    byte[] data = newData(1024 * 1024);
+    ByteArrayCache cache = new ByteArrayCache();
+    ProxyCache proxyCache = new ProxyCache(new SlowSource(data), cache, 64 * 1024);
+    proxyCache.read(new byte[1024], 0, 1024);
+
+    proxyCache.shutdown();
+    waitForSourceReader(proxyCache);
+
+    assertFalse(cache.isCompleted());
+    assertTrue(cache.available() < data.length);
+  }
+
+  @Test
+  public void throttlesProgressOfKnownLength() {
+    List<Long> progress = new ArrayList<>();
+    ProxyCache proxyCache = newProgressRecorder(progress);
+
+    proxyCache.onCacheAvailable(50_000, 1_000_000);
+    // too early and less than 1% of source
+    proxyCache.onCacheAvailable(55_000, 1_000_000);
+    // too early
+    proxyCache.onCacheAvailable(100_000, 1_000_000);
+    // completion is always reported
+    proxyCache.onCacheAvailable(1_000_000, 1_000_000);
+
+    assertEquals(Arrays.asList(50_000L, 1_000_000L), progress);
+  }
+
+  @Test
+  public void reportsProgressWhenIntervalIsOver() throws Exception {
+    List<Long> progress = new ArrayList<>();
+    ProxyCache proxyCache = newProgressRecorder(progress);
+
+    proxyCache.onCacheAvailable(50_000, 1_000_000);
+    Thread.sleep(150);
+    // less than 1% of source
+    proxyCache.onCacheAvailable(55_000, 1_000_000);
+    proxyCache.onCacheAvailable(60_000, 1_000_000);
+
+    assertEquals(Arrays.asList(50_000L, 60_000L), progress);
+  }
+
+  @Test
+  public void throttlesProgressOfUnknownLengthByData() throws Exception {
+    List<Long> progress = new ArrayList<>();
+    ProxyCache proxyCache = newProgressRecorder(progress);
+
+    proxyCache.onCacheAvailable(1_000_000, -1);
+    Thread.sleep(150);
+    proxyCache.onCacheAvailable(1_000_000 + 256 * 1024, -1);
+    proxyCache.onCacheAvailable(1_000_000 + 512 * 1024, -1);
+
+    assertEquals(Arrays.asList(1_000_000L, 1_000_000L + 512 * 1024), progress);
+  }
+
+  private static ProxyCache newProgressRecorder(List<Long> progress) {
+    return new ProxyCache(new ByteArraySource(new byte[0]), new ByteArrayCache(), 0) {
+      @Override
+      protected void onCacheProgress(long cacheAvailable, long sourceLength) {
+        progress.add(cacheAvailable);
+      }
+    };
+  }
+
+  private static byte[] readAll(ProxyCache proxyCache, int length) throws ProxyCacheException {
+    byte[] result = new byte[length];
+    byte[] buffer = new byte[10_000];
+    int offset = 0;
+    int count;
+    while ((count = proxyCache.read(buffer, offset, buffer.length)) > 0) {
+      System.arraycopy(buffer, 0, result, offset, count);
+      offset += count;
+    }
+    assertEquals(length, offset);
+    return result;
+  }
+
+  private static void waitForSourceReader(ProxyCache proxyCache) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (proxyCache.isReadingSource() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(proxyCache.isReadingSource());
+  }
+
+  private static byte[] newData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+
+  private static final class SlowSource extends ByteArraySource {
+
+    SlowSource(byte[] data) {
+      super(data);
+    }
+
+    @Override
+    public int read(byte[] buffer) throws ProxyCacheException {
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new InterruptedProxyCacheException("Reading is interrupted", e);
+      }
+      return super.read(buffer);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class RuleBasedUrlCanonicalizerTest {
+
+  @Test
+  public void canonicalizerWithoutRulesKeepsUrl() {
+    String url = "https://cdn.com/video.mp4?token=abc";
+
+    assertSame(url, new RuleBasedUrlCanonicalizer.Builder().build().canonicalize(url));
+  }
+
+  @Test
+  public void dropsQueryParametersCaseInsensitively() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder().dropQueryParameters("token", "Expires").build();
+
+    assertEquals(
+        "https://cdn.com/video.mp4?quality=hd#t=10",
+        canonicalizer.canonicalize("https://cdn.com/video.mp4?TOKEN=abc&quality=hd&expires=1#t=10"));
+    assertEquals(
+        "https://cdn.com/video.mp4#t=10",
+        canonicalizer.canonicalize("https://cdn.com/video.mp4?token=abc&expires=1#t=10"));
+  }
+
+  @Test
+  public void dropsEscapedParameterName() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder().dropQueryParameters("__gda__").build();
+
+    assertEquals(
+        "https://cdn.com/video.mp4?id=1",
+        canonicalizer.canonicalize("https://cdn.com/video.mp4?%5F%5Fgda%5F%5F=1_abc&id=1"));
+  }
+
+  @Test
+  public void keepsUrlWithoutDroppedParameters() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder().dropQueryParameters("token").build();
+    String url = "https://cdn.com/video.mp4?tokens=1&&id=2";
+
+    assertSame(url, canonicalizer.canonicalize(url));
+  }
+
+  @Test
+  public void stripsFirstMatchingPathPrefix() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder()
+            .stripPathPrefix("/auth/")
+            .stripPathPrefix("/auth")
+            .build();
+
+    assertEquals(
+        "https://cdn.com/video.mp4?id=1",
+        canonicalizer.canonicalize("https://cdn.com/auth/video.mp4?id=1"));
+    assertEquals("https://cdn.com/other/video.mp4", canonicalizer.canonicalize("https://cdn.com/other/video.mp4"));
+  }
+
+  @Test
+  public void stripsPathPrefixOnlyAtSegmentBoundary() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder().stripPathPrefix("/foo").build();
+
+    assertEquals("https://cdn.com/bar.mp4", canonicalizer.canonicalize("https://cdn.com/foo/bar.mp4"));
+    assertEquals("https://cdn.com/?id=1", canonicalizer.canonicalize("https://cdn.com/foo?id=1"));
+    assertEquals(
+        "https://cdn.com/foobar/video.mp4",
+        canonicalizer.canonicalize("https://cdn.com/foobar/video.mp4"));
+  }
+
+  @Test
+  public void appliesRulesInOrder() {
+    UrlCanonicalizer canonicalizer =
+        new RuleBasedUrlCanonicalizer.Builder()
+            .dropQueryParameters("sig")
+            .stripPathPrefix("/token")
+            .rewrite("^https://edge\\d+\\.", "https://")
+            .rewrite("/token=[^/]*/", "/token/")
+            .build();
+
+    // prefix appears only after rewrites, so rewrites must run first
+    assertEquals(
+        "https://cdn.com/video.mp4?id=1",
+        canonicalizer.canonicalize("https://edge42.cdn.com/token=abc/video.mp4?sig=xyz&id=1"));
+  }
+}
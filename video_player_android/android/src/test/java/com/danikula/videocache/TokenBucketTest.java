@@ -0,0 +1,57 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+  @Test
+  public void burstWithinCapacityDoesNotWait() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(1000, 64 * 1024);
+    long start = System.nanoTime();
+
+    bucket.acquire(32 * 1024);
+    bucket.acquire(32 * 1024);
+
+    assertTrue(elapsedMillis(start) < 100);
+  }
+
+  @Test
+  public void debtIsPaidByWaiting() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(100_000, 10_000);
+    bucket.acquire(10_000);
+    long start = System.nanoTime();
+
+    bucket.acquire(20_000);
+
+    // 20 000 bytes at 100 000 bytes per second
+    assertTrue(elapsedMillis(start) >= 150);
+  }
+
+  @Test
+  public void tokensAreRefilledWithTime() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(100_000, 10_000);
+    bucket.acquire(10_000);
+    Thread.sleep(150);
+    long start = System.nanoTime();
+
+    bucket.acquire(10_000);
+
+    assertTrue(elapsedMillis(start) < 50);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsZeroRate() {
+    new TokenBucket(0, 1024);
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class WriteBehindBufferTest {
+
+  @Test
+  public void servesDataUntilItIsReleased() throws ProxyCacheException {
+    WriteBehindBuffer buffer = new WriteBehindBuffer(16, 100);
+    buffer.put(bytes(0, 10), 10);
+
+    byte[] chunk = new byte[4];
+    assertEquals(4, buffer.read(chunk, 103, 4));
+    assertArrayEquals(bytes(3, 4), chunk);
+    assertEquals(110, buffer.end());
+
+    buffer.release(5);
+
+    assertEquals(105, buffer.start());
+    assertEquals(-1, buffer.read(chunk, 104, 4));
+    assertEquals(-1, buffer.read(chunk, 110, 4));
+    assertEquals(2, buffer.read(chunk, 108, 4));
+  }
+
+  @Test
+  public void peeksContiguousDataAfterWrappingAround() throws ProxyCacheException {
+    WriteBehindBuffer buffer = new WriteBehindBuffer(8, 0);
+    byte[] chunk = new byte[8];
+    buffer.put(bytes(0, 6), 6);
+    assertEquals(6, buffer.peek(chunk));
+    buffer.release(6);
+
+    buffer.put(bytes(6, 6), 6);
+
+    byte[] client = new byte[4];
+    assertEquals(1, buffer.read(client, 7, 4));
+    assertEquals(7, client[0]);
+    assertEquals(4, buffer.read(client, 8, 4));
+    assertArrayEquals(bytes(8, 4), client);
+    assertEquals(2, buffer.peek(chunk));
+    assertArrayEquals(bytes(6, 2), Arrays.copyOf(chunk, 2));
+    buffer.release(2);
+    assertEquals(4, buffer.peek(chunk));
+    assertArrayEquals(bytes(8, 4), Arrays.copyOf(chunk, 4));
+  }
+
+  @Test
+  public void putWaitsForFreeSpace() throws Exception {
+    final WriteBehindBuffer buffer = new WriteBehindBuffer(4, 0);
+    final CountDownLatch putFinished = new CountDownLatch(1);
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                buffer.put(bytes(0, 6), 6);
+                putFinished.countDown();
+              } catch (ProxyCacheException e) {
+                fail(e.getMessage());
+              }
+            });
+    writer.start();
+
+    assertFalse(putFinished.await(100, TimeUnit.MILLISECONDS));
+    byte[] chunk = new byte[4];
+    assertEquals(4, buffer.peek(chunk));
+    buffer.release(4);
+    assertTrue(putFinished.await(1, TimeUnit.SECONDS));
+    assertEquals(2, buffer.peek(chunk));
+    assertArrayEquals(bytes(4, 2), Arrays.copyOf(chunk, 2));
+    writer.join();
+  }
+
+  @Test
+  public void peekReturnsEndOfDataWhenFinishedAndDrained() throws ProxyCacheException {
+    WriteBehindBuffer buffer = new WriteBehindBuffer(8, 0);
+    buffer.put(bytes(0, 3), 3);
+    buffer.finish();
+
+    byte[] chunk = new byte[8];
+    assertEquals(3, buffer.peek(chunk));
+    buffer.release(3);
+    buffer.awaitDrained();
+    assertEquals(-1, buffer.peek(chunk));
+  }
+
+  @Test
+  public void closedBufferRejectsData() throws ProxyCacheException {
+    WriteBehindBuffer buffer = new WriteBehindBuffer(8, 0);
+    buffer.put(bytes(0, 3), 3);
+
+    buffer.close();
+
+    assertFalse(buffer.put(bytes(0, 3), 3));
+    assertEquals(-1, buffer.peek(new byte[8]));
+  }
+
+  @Test
+  public void writeErrorIsThrownToSourceReader() throws ProxyCacheException {
+    final WriteBehindBuffer buffer = new WriteBehindBuffer(4, 0);
+    buffer.put(bytes(0, 4), 4);
+    final AtomicBoolean thrown = new AtomicBoolean();
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                buffer.put(bytes(4, 4), 4);
+              } catch (ProxyCacheException e) {
+                thrown.set(true);
+              }
+            });
+    writer.start();
+
+    buffer.fail(new IOException("No space left on device"));
+
+    try {
+      writer.join(1000);
+    } catch (InterruptedException e) {
+      fail("Interrupted");
+    }
+    assertTrue(thrown.get());
+    try {
+      buffer.awaitDrained();
+      fail("Write error must be rethrown");
+    } catch (ProxyCacheException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  private static byte[] bytes(int start, int count) {
+    byte[] data = new byte[count];
+    for (int i = 0; i < count; i++) {
+      data[i] = (byte) (start + i);
+    }
+    return data;
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockChecksumsTest {
+  private static final int BLOCK_SIZE = BlockChecksums.BLOCK_SIZE;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void verifiesPersistedBlocksOnceAfterReopening() throws IOException {
+    File file = new File(folder.getRoot(), "video.crc");
+    byte[] data = newData(BLOCK_SIZE * 2 + BLOCK_SIZE / 2);
+    BlockChecksums written = new BlockChecksums(file);
+    written.update(data, data.length);
+    written.complete();
+    written.close();
+
+    BlockChecksums checksums = new BlockChecksums(file);
+
+    assertEquals(3 * 4, file.length());
+    assertTrue(checksums.isVerificationNeeded(0));
+    assertTrue(checksums.verify(0, Arrays.copyOfRange(data, 0, BLOCK_SIZE), BLOCK_SIZE));
+    assertFalse(checksums.isVerificationNeeded(0));
+    byte[] tail = Arrays.copyOfRange(data, BLOCK_SIZE * 2, data.length);
+    assertTrue(checksums.verify(2, tail, tail.length));
+    assertFalse(checksums.isVerificationNeeded(3));
+    checksums.close();
+  }
+
+  @Test
+  public void detectsCorruptedBlock() throws IOException {
+    File file = new File(folder.getRoot(), "video.crc");
+    byte[] data = newData(BLOCK_SIZE);
+    BlockChecksums written = new BlockChecksums(file);
+    written.update(data, data.length);
+    written.close();
+
+    BlockChecksums checksums = new BlockChecksums(file);
+    data[100]++;
+
+    assertFalse(checksums.verify(0, data, data.length));
+    assertTrue(checksums.isVerificationNeeded(0));
+    checksums.close();
+  }
+
+  @Test
+  public void updatesByChunksCrossingBlocks() throws IOException {
+    byte[] data = newData(BLOCK_SIZE * 2);
+    File wholeFile = new File(folder.getRoot(), "whole.crc");
+    BlockChecksums whole = new BlockChecksums(wholeFile);
+    whole.update(data, data.length);
+    whole.close();
+
+    File chunkedFile = new File(folder.getRoot(), "chunked.crc");
+    BlockChecksums chunked = new BlockChecksums(chunkedFile);
+    int chunkSize = 10_000;
+    for (int offset = 0; offset < data.length; offset += chunkSize) {
+      byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + chunkSize));
+      chunked.update(chunk, chunk.length);
+    }
+    chunked.close();
+
+    assertEquals(2 * 4, chunkedFile.length());
+    BlockChecksums reopened = new BlockChecksums(chunkedFile);
+    assertTrue(reopened.verify(1, Arrays.copyOfRange(data, BLOCK_SIZE, data.length), BLOCK_SIZE));
+    reopened.close();
+  }
+
+  @Test
+  public void truncateDropsDataAfterLastFullBlock() throws IOException {
+    File file = new File(folder.getRoot(), "video.crc");
+    byte[] data = newData(BLOCK_SIZE * 3);
+    BlockChecksums written = new BlockChecksums(file);
+    written.update(data, data.length);
+    written.close();
+
+    BlockChecksums checksums = new BlockChecksums(file);
+    long trusted = checksums.truncate(BLOCK_SIZE * 2 - 1);
+
+    assertEquals(BLOCK_SIZE, trusted);
+    assertEquals(4, file.length());
+    assertTrue(checksums.isVerificationNeeded(0));
+    assertFalse(checksums.isVerificationNeeded(1));
+    checksums.close();
+  }
+
+  @Test
+  public void sidecarIsSharedByAllStatesOfDataFile() {
+    File dir = folder.getRoot();
+    File sidecar = new File(dir, "video.mp4" + BlockChecksums.EXTENSION);
+
+    assertEquals(sidecar, BlockChecksums.sidecarFor(new File(dir, "video.mp4")));
+    assertEquals(sidecar, BlockChecksums.sidecarFor(new File(dir, "video.mp4" + FileCache.TEMP_POSTFIX)));
+    assertEquals(
+        sidecar, BlockChecksums.sidecarFor(new File(dir, "video.mp4" + FileCache.PREALLOCATED_POSTFIX)));
+    assertTrue(BlockChecksums.isSidecar(sidecar));
+    assertFalse(BlockChecksums.isSidecar(new File(dir, "video.mp4")));
+  }
+
+  private static byte[] newData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
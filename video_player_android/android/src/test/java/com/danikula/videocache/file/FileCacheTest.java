@@ -0,0 +1,389 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.danikula.videocache.CorruptedCacheException;
+import com.danikula.videocache.ProxyCacheException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileCacheTest {
+  private static final int BLOCK_SIZE = BlockChecksums.BLOCK_SIZE;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsVerifiedData() throws Exception {
+    byte[] data = newData(BLOCK_SIZE * 2 + 100);
+    File file = writeCompleted(data, true);
+
+    FileCache cache = newCache(file, true);
+    byte[] read = readAll(cache, data.length);
+    cache.close();
+
+    assertArrayEquals(data, read);
+  }
+
+  @Test
+  public void repairsCorruptedBlocks() throws Exception {
+    byte[] data = newData(BLOCK_SIZE * 3);
+    File file = writeCompleted(data, true);
+    corrupt(file, 10);
+    corrupt(file, BLOCK_SIZE * 2 + 10);
+
+    FileCache cache = newCache(file, true);
+    CorruptedCacheException first = readCorrupted(cache, 0);
+    cache.repair(first.offset, Arrays.copyOfRange(data, 0, BLOCK_SIZE), first.length);
+    CorruptedCacheException second = readCorrupted(cache, BLOCK_SIZE * 2);
+    cache.repair(second.offset, Arrays.copyOfRange(data, BLOCK_SIZE * 2, data.length), second.length);
+
+    byte[] read = new byte[100];
+    assertEquals(100, cache.read(read, 0, 100));
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 100), read);
+    assertEquals(100, cache.read(read, BLOCK_SIZE * 2, 100));
+    assertArrayEquals(Arrays.copyOfRange(data, BLOCK_SIZE * 2, BLOCK_SIZE * 2 + 100), read);
+    cache.close();
+  }
+
+  @Test
+  public void rejectsRepairWithWrongData() throws Exception {
+    byte[] data = newData(BLOCK_SIZE);
+    File file = writeCompleted(data, true);
+    corrupt(file, 10);
+    FileCache cache = newCache(file, true);
+    CorruptedCacheException corrupted = readCorrupted(cache, 0);
+
+    try {
+      cache.repair(corrupted.offset, newData(BLOCK_SIZE + 1), corrupted.length);
+      fail("Repair with wrong data must fail");
+    } catch (ProxyCacheException e) {
+      // expected
+    }
+    readCorrupted(cache, 0);
+    cache.close();
+  }
+
+  @Test
+  public void preallocatedFileIsTruncatedOnClose() throws Exception {
+    File file = new File(folder.getRoot(), "video.mp4");
+    File tempFile = new File(folder.getRoot(), "video.mp4" + FileCache.TEMP_POSTFIX);
+    File preallocatedFile = new File(folder.getRoot(), "video.mp4" + FileCache.PREALLOCATED_POSTFIX);
+    byte[] data = newData(1000);
+    FileCache cache = newCache(file, false);
+
+    cache.preallocate(10_000);
+    cache.append(data, data.length);
+
+    assertEquals(preallocatedFile, cache.getFile());
+    assertEquals(data.length, cache.available());
+    assertFalse(cache.isCompleted());
+    cache.close();
+    assertFalse(preallocatedFile.exists());
+    assertEquals(data.length, tempFile.length());
+
+    FileCache reopened = newCache(file, false);
+    assertEquals(data.length, reopened.available());
+    assertArrayEquals(data, readAll(reopened, data.length));
+    reopened.close();
+  }
+
+  @Test
+  public void preallocatedFileIsTrimmedOnCompletion() throws Exception {
+    File file = new File(folder.getRoot(), "video.mp4");
+    byte[] data = newData(1000);
+    FileCache cache = newCache(file, false);
+
+    cache.preallocate(10_000);
+    cache.append(data, data.length);
+    cache.complete();
+    cache.close();
+
+    assertEquals(data.length, file.length());
+    assertTrue(cache.isCompleted());
+  }
+
+  @Test
+  public void preallocatedFileLeftByCrashIsDropped() throws Exception {
+    File file = new File(folder.getRoot(), "video.mp4");
+    File preallocatedFile = new File(folder.getRoot(), "video.mp4" + FileCache.PREALLOCATED_POSTFIX);
+    RandomAccessFile leftFile = new RandomAccessFile(preallocatedFile, "rw");
+    leftFile.setLength(10_000);
+    leftFile.close();
+
+    FileCache cache = newCache(file, false);
+
+    assertEquals(0, cache.available());
+    assertFalse(preallocatedFile.exists());
+    assertEquals(new File(folder.getRoot(), "video.mp4" + FileCache.TEMP_POSTFIX), cache.getFile());
+    cache.close();
+  }
+
+  @Test
+  public void preallocatedFileLeftByCrashKeepsVerifiedBlocks() throws Exception {
+    File file = new File(folder.getRoot(), "video.mp4");
+    byte[] data = newData(BLOCK_SIZE * 2 + 100);
+    FileCache cache = newCache(file, true);
+    cache.preallocate(BLOCK_SIZE * 4);
+    cache.append(data, data.length);
+    // process dies without closing cache, checksums of full blocks are already stored
+    File preallocatedFile = cache.getFile();
+
+    FileCache restored = newCache(file, true);
+
+    assertFalse(preallocatedFile.exists());
+    assertEquals(BLOCK_SIZE * 2, restored.available());
+    assertArrayEquals(Arrays.copyOfRange(data, 0, BLOCK_SIZE * 2), readAll(restored, BLOCK_SIZE * 2));
+    restored.close();
+  }
+
+  @Test
+  public void interruptedWriterDoesNotBreakReaders() throws Exception {
+    byte[] data = newData(50 * 1000);
+    FileCache cache = newCache(new File(folder.getRoot(), "video.mp4"), false);
+    AtomicReference<Throwable> writerError = new AtomicReference<>();
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                for (int offset = 0; offset < data.length; offset += 1000) {
+                  if (offset == 10 * 1000) {
+                    Thread.currentThread().interrupt();
+                  }
+                  cache.append(Arrays.copyOfRange(data, offset, offset + 1000), 1000);
+                }
+              } catch (Throwable e) {
+                writerError.set(e);
+              }
+            });
+    byte[] read = new byte[data.length];
+    byte[] buffer = new byte[777];
+    int offset = 0;
+
+    writer.start();
+    while (offset < data.length && (writer.isAlive() || offset < cache.available())) {
+      int count = cache.read(buffer, offset, buffer.length);
+      if (count > 0) {
+        System.arraycopy(buffer, 0, read, offset, count);
+        offset += count;
+      }
+    }
+    writer.join();
+
+    assertNull(writerError.get());
+    assertEquals(data.length, offset);
+    assertArrayEquals(data, read);
+    cache.close();
+  }
+
+  @Test
+  public void closeKeepsFileOpenedForRunningTransfer() throws Exception {
+    byte[] data = newData(100 * 1000);
+    FileCache cache = newCache(new File(folder.getRoot(), "video.mp4"), false);
+    cache.append(data, data.length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel target =
+        new WritableByteChannel() {
+          @Override
+          public int write(ByteBuffer source) throws IOException {
+            try {
+              cache.close();
+            } catch (ProxyCacheException e) {
+              throw new IOException(e);
+            }
+            int count = source.remaining();
+            byte[] bytes = new byte[count];
+            source.get(bytes);
+            out.write(bytes);
+            return count;
+          }
+
+          @Override
+          public boolean isOpen() {
+            return true;
+          }
+
+          @Override
+          public void close() {}
+        };
+
+    long transferred = 0;
+    while (transferred < data.length) {
+      transferred += cache.transferTo(transferred, data.length - transferred, target);
+    }
+
+    assertArrayEquals(data, out.toByteArray());
+    try {
+      cache.read(new byte[100], 0, 100);
+      fail("Closed cache must not be read");
+    } catch (ProxyCacheException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void completedFileIsReadThroughMapping() throws Exception {
+    byte[] data = newData(100 * 1000);
+    File file = new File(folder.getRoot(), "video.mp4");
+    FileCache cache = new FileCache(file, new UnlimitedDiskUsage(), false, data.length, null);
+    cache.append(data, data.length);
+
+    cache.complete();
+
+    assertArrayEquals(data, readAll(cache, data.length));
+    assertArrayEquals(data, transferAll(cache, data.length));
+    byte[] tail = new byte[1000];
+    assertEquals(500, cache.read(tail, data.length - 500, tail.length));
+    assertEquals(-1, cache.read(tail, data.length, tail.length));
+    cache.close();
+
+    FileCache reopened = new FileCache(file, new UnlimitedDiskUsage(), false, data.length, null);
+    assertArrayEquals(data, transferAll(reopened, data.length));
+    reopened.close();
+  }
+
+  @Test
+  public void fileLargerThanMappingLimitIsReadFromChannel() throws Exception {
+    byte[] data = newData(100 * 1000);
+    File file = writeCompleted(data, false);
+
+    FileCache cache = new FileCache(file, new UnlimitedDiskUsage(), false, data.length - 1, null);
+
+    assertArrayEquals(data, readAll(cache, data.length));
+    assertArrayEquals(data, transferAll(cache, data.length));
+    cache.close();
+  }
+
+  @Test
+  public void transfersVerifiedDataByBlocks() throws Exception {
+    byte[] data = newData(BLOCK_SIZE * 3 + 100);
+    File file = writeCompleted(data, true);
+    FileCache cache = newCache(file, true);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel target = Channels.newChannel(out);
+
+    long transferred = cache.transferTo(10, Integer.MAX_VALUE, target);
+
+    assertEquals(BLOCK_SIZE - 10, transferred);
+    assertArrayEquals(Arrays.copyOfRange(data, 10, BLOCK_SIZE), out.toByteArray());
+    assertArrayEquals(data, transferAll(cache, data.length));
+    cache.close();
+  }
+
+  @Test
+  public void onlyBlocksReadAgainGetToMemory() throws Exception {
+    byte[] data = newData(BLOCK_SIZE * 3);
+    File file = writeCompleted(data, false);
+    MemoryBlockCache memoryCache = new MemoryBlockCache(BLOCK_SIZE * 8, 200);
+    FileCache cache = new FileCache(file, new UnlimitedDiskUsage(), false, 0, memoryCache);
+
+    assertArrayEquals(data, transferAll(cache, data.length));
+    assertEquals(0, memoryCache.size());
+
+    Thread.sleep(300);
+    byte[] buffer = new byte[100];
+    assertEquals(100, cache.read(buffer, BLOCK_SIZE + 10, buffer.length));
+    assertEquals(BLOCK_SIZE, memoryCache.size());
+    assertArrayEquals(Arrays.copyOfRange(data, BLOCK_SIZE + 10, BLOCK_SIZE + 110), buffer);
+    assertArrayEquals(data, transferAll(cache, data.length));
+    assertEquals(BLOCK_SIZE * 3, memoryCache.size());
+    cache.close();
+  }
+
+  @Test
+  public void blocksOfDownloadingFileDoNotGetToMemory() throws Exception {
+    byte[] data = newData(BLOCK_SIZE * 2);
+    MemoryBlockCache memoryCache = new MemoryBlockCache(BLOCK_SIZE * 8, 0);
+    FileCache cache =
+        new FileCache(new File(folder.getRoot(), "video.mp4"), new UnlimitedDiskUsage(), false, 0, memoryCache);
+    cache.append(data, data.length);
+
+    assertArrayEquals(data, readAll(cache, data.length));
+    assertArrayEquals(data, readAll(cache, data.length));
+
+    assertEquals(0, memoryCache.size());
+    cache.close();
+  }
+
+  private static byte[] transferAll(FileCache cache, int length) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WritableByteChannel target = Channels.newChannel(out);
+    long offset = 0;
+    long count;
+    while ((count = cache.transferTo(offset, 7777, target)) > 0) {
+      offset += count;
+    }
+    assertEquals(length, offset);
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(FileCache cache, int length) throws ProxyCacheException {
+    byte[] result = new byte[length];
+    byte[] buffer = new byte[10_000];
+    int offset = 0;
+    int count;
+    while ((count = cache.read(buffer, offset, buffer.length)) > 0) {
+      System.arraycopy(buffer, 0, result, offset, count);
+      offset += count;
+    }
+    assertEquals(length, offset);
+    return result;
+  }
+
+  private File writeCompleted(byte[] data, boolean verifyChecksums) throws Exception {
+    File file = new File(folder.getRoot(), "video.mp4");
+    FileCache cache = newCache(file, verifyChecksums);
+    cache.append(data, data.length);
+    cache.complete();
+    cache.close();
+    return file;
+  }
+
+  private FileCache newCache(File file, boolean verifyChecksums) throws ProxyCacheException {
+    return new FileCache(file, new UnlimitedDiskUsage(), verifyChecksums, 0, null);
+  }
+
+  private CorruptedCacheException readCorrupted(FileCache cache, long offset) throws ProxyCacheException {
+    try {
+      cache.read(new byte[100], offset, 100);
+    } catch (CorruptedCacheException e) {
+      assertEquals(offset / BLOCK_SIZE * BLOCK_SIZE, e.offset);
+      return e;
+    }
+    throw new AssertionError("Block at " + offset + " must be corrupted");
+  }
+
+  private static void corrupt(File file, long offset) throws Exception {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    randomAccessFile.seek(offset);
+    int value = randomAccessFile.read();
+    randomAccessFile.seek(offset);
+    randomAccessFile.write(value + 1);
+    randomAccessFile.close();
+  }
+
+  private static byte[] newData(int length) {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
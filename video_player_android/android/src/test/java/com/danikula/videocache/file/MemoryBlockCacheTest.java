@@ -0,0 +1,106 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package com.danikula.videocache.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class MemoryBlockCacheTest {
+  private static final int BLOCK_SIZE = MemoryBlockCache.BLOCK_SIZE;
+  private static final File FILE = new File("video.mp4");
+
+  @Test
+  public void blockIsHotWhenItIsReadAgain() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE * 4, 0);
+
+    assertFalse(cache.onMiss(FILE, 0));
+    assertFalse(cache.onMiss(FILE, 1));
+    assertTrue(cache.onMiss(FILE, 0));
+    assertFalse(cache.onMiss(new File("other.mp4"), 1));
+  }
+
+  @Test
+  public void readsOfOnePassDoNotMakeBlockHot() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE * 4);
+
+    assertFalse(cache.onMiss(FILE, 0));
+    assertFalse(cache.onMiss(FILE, 0));
+    assertFalse(cache.onMiss(FILE, 0));
+  }
+
+  @Test
+  public void removedFileIsColdAgain() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE * 4, 0);
+    cache.onMiss(FILE, 0);
+
+    cache.remove(FILE);
+
+    assertFalse(cache.onMiss(FILE, 0));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedBlocks() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE * 2);
+    put(cache, 0);
+    put(cache, 1);
+    cache.release(cache.acquire(FILE, 0));
+
+    put(cache, 2);
+
+    assertEquals(BLOCK_SIZE * 2, cache.size());
+    assertNull(cache.acquire(FILE, 1));
+    assertNotNull(cache.acquire(FILE, 0));
+    assertNotNull(cache.acquire(FILE, 2));
+  }
+
+  @Test
+  public void bufferOfEvictedBlockIsReusedAfterItsReadersRelease() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE);
+    ByteBuffer first = cache.allocate(100);
+    first.put(new byte[100]).flip();
+    MemoryBlockCache.Block block = cache.put(FILE, 0, first);
+
+    put(cache, 1);
+    ByteBuffer whileRead = cache.allocate(100);
+    cache.release(block);
+    ByteBuffer afterRead = cache.allocate(100);
+
+    assertNotSame(first, whileRead);
+    assertSame(first, afterRead);
+    assertEquals(0, afterRead.position());
+    assertEquals(100, afterRead.limit());
+  }
+
+  @Test
+  public void blockDataIsIndependentForEveryReader() {
+    MemoryBlockCache cache = new MemoryBlockCache(BLOCK_SIZE);
+    put(cache, 0);
+
+    MemoryBlockCache.Block block = cache.acquire(FILE, 0);
+    ByteBuffer data = block.data();
+    data.position(10);
+
+    assertEquals(0, block.data().position());
+    assertEquals(BLOCK_SIZE, block.data().limit());
+    cache.release(block);
+  }
+
+  private static MemoryBlockCache.Block put(MemoryBlockCache cache, int block) {
+    ByteBuffer data = cache.allocate(BLOCK_SIZE);
+    data.put(new byte[BLOCK_SIZE]).flip();
+    MemoryBlockCache.Block cached = cache.put(FILE, block, data);
+    cache.release(cached);
+    return cached;
+  }
+}
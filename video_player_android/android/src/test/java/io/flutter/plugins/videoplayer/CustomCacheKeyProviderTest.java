@@ -0,0 +1,83 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import android.net.Uri;
+import com.danikula.videocache.RuleBasedUrlCanonicalizer;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class CustomCacheKeyProviderTest {
+  private static final String MEDIA_URL = "https://cdn.com/video/master.m3u8?hdnts=exp=1~hmac=abc";
+
+  @Before
+  public void before() {
+    CacheUrlCanonicalizer.INSTANCE.setRules(
+        new RuleBasedUrlCanonicalizer.Builder()
+            .dropQueryParameters(CacheUrlCanonicalizer.DEFAULT_DROPPED_QUERY_PARAMETERS)
+            .build());
+  }
+
+  @Test
+  public void mediaUrlIsCachedUnderUserKey() {
+    CustomCacheKeyProvider provider = new CustomCacheKeyProvider("movie", MEDIA_URL);
+
+    assertEquals("movie", provider.buildCacheKey(newDataSpec(MEDIA_URL)));
+    // new token and fragment don't make it another resource
+    assertEquals(
+        "movie",
+        provider.buildCacheKey(
+            newDataSpec("https://cdn.com/video/master.m3u8?hdnts=exp=2~hmac=def#t=10")));
+  }
+
+  @Test
+  public void otherUrlsAreCachedInNamespaceOfUserKey() {
+    CustomCacheKeyProvider provider = new CustomCacheKeyProvider("movie", MEDIA_URL);
+
+    assertEquals(
+        "movie#https://cdn.com/video/720p/segment1.ts",
+        provider.buildCacheKey(newDataSpec("https://cdn.com/video/720p/segment1.ts?hdnts=exp=1")));
+    assertEquals(
+        "movie#https://cdn.com/video/720p/segment2.ts?part=1",
+        provider.buildCacheKey(newDataSpec("https://cdn.com/video/720p/segment2.ts?part=1")));
+  }
+
+  @Test
+  public void canonicalUrlIsKeyWithoutUserKey() {
+    CustomCacheKeyProvider provider = new CustomCacheKeyProvider(null, MEDIA_URL);
+
+    assertEquals("https://cdn.com/video/master.m3u8", provider.buildCacheKey(newDataSpec(MEDIA_URL)));
+    assertEquals(
+        "https://cdn.com/video/720p/segment1.ts",
+        provider.buildCacheKey(newDataSpec("https://cdn.com/video/720p/segment1.ts#t=5")));
+  }
+
+  @Test
+  public void keyOfDataSpecHasPrecedence() {
+    CustomCacheKeyProvider provider = new CustomCacheKeyProvider("movie", MEDIA_URL);
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(Uri.parse(MEDIA_URL)).setKey("explicit").build();
+
+    assertEquals("explicit", provider.buildCacheKey(dataSpec));
+  }
+
+  @Test
+  public void mediaKeyMatchesKeyOfMediaUrl() {
+    assertEquals("movie", CustomCacheKeyProvider.getMediaKey("movie", MEDIA_URL));
+    assertEquals(
+        new CustomCacheKeyProvider(null, MEDIA_URL).buildCacheKey(newDataSpec(MEDIA_URL)),
+        CustomCacheKeyProvider.getMediaKey(null, MEDIA_URL));
+  }
+
+  private static DataSpec newDataSpec(String url) {
+    return new DataSpec(Uri.parse(url));
+  }
+}
@@ -0,0 +1,91 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.android.exoplayer2.ExoPlayer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ExoPlayerPoolTest {
+  private final ExoPlayerPool.PlayerFactory factory = bufferOptions -> mock(ExoPlayer.class);
+
+  @Test
+  public void reusesResetPlayerWithSameBufferOptions() {
+    ExoPlayerPool pool = new ExoPlayerPool(2, factory);
+    Map<String, Object> bufferOptions = new HashMap<>();
+    bufferOptions.put("minBufferMS", 1000);
+    bufferOptions.put("maxBufferMS", 5000);
+    ExoPlayer player = pool.acquire(bufferOptions);
+
+    pool.release(bufferOptions, player);
+
+    verify(player).stop();
+    verify(player).clearMediaItems();
+    verify(player).clearVideoSurface();
+    verify(player, never()).release();
+    Map<String, Object> sameOptions = new HashMap<>();
+    sameOptions.put("maxBufferMS", 5000);
+    sameOptions.put("minBufferMS", 1000);
+    assertSame(player, pool.acquire(sameOptions));
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void doesNotReusePlayerWithOtherBufferOptions() {
+    ExoPlayerPool pool = new ExoPlayerPool(2, factory);
+    ExoPlayer player = pool.acquire(null);
+
+    pool.release(null, player);
+
+    assertNotSame(player, pool.acquire(Collections.singletonMap("minBufferMS", 1000)));
+    assertSame(player, pool.acquire(Collections.emptyMap()));
+  }
+
+  @Test
+  public void releasesOldestPlayerWhenFull() {
+    ExoPlayerPool pool = new ExoPlayerPool(1, factory);
+    ExoPlayer first = pool.acquire(null);
+    ExoPlayer second = pool.acquire(null);
+
+    pool.release(null, first);
+    pool.release(null, second);
+
+    verify(first).release();
+    verify(second, never()).release();
+    assertEquals(1, pool.getIdleCount());
+  }
+
+  @Test
+  public void releasesPlayerWithoutCapacity() {
+    ExoPlayerPool pool = new ExoPlayerPool(0, factory);
+    ExoPlayer player = pool.acquire(null);
+
+    pool.release(null, player);
+
+    verify(player).release();
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void clearReleasesIdlePlayers() {
+    ExoPlayerPool pool = new ExoPlayerPool(2, factory);
+    ExoPlayer player = pool.acquire(null);
+    pool.release(null, player);
+
+    pool.clear();
+
+    verify(player).release();
+    assertEquals(0, pool.getIdleCount());
+  }
+}
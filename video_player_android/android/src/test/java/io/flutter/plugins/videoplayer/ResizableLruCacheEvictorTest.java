@@ -0,0 +1,79 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResizableLruCacheEvictorTest {
+  private final ResizableLruCacheEvictor evictor = new ResizableLruCacheEvictor(1000);
+  private final List<String> removedKeys = new ArrayList<>();
+  private Cache cache;
+
+  @Before
+  public void before() {
+    cache = mock(Cache.class);
+    // cache reports removal back to its evictor
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedKeys.add(span.key);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any(CacheSpan.class));
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedSpansOverLimit() {
+    evictor.onSpanAdded(cache, newSpan("first", 400, 1));
+    evictor.onSpanAdded(cache, newSpan("second", 400, 2));
+    evictor.onSpanTouched(cache, newSpan("first", 400, 1), newSpan("first", 400, 3));
+
+    evictor.onSpanAdded(cache, newSpan("third", 400, 4));
+
+    assertEquals(Collections.singletonList("second"), removedKeys);
+  }
+
+  @Test
+  public void shrinkingEvictsSpansAtOnce() {
+    evictor.onSpanAdded(cache, newSpan("first", 300, 1));
+    evictor.onSpanAdded(cache, newSpan("second", 300, 2));
+    evictor.onSpanAdded(cache, newSpan("third", 300, 3));
+
+    evictor.setMaxBytes(cache, 400);
+
+    assertEquals(400, evictor.getMaxBytes());
+    assertEquals(Arrays.asList("first", "second"), removedKeys);
+  }
+
+  @Test
+  public void growingKeepsSpansAndMakesRoomForMore() {
+    evictor.onSpanAdded(cache, newSpan("first", 600, 1));
+
+    evictor.setMaxBytes(cache, 2000);
+    evictor.onStartFile(cache, "second", 0, 1000);
+    evictor.onSpanAdded(cache, newSpan("second", 1000, 2));
+
+    assertEquals(Collections.emptyList(), removedKeys);
+  }
+
+  private static CacheSpan newSpan(String key, long length, long lastTouchTimestamp) {
+    return new CacheSpan(key, 0, length, lastTouchTimestamp, new File(key));
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import java.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowSystemClock;
+
+@RunWith(RobolectricTestRunner.class)
+public class SharedBandwidthMeterTest {
+  private SharedPreferences preferences;
+  private int networkType = C.NETWORK_TYPE_WIFI;
+
+  @Before
+  public void before() {
+    preferences =
+        ApplicationProvider.<Context>getApplicationContext()
+            .getSharedPreferences("bandwidth_test", Context.MODE_PRIVATE);
+    preferences.edit().clear().commit();
+  }
+
+  @Test
+  public void savesEstimateOfCurrentNetworkType() {
+    SharedBandwidthMeter.EstimatePersister persister = newPersister();
+
+    persister.onBandwidthSample(1000, 1_000_000, 8_000_000);
+    networkType = C.NETWORK_TYPE_4G;
+    ShadowSystemClock.advanceBy(Duration.ofSeconds(11));
+    persister.onBandwidthSample(1000, 500_000, 4_000_000);
+
+    assertEquals(8_000_000, preferences.getLong("estimate_" + C.NETWORK_TYPE_WIFI, 0));
+    assertEquals(4_000_000, preferences.getLong("estimate_" + C.NETWORK_TYPE_4G, 0));
+  }
+
+  @Test
+  public void savesEstimateAtMostOncePerInterval() {
+    SharedBandwidthMeter.EstimatePersister persister = newPersister();
+
+    persister.onBandwidthSample(1000, 1_000_000, 8_000_000);
+    ShadowSystemClock.advanceBy(Duration.ofSeconds(1));
+    persister.onBandwidthSample(1000, 1_000_000, 2_000_000);
+
+    assertEquals(8_000_000, preferences.getLong("estimate_" + C.NETWORK_TYPE_WIFI, 0));
+  }
+
+  @Test
+  public void doesNotSaveEstimateOfUnknownOrOfflineNetwork() {
+    SharedBandwidthMeter.EstimatePersister persister = newPersister();
+
+    networkType = C.NETWORK_TYPE_UNKNOWN;
+    persister.onBandwidthSample(1000, 1_000_000, 8_000_000);
+    networkType = C.NETWORK_TYPE_OFFLINE;
+    persister.onBandwidthSample(1000, 1_000_000, 8_000_000);
+
+    assertFalse(preferences.contains("estimate_" + C.NETWORK_TYPE_UNKNOWN));
+    assertFalse(preferences.contains("estimate_" + C.NETWORK_TYPE_OFFLINE));
+  }
+
+  @Test
+  public void loadsSavedEstimatesAsInitialEstimates() {
+    SharedBandwidthMeter.EstimatePersister persister = newPersister();
+    persister.onBandwidthSample(1000, 1_000_000, 8_000_000);
+    preferences.edit().putString("other", "value").commit();
+    DefaultBandwidthMeter.Builder builder = mock(DefaultBandwidthMeter.Builder.class);
+
+    SharedBandwidthMeter.loadEstimates(preferences, builder);
+
+    verify(builder).setInitialBitrateEstimate(C.NETWORK_TYPE_WIFI, 8_000_000L);
+    verify(builder, times(1)).setInitialBitrateEstimate(anyInt(), anyLong());
+  }
+
+  private SharedBandwidthMeter.EstimatePersister newPersister() {
+    return new SharedBandwidthMeter.EstimatePersister(preferences, () -> networkType);
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.videoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import java.io.File;
+import java.io.FileOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SimpleCacheRegistryTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void directoriesKeepSeparateLimits() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    File firstDirectory = folder.newFolder("first");
+    File secondDirectory = folder.newFolder("second");
+    SimpleCacheRegistry first = SimpleCacheRegistry.getInstance(context, firstDirectory, 1000L);
+    SimpleCacheRegistry second = SimpleCacheRegistry.getInstance(context, secondDirectory, 1000L);
+    write(first.simpleCache, "video", 800);
+    write(second.simpleCache, "video", 800);
+
+    // the same directory given by another path is the same cache
+    File samePath = new File(secondDirectory, "../" + firstDirectory.getName());
+    assertSame(first, SimpleCacheRegistry.getInstance(context, samePath, 500L));
+
+    assertEquals(500, first.evictor.getMaxBytes());
+    assertEquals(0, first.simpleCache.getCacheSpace());
+    assertEquals(1000, second.evictor.getMaxBytes());
+    assertEquals(800, second.simpleCache.getCacheSpace());
+
+    // null keeps current size
+    assertSame(second, SimpleCacheRegistry.getInstance(context, secondDirectory, null));
+    assertEquals(1000, second.evictor.getMaxBytes());
+  }
+
+  private static void write(Cache cache, String key, int length) throws Exception {
+    CacheSpan hole = cache.startReadWrite(key, 0, length);
+    File file = cache.startFile(key, 0, length);
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      output.write(new byte[length]);
+    }
+    cache.commitFile(file, length);
+    cache.releaseHoleSpan(hole);
+  }
+}
@@ -5,6 +5,8 @@
 package io.flutter.plugins.videoplayer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
@@ -15,11 +17,13 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import androidx.test.core.app.ApplicationProvider;
 import com.google.android.exoplayer2.ExoPlayer;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.view.TextureRegistry;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Before;
@@ -262,4 +266,35 @@ public class VideoPlayerTest {
     assertEquals(event2.get("event"), "isPlayingStateUpdate");
     assertEquals(event2.get("isPlaying"), false);
   }
+
+  @Test
+  public void returnsPlayerToPoolWhenSetUpFails() {
+    ExoPlayerPool pool = new ExoPlayerPool(1, bufferOptions -> mock(ExoPlayer.class));
+    ExoPlayer pooledPlayer = pool.acquire(null);
+    pool.release(null, pooledPlayer);
+
+    try {
+      new VideoPlayer(
+          ApplicationProvider.getApplicationContext(),
+          fakeEventChannel,
+          fakeSurfaceTextureEntry,
+          "https://cdn.com/video.mp4",
+          "unsupported",
+          Collections.emptyMap(),
+          null,
+          pool,
+          false,
+          null,
+          null,
+          null,
+          null,
+          fakeVideoPlayerOptions,
+          null);
+      fail("Unsupported format must fail");
+    } catch (IllegalStateException expected) {
+    }
+
+    verify(pooledPlayer, never()).release();
+    assertSame(pooledPlayer, pool.acquire(null));
+  }
 }
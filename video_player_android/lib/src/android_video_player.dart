@@ -176,6 +176,113 @@ class AndroidVideoPlayer extends VideoPlayerPlatform {
     });
   }
 
+  /// Starts filling the cache with the beginning of a network [dataSource]
+  /// without creating a player, so a later player for it starts instantly.
+  ///
+  /// Preloads [bytes] if set, otherwise [duration] converted to bytes by an
+  /// estimated bitrate, otherwise 1 MB. Caching options of [dataSource] must
+  /// match the player's, so the data lands in the cache the player reads.
+  ///
+  /// Preloads into the proxy cache (a [DataSource.cacheDirectory] is set) are
+  /// queued by [priority]: a few run at once and [PreloadPriority.playing]
+  /// ones preempt the rest, while the others are slowed down whenever a
+  /// playing video is short of data. Preloading the same source again updates
+  /// its priority, e.g. when the user scrolls.
+  ///
+  /// Returns a handle to pass to [cancelPreload].
+  Future<int> preload(
+    DataSource dataSource, {
+    int? bytes,
+    Duration? duration,
+    PreloadPriority priority = PreloadPriority.next,
+  }) async {
+    assert(dataSource.sourceType == DataSourceType.network);
+    final PreloadHandleMessage response = await _api.preload(PreloadMessage(
+      uri: dataSource.uri!,
+      httpHeaders: dataSource.httpHeaders,
+      cacheKey: dataSource.cacheKey,
+      cacheDirectory: dataSource.cacheDirectory?.path,
+      maxSingleFileCacheSize: dataSource.maxSingleFileCacheSize?.totalBytes,
+      maxTotalCacheSize: dataSource.maxTotalCacheSize?.totalBytes,
+      preloadBytes: bytes,
+      preloadDurationMs: duration?.inMilliseconds,
+      priority: priority.index,
+    ));
+    return response.handleId;
+  }
+
+  /// Stops the preload started by [preload]. Data cached so far is kept.
+  Future<void> cancelPreload(int handleId) {
+    return _api.cancelPreload(PreloadHandleMessage(handleId: handleId));
+  }
+
+  /// Query parameters dropped from cache keys unless
+  /// [setUrlCanonicalization] is called: Akamai tokens only.
+  ///
+  /// Generic names like `token`, `signature` or `expires`, and the query
+  /// parameters of S3 or GCS signed URLs, are kept by default, since some
+  /// servers use them to select content. Pass them to
+  /// [setUrlCanonicalization] when the app's URLs only use them for signing.
+  static const List<String> defaultDroppedQueryParameters = <String>[
+    'hdnts',
+    'hdnea',
+    '__gda__',
+  ];
+
+  /// Sets rules that map media URLs to the keys they are cached under, so a
+  /// video whose URL carries a new expiring signature is still found in the
+  /// cache. Media is always fetched by its original URL.
+  ///
+  /// [rewrites] are applied first, in order, then the first matching prefix
+  /// of [stripPathPrefixes] is removed from the path, then query parameters
+  /// named in [dropQueryParameters] (case insensitive) are removed. The rules
+  /// replace the previous ones and apply to players and preloads created
+  /// afterwards.
+  Future<void> setUrlCanonicalization({
+    List<String> dropQueryParameters = defaultDroppedQueryParameters,
+    List<String> stripPathPrefixes = const <String>[],
+    List<UrlRewriteRule> rewrites = const <UrlRewriteRule>[],
+  }) {
+    return _api.setUrlCanonicalization(UrlCanonicalizationMessage(
+      dropQueryParameters: dropQueryParameters,
+      stripPathPrefixes: stripPathPrefixes,
+      rewritePatterns:
+          rewrites.map((UrlRewriteRule rule) => rule.pattern).toList(),
+      rewriteReplacements:
+          rewrites.map((UrlRewriteRule rule) => rule.replacement).toList(),
+    ));
+  }
+
+  /// Returns a stream of ranges cached on disk for all players that use
+  /// caching.
+  ///
+  /// Updates are batched on the platform side, so every event carries the
+  /// complete cached state of one player.
+  Stream<CacheUpdate> cacheEvents() {
+    return _cacheEventChannel.receiveBroadcastStream().map((dynamic event) {
+      final Map<dynamic, dynamic> map = event as Map<dynamic, dynamic>;
+      return CacheUpdate(
+        textureId: map['textureId'] as int,
+        url: map['url'] as String,
+        cached: (map['values'] as List<dynamic>)
+            .map<DurationRange>(_toDurationRange)
+            .toList(),
+        cachedBytes: (map['byteRanges'] as List<dynamic>)
+            .map<List<int>>(
+                (dynamic range) => (range as List<dynamic>).cast<int>())
+            .toList(),
+        totalBytes: map['totalBytes'] as int,
+      );
+    });
+  }
+
+  /// Returns a stream of ranges cached on disk for the player with
+  /// [textureId].
+  Stream<CacheUpdate> cacheEventsFor(int textureId) {
+    return cacheEvents()
+        .where((CacheUpdate update) => update.textureId == textureId);
+  }
+
   @override
   Widget buildView(int textureId) {
     return Texture(textureId: textureId);
@@ -191,6 +298,9 @@ class AndroidVideoPlayer extends VideoPlayerPlatform {
     return EventChannel('flutter.io/videoPlayer/videoEvents$textureId');
   }
 
+  static const EventChannel _cacheEventChannel =
+      EventChannel('flutter.io/videoPlayer/cacheEvents');
+
   static const Map<VideoFormat, String> _videoFormatStringMap =
       <VideoFormat, String>{
     VideoFormat.ss: 'ss',
@@ -207,3 +317,68 @@ class AndroidVideoPlayer extends VideoPlayerPlatform {
     );
   }
 }
+
+/// Regular expression rewrite of URLs before they become cache keys, see
+/// [AndroidVideoPlayer.setUrlCanonicalization].
+@immutable
+class UrlRewriteRule {
+  /// Constructs a rule replacing every match of [pattern].
+  const UrlRewriteRule(this.pattern, this.replacement);
+
+  /// A Java regular expression matched against the whole URL.
+  final String pattern;
+
+  /// The replacement of every match, it may refer groups like `$1`.
+  final String replacement;
+}
+
+/// Importance of a preload, see [AndroidVideoPlayer.preload].
+enum PreloadPriority {
+  /// The video is playing or is about to play, its preload is never slowed
+  /// down.
+  playing,
+
+  /// The video is likely to play next.
+  next,
+
+  /// The video may play later.
+  later,
+}
+
+/// Ranges of a media item that are cached on disk, see
+/// [AndroidVideoPlayer.cacheEvents].
+@immutable
+class CacheUpdate {
+  /// Constructs an instance with the given values.
+  const CacheUpdate({
+    required this.textureId,
+    required this.url,
+    required this.cached,
+    required this.cachedBytes,
+    required this.totalBytes,
+  });
+
+  /// The texture id of the player.
+  final int textureId;
+
+  /// The url of the media item.
+  final String url;
+
+  /// Cached ranges mapped to time proportionally to their byte offsets.
+  ///
+  /// Empty while the duration or the length of the media is unknown.
+  final List<DurationRange> cached;
+
+  /// Cached `[start, end)` byte ranges, sorted and non-overlapping.
+  final List<List<int>> cachedBytes;
+
+  /// The length of the media in bytes, or -1 if it is unknown.
+  final int totalBytes;
+
+  /// Whether the whole media item is cached.
+  bool get isFullyCached =>
+      totalBytes > 0 &&
+      cachedBytes.length == 1 &&
+      cachedBytes[0][0] == 0 &&
+      cachedBytes[0][1] >= totalBytes;
+}
@@ -230,6 +230,125 @@ class MixWithOthersMessage {
   }
 }
 
+class PreloadMessage {
+  PreloadMessage({
+    required this.uri,
+    required this.httpHeaders,
+    this.cacheKey,
+    this.cacheDirectory,
+    this.maxSingleFileCacheSize,
+    this.maxTotalCacheSize,
+    this.preloadBytes,
+    this.preloadDurationMs,
+    this.priority,
+  });
+
+  String uri;
+
+  Map<String?, String?> httpHeaders;
+
+  String? cacheKey;
+
+  String? cacheDirectory;
+
+  int? maxSingleFileCacheSize;
+
+  int? maxTotalCacheSize;
+
+  int? preloadBytes;
+
+  int? preloadDurationMs;
+
+  int? priority;
+
+  Object encode() {
+    return <Object?>[
+      uri,
+      httpHeaders,
+      cacheKey,
+      cacheDirectory,
+      maxSingleFileCacheSize,
+      maxTotalCacheSize,
+      preloadBytes,
+      preloadDurationMs,
+      priority,
+    ];
+  }
+
+  static PreloadMessage decode(Object result) {
+    result as List<Object?>;
+    return PreloadMessage(
+      uri: result[0]! as String,
+      httpHeaders:
+          (result[1] as Map<Object?, Object?>?)!.cast<String?, String?>(),
+      cacheKey: result[2] as String?,
+      cacheDirectory: result[3] as String?,
+      maxSingleFileCacheSize: result[4] as int?,
+      maxTotalCacheSize: result[5] as int?,
+      preloadBytes: result[6] as int?,
+      preloadDurationMs: result[7] as int?,
+      priority: result[8] as int?,
+    );
+  }
+}
+
+class PreloadHandleMessage {
+  PreloadHandleMessage({
+    required this.handleId,
+  });
+
+  int handleId;
+
+  Object encode() {
+    return <Object?>[
+      handleId,
+    ];
+  }
+
+  static PreloadHandleMessage decode(Object result) {
+    result as List<Object?>;
+    return PreloadHandleMessage(
+      handleId: result[0]! as int,
+    );
+  }
+}
+
+class UrlCanonicalizationMessage {
+  UrlCanonicalizationMessage({
+    required this.dropQueryParameters,
+    required this.stripPathPrefixes,
+    required this.rewritePatterns,
+    required this.rewriteReplacements,
+  });
+
+  List<String?> dropQueryParameters;
+
+  List<String?> stripPathPrefixes;
+
+  List<String?> rewritePatterns;
+
+  List<String?> rewriteReplacements;
+
+  Object encode() {
+    return <Object?>[
+      dropQueryParameters,
+      stripPathPrefixes,
+      rewritePatterns,
+      rewriteReplacements,
+    ];
+  }
+
+  static UrlCanonicalizationMessage decode(Object result) {
+    result as List<Object?>;
+    return UrlCanonicalizationMessage(
+      dropQueryParameters: (result[0] as List<Object?>?)!.cast<String?>(),
+      stripPathPrefixes: (result[1] as List<Object?>?)!.cast<String?>(),
+      rewritePatterns: (result[2] as List<Object?>?)!.cast<String?>(),
+      rewriteReplacements: (result[3] as List<Object?>?)!.cast<String?>(),
+    );
+  }
+}
+
 class _AndroidVideoPlayerApiCodec extends StandardMessageCodec {
   const _AndroidVideoPlayerApiCodec();
   @override
@@ -249,12 +368,21 @@ class _AndroidVideoPlayerApiCodec extends StandardMessageCodec {
     } else if (value is PositionMessage) {
       buffer.putUint8(132);
       writeValue(buffer, value.encode());
-    } else if (value is TextureMessage) {
+    } else if (value is PreloadHandleMessage) {
       buffer.putUint8(133);
       writeValue(buffer, value.encode());
-    } else if (value is VolumeMessage) {
+    } else if (value is PreloadMessage) {
       buffer.putUint8(134);
       writeValue(buffer, value.encode());
+    } else if (value is TextureMessage) {
+      buffer.putUint8(135);
+      writeValue(buffer, value.encode());
+    } else if (value is UrlCanonicalizationMessage) {
+      buffer.putUint8(136);
+      writeValue(buffer, value.encode());
+    } else if (value is VolumeMessage) {
+      buffer.putUint8(137);
+      writeValue(buffer, value.encode());
     } else {
       super.writeValue(buffer, value);
     }
@@ -274,8 +402,14 @@ class _AndroidVideoPlayerApiCodec extends StandardMessageCodec {
       case 132:
         return PositionMessage.decode(readValue(buffer)!);
       case 133:
-        return TextureMessage.decode(readValue(buffer)!);
+        return PreloadHandleMessage.decode(readValue(buffer)!);
       case 134:
+        return PreloadMessage.decode(readValue(buffer)!);
+      case 135:
+        return TextureMessage.decode(readValue(buffer)!);
+      case 136:
+        return UrlCanonicalizationMessage.decode(readValue(buffer)!);
+      case 137:
         return VolumeMessage.decode(readValue(buffer)!);
       default:
         return super.readValueOfType(type, buffer);
@@ -543,4 +677,77 @@ class AndroidVideoPlayerApi {
       return;
     }
   }
+
+  Future<PreloadHandleMessage> preload(PreloadMessage arg_msg) async {
+    final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+        'dev.flutter.pigeon.AndroidVideoPlayerApi.preload', codec,
+        binaryMessenger: _binaryMessenger);
+    final List<Object?>? replyList =
+        await channel.send(<Object?>[arg_msg]) as List<Object?>?;
+    if (replyList == null) {
+      throw PlatformException(
+        code: 'channel-error',
+        message: 'Unable to establish connection on channel.',
+      );
+    } else if (replyList.length > 1) {
+      throw PlatformException(
+        code: replyList[0]! as String,
+        message: replyList[1] as String?,
+        details: replyList[2],
+      );
+    } else if (replyList[0] == null) {
+      throw PlatformException(
+        code: 'null-error',
+        message: 'Host platform returned null value for non-null return value.',
+      );
+    } else {
+      return (replyList[0] as PreloadHandleMessage?)!;
+    }
+  }
+
+  Future<void> cancelPreload(PreloadHandleMessage arg_msg) async {
+    final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+        'dev.flutter.pigeon.AndroidVideoPlayerApi.cancelPreload', codec,
+        binaryMessenger: _binaryMessenger);
+    final List<Object?>? replyList =
+        await channel.send(<Object?>[arg_msg]) as List<Object?>?;
+    if (replyList == null) {
+      throw PlatformException(
+        code: 'channel-error',
+        message: 'Unable to establish connection on channel.',
+      );
+    } else if (replyList.length > 1) {
+      throw PlatformException(
+        code: replyList[0]! as String,
+        message: replyList[1] as String?,
+        details: replyList[2],
+      );
+    } else {
+      return;
+    }
+  }
+
+  Future<void> setUrlCanonicalization(
+      UrlCanonicalizationMessage arg_msg) async {
+    final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+        'dev.flutter.pigeon.AndroidVideoPlayerApi.setUrlCanonicalization',
+        codec,
+        binaryMessenger: _binaryMessenger);
+    final List<Object?>? replyList =
+        await channel.send(<Object?>[arg_msg]) as List<Object?>?;
+    if (replyList == null) {
+      throw PlatformException(
+        code: 'channel-error',
+        message: 'Unable to establish connection on channel.',
+      );
+    } else if (replyList.length > 1) {
+      throw PlatformException(
+        code: replyList[0]! as String,
+        message: replyList[1] as String?,
+        details: replyList[2],
+      );
+    } else {
+      return;
+    }
+  }
 }
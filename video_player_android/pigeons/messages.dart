@@ -62,6 +62,37 @@ class MixWithOthersMessage {
   bool mixWithOthers;
 }
 
+class PreloadMessage {
+  PreloadMessage({required this.uri, required this.httpHeaders});
+  String uri;
+  Map<String?, String?> httpHeaders;
+  String? cacheKey;
+  String? cacheDirectory;
+  int? maxSingleFileCacheSize;
+  int? maxTotalCacheSize;
+  int? preloadBytes;
+  int? preloadDurationMs;
+  int? priority;
+}
+
+class PreloadHandleMessage {
+  PreloadHandleMessage(this.handleId);
+  int handleId;
+}
+
+class UrlCanonicalizationMessage {
+  UrlCanonicalizationMessage(
+    this.dropQueryParameters,
+    this.stripPathPrefixes,
+    this.rewritePatterns,
+    this.rewriteReplacements,
+  );
+  List<String?> dropQueryParameters;
+  List<String?> stripPathPrefixes;
+  List<String?> rewritePatterns;
+  List<String?> rewriteReplacements;
+}
+
 @HostApi(dartHostTestHandler: 'TestHostVideoPlayerApi')
 abstract class AndroidVideoPlayerApi {
   void initialize();
@@ -75,4 +106,7 @@ abstract class AndroidVideoPlayerApi {
   void seekTo(PositionMessage msg);
   void pause(TextureMessage msg);
   void setMixWithOthers(MixWithOthersMessage msg);
+  PreloadHandleMessage preload(PreloadMessage msg);
+  void cancelPreload(PreloadHandleMessage msg);
+  void setUrlCanonicalization(UrlCanonicalizationMessage msg);
 }
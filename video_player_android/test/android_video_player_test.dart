@@ -19,6 +19,9 @@ class _ApiLogger implements TestHostVideoPlayerApi {
   VolumeMessage? volumeMessage;
   PlaybackSpeedMessage? playbackSpeedMessage;
   MixWithOthersMessage? mixWithOthersMessage;
+  PreloadMessage? preloadMessage;
+  PreloadHandleMessage? preloadHandleMessage;
+  UrlCanonicalizationMessage? urlCanonicalizationMessage;
 
   @override
   TextureMessage create(CreateMessage arg) {
@@ -86,6 +89,25 @@ class _ApiLogger implements TestHostVideoPlayerApi {
     log.add('setPlaybackSpeed');
     playbackSpeedMessage = arg;
   }
+
+  @override
+  PreloadHandleMessage preload(PreloadMessage arg) {
+    log.add('preload');
+    preloadMessage = arg;
+    return PreloadHandleMessage(handleId: 5);
+  }
+
+  @override
+  void cancelPreload(PreloadHandleMessage arg) {
+    log.add('cancelPreload');
+    preloadHandleMessage = arg;
+  }
+
+  @override
+  void setUrlCanonicalization(UrlCanonicalizationMessage arg) {
+    log.add('setUrlCanonicalization');
+    urlCanonicalizationMessage = arg;
+  }
 }
 
 void main() {
@@ -241,6 +263,60 @@ void main() {
       expect(position, const Duration(milliseconds: 234));
     });
 
+    test('preload', () async {
+      final int handleId = await player.preload(
+        DataSource(
+          sourceType: DataSourceType.network,
+          uri: 'someUri',
+          cacheKey: 'someKey',
+        ),
+        duration: const Duration(seconds: 3),
+        priority: PreloadPriority.later,
+      );
+      expect(log.log.last, 'preload');
+      expect(log.preloadMessage?.uri, 'someUri');
+      expect(log.preloadMessage?.cacheKey, 'someKey');
+      expect(log.preloadMessage?.preloadBytes, null);
+      expect(log.preloadMessage?.preloadDurationMs, 3000);
+      expect(log.preloadMessage?.priority, 2);
+      expect(handleId, 5);
+    });
+
+    test('cancelPreload', () async {
+      await player.cancelPreload(5);
+      expect(log.log.last, 'cancelPreload');
+      expect(log.preloadHandleMessage?.handleId, 5);
+    });
+
+    test('setUrlCanonicalization', () async {
+      await player.setUrlCanonicalization(
+        dropQueryParameters: <String>['token'],
+        stripPathPrefixes: <String>['/signed'],
+        rewrites: <UrlRewriteRule>[
+          const UrlRewriteRule(r'cdn\d+\.', 'cdn.'),
+        ],
+      );
+      expect(log.log.last, 'setUrlCanonicalization');
+      expect(log.urlCanonicalizationMessage?.dropQueryParameters,
+          <String>['token']);
+      expect(log.urlCanonicalizationMessage?.stripPathPrefixes,
+          <String>['/signed']);
+      expect(log.urlCanonicalizationMessage?.rewritePatterns,
+          <String>[r'cdn\d+\.']);
+      expect(log.urlCanonicalizationMessage?.rewriteReplacements,
+          <String>['cdn.']);
+    });
+
+    test('setUrlCanonicalization drops vendor tokens only by default',
+        () async {
+      await player.setUrlCanonicalization();
+      expect(log.log.last, 'setUrlCanonicalization');
+      expect(log.urlCanonicalizationMessage?.dropQueryParameters,
+          <String>['hdnts', 'hdnea', '__gda__']);
+      expect(log.urlCanonicalizationMessage?.stripPathPrefixes, isEmpty);
+      expect(log.urlCanonicalizationMessage?.rewritePatterns, isEmpty);
+    });
+
     test('videoEventsFor', () async {
       const String mockChannel = 'flutter.io/videoPlayer/videoEvents123';
       _ambiguate(TestDefaultBinaryMessengerBinding.instance)!
@@ -392,6 +468,56 @@ void main() {
             ),
           ]));
     });
+
+    test('cacheEventsFor', () async {
+      const String mockChannel = 'flutter.io/videoPlayer/cacheEvents';
+      _ambiguate(TestDefaultBinaryMessengerBinding.instance)!
+          .defaultBinaryMessenger
+          .setMockMessageHandler(
+        mockChannel,
+        (ByteData? message) async {
+          final MethodCall methodCall =
+              const StandardMethodCodec().decodeMethodCall(message);
+          if (methodCall.method == 'listen') {
+            for (final int textureId in <int>[7, 123]) {
+              await _ambiguate(TestDefaultBinaryMessengerBinding.instance)!
+                  .defaultBinaryMessenger
+                  .handlePlatformMessage(
+                      mockChannel,
+                      const StandardMethodCodec()
+                          .encodeSuccessEnvelope(<String, dynamic>{
+                        'textureId': textureId,
+                        'url': 'https://example.com/video.mp4',
+                        'values': <List<int>>[
+                          <int>[0, 5000],
+                        ],
+                        'byteRanges': <List<int>>[
+                          <int>[0, 1000],
+                        ],
+                        'totalBytes': 1000,
+                      }),
+                      (ByteData? data) {});
+            }
+
+            return const StandardMethodCodec().encodeSuccessEnvelope(null);
+          } else if (methodCall.method == 'cancel') {
+            return const StandardMethodCodec().encodeSuccessEnvelope(null);
+          } else {
+            fail('Expected listen or cancel');
+          }
+        },
+      );
+      final CacheUpdate update = await player.cacheEventsFor(123).first;
+      expect(update.textureId, 123);
+      expect(update.url, 'https://example.com/video.mp4');
+      expect(update.cached, <DurationRange>[
+        DurationRange(Duration.zero, const Duration(milliseconds: 5000)),
+      ]);
+      expect(update.cachedBytes, <List<int>>[
+        <int>[0, 1000],
+      ]);
+      expect(update.isFullyCached, isTrue);
+    });
   });
 }
 
@@ -32,12 +32,21 @@ class _TestHostVideoPlayerApiCodec extends StandardMessageCodec {
     } else if (value is PositionMessage) {
       buffer.putUint8(132);
       writeValue(buffer, value.encode());
-    } else if (value is TextureMessage) {
+    } else if (value is PreloadHandleMessage) {
       buffer.putUint8(133);
       writeValue(buffer, value.encode());
-    } else if (value is VolumeMessage) {
+    } else if (value is PreloadMessage) {
       buffer.putUint8(134);
       writeValue(buffer, value.encode());
+    } else if (value is TextureMessage) {
+      buffer.putUint8(135);
+      writeValue(buffer, value.encode());
+    } else if (value is UrlCanonicalizationMessage) {
+      buffer.putUint8(136);
+      writeValue(buffer, value.encode());
+    } else if (value is VolumeMessage) {
+      buffer.putUint8(137);
+      writeValue(buffer, value.encode());
     } else {
       super.writeValue(buffer, value);
     }
@@ -57,8 +66,14 @@ class _TestHostVideoPlayerApiCodec extends StandardMessageCodec {
       case 132:
         return PositionMessage.decode(readValue(buffer)!);
       case 133:
-        return TextureMessage.decode(readValue(buffer)!);
+        return PreloadHandleMessage.decode(readValue(buffer)!);
       case 134:
+        return PreloadMessage.decode(readValue(buffer)!);
+      case 135:
+        return TextureMessage.decode(readValue(buffer)!);
+      case 136:
+        return UrlCanonicalizationMessage.decode(readValue(buffer)!);
+      case 137:
         return VolumeMessage.decode(readValue(buffer)!);
       default:
         return super.readValueOfType(type, buffer);
@@ -93,6 +108,12 @@ abstract class TestHostVideoPlayerApi {
 
   void setMixWithOthers(MixWithOthersMessage msg);
 
+  PreloadHandleMessage preload(PreloadMessage msg);
+
+  void cancelPreload(PreloadHandleMessage msg);
+
+  void setUrlCanonicalization(UrlCanonicalizationMessage msg);
+
   static void setup(TestHostVideoPlayerApi? api,
       {BinaryMessenger? binaryMessenger}) {
     {
@@ -334,5 +355,74 @@ abstract class TestHostVideoPlayerApi {
         });
       }
     }
+    {
+      final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+          'dev.flutter.pigeon.AndroidVideoPlayerApi.preload', codec,
+          binaryMessenger: binaryMessenger);
+      if (api == null) {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel, null);
+      } else {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel,
+                (Object? message) async {
+          assert(message != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.preload was null.');
+          final List<Object?> args = (message as List<Object?>?)!;
+          final PreloadMessage? arg_msg = (args[0] as PreloadMessage?);
+          assert(arg_msg != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.preload was null, expected non-null PreloadMessage.');
+          final PreloadHandleMessage output = api.preload(arg_msg!);
+          return <Object?>[output];
+        });
+      }
+    }
+    {
+      final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+          'dev.flutter.pigeon.AndroidVideoPlayerApi.cancelPreload', codec,
+          binaryMessenger: binaryMessenger);
+      if (api == null) {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel, null);
+      } else {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel,
+                (Object? message) async {
+          assert(message != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.cancelPreload was null.');
+          final List<Object?> args = (message as List<Object?>?)!;
+          final PreloadHandleMessage? arg_msg =
+              (args[0] as PreloadHandleMessage?);
+          assert(arg_msg != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.cancelPreload was null, expected non-null PreloadHandleMessage.');
+          api.cancelPreload(arg_msg!);
+          return <Object?>[];
+        });
+      }
+    }
+    {
+      final BasicMessageChannel<Object?> channel = BasicMessageChannel<Object?>(
+          'dev.flutter.pigeon.AndroidVideoPlayerApi.setUrlCanonicalization',
+          codec,
+          binaryMessenger: binaryMessenger);
+      if (api == null) {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel, null);
+      } else {
+        _testBinaryMessengerBinding!.defaultBinaryMessenger
+            .setMockDecodedMessageHandler<Object?>(channel,
+                (Object? message) async {
+          assert(message != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.setUrlCanonicalization was null.');
+          final List<Object?> args = (message as List<Object?>?)!;
+          final UrlCanonicalizationMessage? arg_msg =
+              (args[0] as UrlCanonicalizationMessage?);
+          assert(arg_msg != null,
+              'Argument for dev.flutter.pigeon.AndroidVideoPlayerApi.setUrlCanonicalization was null, expected non-null UrlCanonicalizationMessage.');
+          api.setUrlCanonicalization(arg_msg!);
+          return <Object?>[];
+        });
+      }
+    }
   }
 }